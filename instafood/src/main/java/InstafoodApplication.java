@@ -1,50 +1,151 @@
 import com.google.common.base.Strings;
+import com.instafood.converter.CompactDataConverter;
+import com.instafood.metrics.InstafoodMetrics;
 import com.instafood.orders.delivery.CourierDeliveryWorkflowImpl;
+import com.instafood.orders.delivery.activities.CourierDispatchActivities;
 import com.instafood.orders.delivery.activities.CourierGPSActivitiesImpl;
+import com.instafood.orders.delivery.activities.CourierTrackingActivities;
+import com.instafood.orders.delivery.activities.GpsCourierTrackingActivities;
+import com.instafood.orders.delivery.activities.SpatialCourierDispatchActivities;
+import com.instafood.orders.delivery.dispatch.CourierDispatcher;
+import com.instafood.orders.delivery.events.CourierEventGateway;
+import com.instafood.orders.delivery.tracking.CourierTracker;
+import com.instafood.orders.delivery.tracking.CourierTrackingServer;
 import com.instafood.orders.dispatcher.OrderWorkflowImpl;
+import com.instafood.orders.dispatcher.activities.OrderEtaActivities;
+import com.instafood.orders.dispatcher.activities.StreamingOrderEtaActivities;
+import com.instafood.orders.dispatcher.domain.OrderStatus;
+import com.instafood.orders.dispatcher.eta.PreparationTimeEstimator;
+import com.instafood.orders.intake.OrderIntakeServer;
+import com.instafood.orders.megaburger.MegaBurgerOrderWorkflow;
 import com.instafood.orders.megaburger.MegaBurgerOrderWorkflowImpl;
+import com.instafood.orders.megaburger.PollingSchedule;
 import com.instafood.orders.megaburger.activities.MegaBurgerRestApiOrderActivities;
+import com.instafood.orders.megaburger.service.MegaBurgerOrdersApiClient;
+import com.instafood.tracing.CadenceContextPropagator;
+import com.instafood.tracing.InstafoodTracing;
 import com.uber.cadence.client.WorkflowClient;
 import com.uber.cadence.client.WorkflowClientOptions;
 import com.uber.cadence.serviceclient.ClientOptions;
 import com.uber.cadence.serviceclient.WorkflowServiceTChannel;
 import com.uber.cadence.worker.Worker;
 import com.uber.cadence.worker.WorkerFactory;
+import com.uber.cadence.worker.WorkerFactoryOptions;
+import io.micrometer.core.instrument.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.stream.Collectors;
 
 public class InstafoodApplication {
 
     public static final String DOMAIN = "instafood";
     public static final String TASK_LIST = "test-worker-task-list";
 
+    private static Logger logger = LoggerFactory.getLogger(InstafoodApplication.class);
+    private static Properties appProperties;
+
     public static void main(String[] args) {
+        InstafoodMetrics metrics = new InstafoodMetrics();
+        metrics.startServer(getIntProperty("metricsPort", 9464));
+        InstafoodTracing.install(getProperty("otlpEndpoint"));
+
         WorkflowClient workflowClient = WorkflowClient.newInstance(
                 new WorkflowServiceTChannel(ClientOptions.newBuilder()
                         .setHost(getCadenceHostProperty())
                         .setPort(7933)
+                        .setMetricsScope(metrics.getScope())
                         .build()),
-                WorkflowClientOptions.newBuilder().setDomain(DOMAIN).build());
+                WorkflowClientOptions.newBuilder()
+                        .setDomain(DOMAIN)
+                        .setDataConverter(CompactDataConverter.getInstance())
+                        .setMetricsScope(metrics.getScope())
+                        .setContextPropagators(Collections.singletonList(new CadenceContextPropagator()))
+                        .build());
         // Get worker to poll the task list.
-        WorkerFactory factory = WorkerFactory.newInstance(workflowClient);
+        // Every cached workflow holds a thread while it waits, so worker memory goes with these two. Workflows evicted
+        // from the cache are replayed from their history on their next decision task. Thread stack size is the JVM's
+        // -Xss, see applicationDefaultJvmArgs in build.gradle.
+        WorkerFactory factory = WorkerFactory.newInstance(workflowClient, WorkerFactoryOptions.newBuilder()
+                .setMaxWorkflowThreadCount(getIntProperty("workflowThreads", 600))
+                .setCacheMaximumSize(getIntProperty("workflowCacheSize", 600))
+                .build());
         Worker worker = factory.newWorker(TASK_LIST);
-        worker.registerWorkflowImplementationTypes(OrderWorkflowImpl.class, MegaBurgerOrderWorkflowImpl.class,
-                CourierDeliveryWorkflowImpl.class);
-        worker.registerActivitiesImplementations(new MegaBurgerRestApiOrderActivities(),
+        worker.registerWorkflowImplementationTypes(OrderWorkflowImpl.class, CourierDeliveryWorkflowImpl.class);
+        PollingSchedule pollingSchedule = getPollingSchedule();
+        worker.addWorkflowImplementationFactory(MegaBurgerOrderWorkflow.class,
+                () -> new MegaBurgerOrderWorkflowImpl(pollingSchedule));
+        worker.registerActivitiesImplementations(
+                new MegaBurgerRestApiOrderActivities(
+                        new MegaBurgerOrdersApiClient(getListProperty("megaBurgerUrls", "http://localhost:8080"),
+                                Metrics.globalRegistry, getBooleanProperty("megaBurgerSmile", false))),
                 new CourierGPSActivitiesImpl());
+
+        if (getBooleanProperty("courierHub", false)) {
+            startCourierHub(workflowClient, factory);
+        } else {
+            logger.info("Not the courier hub, couriers are dispatched by the process started with courierHub=true");
+        }
+
+        // A single estimator learns from every order, one per process would each learn from and answer for a share
+        // of them. Off unless set, so that only the process configured as the owner ever polls the ETA task list.
+        if (getBooleanProperty("orderEtaOwner", false)) {
+            Worker orderEtaWorker = factory.newWorker(OrderEtaActivities.TASK_LIST);
+            orderEtaWorker.registerActivitiesImplementations(new StreamingOrderEtaActivities(
+                    new PreparationTimeEstimator(getDoubleProperty("etaQuantile", 0.5),
+                            getIntProperty("etaMinSamples", 20)),
+                    Duration.ofMinutes(getIntProperty("courierTravelMinutes", 5))));
+        }
         factory.start();
-    }
+        logger.info("Worker polling {} ms after the JVM started", ManagementFactory.getRuntimeMXBean().getUptime());
 
-    public static String getCadenceHostProperty() {
-        Properties appProperties = new Properties();
-        try {
-            appProperties.load(InstafoodApplication.class.getResourceAsStream("/instafood.properties"));
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+        // Customers place orders over HTTP, sharing this process' connection to Cadence
+        new OrderIntakeServer(workflowClient, TASK_LIST, getIntProperty("orderApiMaxInFlight", 256),
+                Duration.ofMillis(getIntProperty("orderApiQueueTimeoutMillis", 200)))
+                .start(getIntProperty("orderApiPort", 8091));
+        logger.info("Started in {} ms", ManagementFactory.getRuntimeMXBean().getUptime());
+
+        // Training run of the class-data sharing archive, which is written as the JVM exits
+        if (getBooleanProperty("exitAfterStartup", false)) {
+            System.exit(0);
         }
+    }
+
+    /**
+     * Couriers, their reservations and their pings are kept in this process' memory, so a deployment runs exactly one
+     * process with {@code courierHub} set: the only one serving the courier API and polling the dispatch and tracking
+     * task lists. It's off unless set, so that added or autoscaled workers never become hubs of their own.
+     */
+    private static void startCourierHub(WorkflowClient workflowClient, WorkerFactory factory) {
+        CourierDispatcher courierDispatcher = new CourierDispatcher();
+        Worker courierDispatchWorker = factory.newWorker(CourierDispatchActivities.TASK_LIST);
+        courierDispatchWorker.registerActivitiesImplementations(
+                new SpatialCourierDispatchActivities(courierDispatcher));
 
-        String cadenceHost = appProperties.getProperty("cadenceHost");
+        // Location pings feed both delivery trails and courier dispatch
+        CourierTracker courierTracker = new CourierTracker(ping -> courierDispatcher.updatePosition(
+                ping.getCourierId(), ping.getLatitude(), ping.getLongitude()));
+        courierTracker.start();
+        // Delivery status updates from courier devices are signalled through this process' connection to Cadence
+        CourierEventGateway courierEventGateway = new CourierEventGateway(workflowClient,
+                getIntProperty("courierEventSignallers", 16), getIntProperty("courierEventMaxPending", 10_000));
+        new CourierTrackingServer(courierTracker, courierEventGateway).start(getIntProperty("courierApiPort", 8090),
+                getIntProperty("courierApiThreads", 8));
+        Worker courierTrackingWorker = factory.newWorker(CourierTrackingActivities.TASK_LIST);
+        courierTrackingWorker.registerActivitiesImplementations(new GpsCourierTrackingActivities(courierTracker));
+    }
+
+    public static String getCadenceHostProperty() {
+        String cadenceHost = getProperty("cadenceHost");
         if (Strings.isNullOrEmpty(cadenceHost)) {
             throw new RuntimeException(
                     "No cadence hosts are configured, you can set the value in the 'instafood.properties' file, exiting.");
@@ -52,4 +153,63 @@ public class InstafoodApplication {
         return cadenceHost;
     }
 
+    /**
+     * Polling policy of each stage of a MegaBurger order, from the {@code megaBurgerPolling.<STAGE>} properties.
+     */
+    private static PollingSchedule getPollingSchedule() {
+        PollingSchedule defaults = PollingSchedule.defaults();
+        Map<OrderStatus, PollingSchedule.StagePolicy> policies = new EnumMap<>(OrderStatus.class);
+        for (OrderStatus stage : new OrderStatus[]{OrderStatus.PENDING, OrderStatus.ACCEPTED, OrderStatus.COOKING,
+                OrderStatus.READY}) {
+            PollingSchedule.StagePolicy policy = defaults.getPolicy(stage);
+            List<String> seconds = getListProperty("megaBurgerPolling." + stage, "");
+            if (seconds.size() == 3) {
+                policy = new PollingSchedule.StagePolicy(Duration.ofSeconds(Long.parseLong(seconds.get(0))),
+                        Duration.ofSeconds(Long.parseLong(seconds.get(1))),
+                        Duration.ofSeconds(Long.parseLong(seconds.get(2))));
+            } else if (!seconds.isEmpty()) {
+                throw new RuntimeException("megaBurgerPolling." + stage
+                        + " should be <expected seconds>,<min interval seconds>,<max interval seconds>");
+            }
+            policies.put(stage, policy);
+        }
+        return new PollingSchedule(policies);
+    }
+
+    public static int getIntProperty(String name, int defaultValue) {
+        String value = getProperty(name);
+        return Strings.isNullOrEmpty(value) ? defaultValue : Integer.parseInt(value.trim());
+    }
+
+    public static double getDoubleProperty(String name, double defaultValue) {
+        String value = getProperty(name);
+        return Strings.isNullOrEmpty(value) ? defaultValue : Double.parseDouble(value.trim());
+    }
+
+    public static boolean getBooleanProperty(String name, boolean defaultValue) {
+        String value = getProperty(name);
+        return Strings.isNullOrEmpty(value) ? defaultValue : Boolean.parseBoolean(value.trim());
+    }
+
+    public static List<String> getListProperty(String name, String defaultValue) {
+        String value = getProperty(name);
+        return Arrays.stream((Strings.isNullOrEmpty(value) ? defaultValue : value).split(","))
+                .map(String::trim)
+                .filter(item -> !item.isEmpty())
+                .collect(Collectors.toList());
+    }
+
+    public static synchronized String getProperty(String name) {
+        if (appProperties == null) {
+            appProperties = new Properties();
+            try {
+                appProperties.load(InstafoodApplication.class.getResourceAsStream("/instafood.properties"));
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        // System properties win, e.g. -DcadenceHost=... for a one-off run
+        return System.getProperty(name, appProperties.getProperty(name));
+    }
+
 }
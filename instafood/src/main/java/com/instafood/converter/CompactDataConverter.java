@@ -0,0 +1,208 @@
+package com.instafood.converter;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.PropertyAccessor;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.introspect.Annotated;
+import com.fasterxml.jackson.databind.introspect.AnnotatedClass;
+import com.fasterxml.jackson.databind.introspect.JacksonAnnotationIntrospector;
+import com.google.common.base.Defaults;
+import com.uber.cadence.converter.DataConverter;
+import com.uber.cadence.converter.DataConverterException;
+import com.uber.cadence.converter.JsonDataConverter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Encodes workflow and activity payloads in a compact form before they go into history.
+ * <p>
+ * Our own classes are written as JSON arrays of their field values (no field names), ordered as declared in
+ * {@code @JsonPropertyOrder}, and enums as their ordinal. Fields and enum constants must therefore only ever be
+ * appended: payloads with fewer values than the class has fields still decode, the missing ones left unset.
+ * Payloads above {@link #COMPRESSION_THRESHOLD} bytes are deflated.
+ * <p>
+ * Payloads start with a format byte that JSON text never starts with. Anything without it, i.e. histories written
+ * before this converter was introduced, is decoded by Cadence's {@link JsonDataConverter}, which also keeps
+ * handling exceptions so failures keep their class and stack trace.
+ */
+public class CompactDataConverter implements DataConverter {
+
+    static final int COMPRESSION_THRESHOLD = 256;
+
+    private static final byte COMPACT = 0;
+    private static final byte COMPACT_DEFLATED = 1;
+    private static final CompactDataConverter INSTANCE = new CompactDataConverter();
+
+    private final ObjectMapper objectMapper;
+    private final DataConverter legacyConverter = JsonDataConverter.getInstance();
+
+    public CompactDataConverter() {
+        objectMapper = new ObjectMapper()
+                .setAnnotationIntrospector(new ArrayShapeIntrospector())
+                .setVisibility(PropertyAccessor.ALL, JsonAutoDetect.Visibility.NONE)
+                .setVisibility(PropertyAccessor.FIELD, JsonAutoDetect.Visibility.ANY)
+                .configure(SerializationFeature.WRITE_ENUMS_USING_INDEX, true)
+                .configure(SerializationFeature.FAIL_ON_EMPTY_BEANS, false)
+                .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    }
+
+    public static CompactDataConverter getInstance() {
+        return INSTANCE;
+    }
+
+    @Override
+    public byte[] toData(Object... values) throws DataConverterException {
+        if (values == null || values.length == 0) {
+            return null;
+        }
+        for (Object value : values) {
+            if (value instanceof Throwable) {
+                return legacyConverter.toData(values);
+            }
+        }
+        ByteArrayOutputStream output = new ByteArrayOutputStream(64);
+        output.write(COMPACT);
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(output)) {
+            if (values.length == 1) {
+                objectMapper.writeValue(generator, values[0]);
+            } else {
+                generator.writeStartArray();
+                for (Object value : values) {
+                    objectMapper.writeValue(generator, value);
+                }
+                generator.writeEndArray();
+            }
+        } catch (IOException e) {
+            throw new DataConverterException(e);
+        }
+        byte[] data = output.toByteArray();
+        return data.length > COMPRESSION_THRESHOLD ? deflate(data) : data;
+    }
+
+    @Override
+    public <T> T fromData(byte[] content, Class<T> valueClass, Type valueType) throws DataConverterException {
+        if (content == null || !isCompact(content)) {
+            return legacyConverter.fromData(content, valueClass, valueType);
+        }
+        try (JsonParser parser = createParser(content)) {
+            return objectMapper.readValue(parser, objectMapper.constructType(valueType));
+        } catch (IOException e) {
+            throw new DataConverterException(e);
+        }
+    }
+
+    @Override
+    public Object[] fromDataArray(byte[] content, Type... valueTypes) throws DataConverterException {
+        if (content == null || !isCompact(content)) {
+            return legacyConverter.fromDataArray(content, valueTypes);
+        }
+        Object[] values = new Object[valueTypes.length];
+        if (valueTypes.length == 1) {
+            values[0] = fromData(content, null, valueTypes[0]);
+            return values;
+        }
+        try (JsonParser parser = createParser(content)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new DataConverterException(new IOException("Expected an array of " + valueTypes.length
+                        + " values"));
+            }
+            for (int i = 0; i < valueTypes.length; i++) {
+                JavaType type = objectMapper.constructType(valueTypes[i]);
+                if (parser.nextToken() == JsonToken.END_ARRAY) {
+                    // Payload written before this argument was added
+                    for (; i < valueTypes.length; i++) {
+                        values[i] = Defaults.defaultValue(objectMapper.constructType(valueTypes[i]).getRawClass());
+                    }
+                    break;
+                }
+                values[i] = objectMapper.readValue(parser, type);
+            }
+        } catch (IOException e) {
+            throw new DataConverterException(e);
+        }
+        return values;
+    }
+
+    private static boolean isCompact(byte[] content) {
+        return content.length > 0 && (content[0] == COMPACT || content[0] == COMPACT_DEFLATED);
+    }
+
+    private JsonParser createParser(byte[] content) throws IOException {
+        if (content[0] == COMPACT_DEFLATED) {
+            byte[] inflated = inflate(content);
+            return objectMapper.getFactory().createParser(inflated, 0, inflated.length);
+        }
+        return objectMapper.getFactory().createParser(content, 1, content.length - 1);
+    }
+
+    private static byte[] deflate(byte[] data) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try {
+            deflater.setInput(data, 1, data.length - 1);
+            deflater.finish();
+            ByteArrayOutputStream output = new ByteArrayOutputStream(data.length / 2);
+            output.write(COMPACT_DEFLATED);
+            byte[] buffer = new byte[512];
+            while (!deflater.finished()) {
+                output.write(buffer, 0, deflater.deflate(buffer));
+            }
+            // Not worth it for payloads that don't compress
+            return output.size() < data.length ? output.toByteArray() : data;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] content) throws IOException {
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(content, 1, content.length - 1);
+            ByteArrayOutputStream output = new ByteArrayOutputStream(content.length * 4);
+            byte[] buffer = new byte[512];
+            while (!inflater.finished()) {
+                int inflated = inflater.inflate(buffer);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("Truncated compressed payload");
+                }
+                output.write(buffer, 0, inflated);
+            }
+            return output.toByteArray();
+        } catch (DataFormatException e) {
+            throw new IOException(e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Serializes our own classes as arrays instead of objects, leaving JDK and library types alone.
+     */
+    private static final class ArrayShapeIntrospector extends JacksonAnnotationIntrospector {
+        @Override
+        public JsonFormat.Value findFormat(Annotated annotated) {
+            JsonFormat.Value format = super.findFormat(annotated);
+            if (annotated instanceof AnnotatedClass && isCompacted(annotated.getRawType())
+                    && (format == null || format.getShape() == JsonFormat.Shape.ANY)) {
+                return JsonFormat.Value.forShape(JsonFormat.Shape.ARRAY);
+            }
+            return format;
+        }
+
+        private static boolean isCompacted(Class<?> type) {
+            return type.getName().startsWith("com.instafood.") && !type.isEnum()
+                    && !Throwable.class.isAssignableFrom(type);
+        }
+    }
+}
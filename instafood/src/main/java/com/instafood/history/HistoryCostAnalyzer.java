@@ -0,0 +1,514 @@
+package com.instafood.history;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.instafood.converter.CompactDataConverter;
+import com.instafood.orders.dispatcher.domain.OrderStatus;
+import com.uber.cadence.converter.DataConverter;
+import com.uber.cadence.converter.DataConverterException;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reports where exported workflow histories spend their events and payload bytes: events per order, events by type,
+ * the timers and activities each stage of a workflow schedules, payload bytes by field and the largest histories.
+ * <p>
+ * Histories are in the JSON format Cadence's CLI exports (see {@code history-gps-not-supported.json} in the test
+ * resources): a file holds either the array of events of a single history, or an array of such arrays. A single
+ * history can also come with its workflow id, as {@code {"workflowId": .., "events": [..]}}. Files are read with a
+ * streaming parser, one event at a time, so exports of any size can be analyzed. Run it with
+ * {@code ./gradlew analyzeHistories -Phistories=<file or directory>[,<file or directory>...]}.
+ * <p>
+ * A workflow's stage is the last status it signalled to its order, so the polls of a MegaBurger order are told
+ * apart by the status it was waiting to leave. Events are counted per order workflow id. Cadence doesn't record a
+ * workflow's own id in its history, so it's taken from, in this order:
+ * <ul>
+ *     <li>the parent of a child workflow, i.e. its order,</li>
+ *     <li>the {@code workflowId} exported along with the history,</li>
+ *     <li>the children an order starts, whose ids are {@code <order workflow id>/<child>},</li>
+ *     <li>the name of the file the history comes from, for orders placed before children had such ids.</li>
+ * </ul>
+ */
+public class HistoryCostAnalyzer {
+
+    private static final String INITIAL_STAGE = OrderStatus.CREATED.name();
+    private static final String UNKNOWN = "UNKNOWN";
+    private static final String STATUS_SIGNAL = "OrderWorkflow::updateStatus";
+    private static final String ITEM_STATUS_SIGNAL = "OrderWorkflow::updateItemStatus";
+    private static final String ATTRIBUTES_SUFFIX = "EventAttributes";
+    // Binary fields of event attributes, exported base64 encoded
+    private static final Set<String> PAYLOAD_FIELDS = new HashSet<>(Arrays.asList(
+            "input", "result", "details", "control", "heartbeatDetails", "lastCompletionResult"));
+    // Maps of binary values, sized as a whole
+    private static final Set<String> PAYLOAD_MAPS = new HashSet<>(Arrays.asList(
+            "header", "memo", "searchAttributes"));
+
+    private final JsonFactory jsonFactory = new JsonFactory();
+    private final DataConverter dataConverter;
+    private final int top;
+
+    private final Map<String, Long> eventsByType = new HashMap<>();
+    private final Map<String, Long> eventsPerOrder = new HashMap<>();
+    private final Map<String, Long> payloadBytesByField = new HashMap<>();
+    private final Map<String, Long> historiesByWorkflowType = new TreeMap<>();
+    private final Map<String, Map<String, StageCost>> stageCosts = new TreeMap<>();
+    private final PriorityQueue<History> largestHistories =
+            new PriorityQueue<>(Comparator.comparingLong(History::getEvents));
+    private long histories;
+    private long events;
+    private long payloadBytes;
+
+    public HistoryCostAnalyzer(int top) {
+        this(CompactDataConverter.getInstance(), top);
+    }
+
+    HistoryCostAnalyzer(DataConverter dataConverter, int top) {
+        this.dataConverter = dataConverter;
+        this.top = top;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int top = 10;
+        List<Path> paths = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if ("--top".equals(args[i]) && i + 1 < args.length) {
+                top = Integer.parseInt(args[++i]);
+            } else {
+                paths.add(Paths.get(args[i]));
+            }
+        }
+        if (paths.isEmpty()) {
+            System.err.println("Usage: HistoryCostAnalyzer [--top N] <history file or directory>...");
+            System.exit(1);
+        }
+
+        HistoryCostAnalyzer analyzer = new HistoryCostAnalyzer(top);
+        for (Path path : paths) {
+            for (Path file : historyFiles(path)) {
+                try (InputStream in = open(file)) {
+                    analyzer.analyze(file.getFileName().toString(), in);
+                }
+            }
+        }
+        analyzer.report(System.out);
+    }
+
+    /**
+     * Adds the histories read from {@code in}, named after {@code source}.
+     */
+    public void analyze(String source, InputStream in) throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(in)) {
+            JsonToken token = parser.nextToken();
+            if (token == JsonToken.START_OBJECT) {
+                add(readHistoryWithMetadata(parser, historyId(source, -1)));
+                return;
+            }
+            expect(parser, token, JsonToken.START_ARRAY);
+            token = parser.nextToken();
+            if (token == JsonToken.START_OBJECT) {
+                add(readHistory(parser, token, historyId(source, -1)));
+                return;
+            }
+            for (int index = 0; token != JsonToken.END_ARRAY; index++) {
+                expect(parser, token, JsonToken.START_ARRAY);
+                add(readHistory(parser, parser.nextToken(), historyId(source, index)));
+                token = parser.nextToken();
+            }
+        }
+    }
+
+    public void report(PrintStream out) {
+        out.printf("%,d histories, %,d events, %,d payload bytes%n", histories, events, payloadBytes);
+
+        out.printf("%nEvents per order (%,d orders)%n", eventsPerOrder.size());
+        long[] orderEvents = eventsPerOrder.values().stream().mapToLong(Long::longValue).sorted().toArray();
+        if (orderEvents.length > 0) {
+            out.printf("  p50 %,d, p90 %,d, p99 %,d, max %,d%n", percentile(orderEvents, 0.5),
+                    percentile(orderEvents, 0.9), percentile(orderEvents, 0.99), orderEvents[orderEvents.length - 1]);
+        }
+        for (Map.Entry<String, Long> order : largest(eventsPerOrder, top)) {
+            out.printf("  %-40s %,10d%n", order.getKey(), order.getValue());
+        }
+
+        out.printf("%nEvents by type%n");
+        for (Map.Entry<String, Long> type : largest(eventsByType, Integer.MAX_VALUE)) {
+            out.printf("  %-48s %,12d %5.1f%%%n", type.getKey(), type.getValue(), 100.0 * type.getValue() / events);
+        }
+
+        out.printf("%nTimers and activities per stage (per workflow)%n");
+        for (Map.Entry<String, Map<String, StageCost>> workflowType : stageCosts.entrySet()) {
+            double workflows = historiesByWorkflowType.getOrDefault(workflowType.getKey(), 1L);
+            out.printf("  %s (%,.0f workflows)%n", workflowType.getKey(), workflows);
+            for (Map.Entry<String, StageCost> stage : workflowType.getValue().entrySet()) {
+                StageCost cost = stage.getValue();
+                out.printf("    %-22s %,10d timers (%.1f) %,10d activities (%.1f)%n", stage.getKey(),
+                        cost.getTimers(), cost.getTimers() / workflows,
+                        cost.getActivities(), cost.getActivities() / workflows);
+            }
+        }
+
+        out.printf("%nPayload bytes by field%n");
+        for (Map.Entry<String, Long> field : largest(payloadBytesByField, Integer.MAX_VALUE)) {
+            out.printf("  %-48s %,14d %5.1f%%%n", field.getKey(), field.getValue(),
+                    100.0 * field.getValue() / payloadBytes);
+        }
+
+        out.printf("%nLargest histories%n");
+        List<History> largest = new ArrayList<>(largestHistories);
+        largest.sort(Comparator.comparingLong(History::getEvents).reversed());
+        for (History history : largest) {
+            out.printf("  %-40s %-28s order %-40s %,8d events %,12d payload bytes%n", history.getId(),
+                    history.getWorkflowType(), history.getOrderId(), history.getEvents(), history.getPayloadBytes());
+        }
+    }
+
+    Map<String, Long> getEventsByType() {
+        return Collections.unmodifiableMap(eventsByType);
+    }
+
+    Map<String, Long> getEventsPerOrder() {
+        return Collections.unmodifiableMap(eventsPerOrder);
+    }
+
+    Map<String, Long> getPayloadBytesByField() {
+        return Collections.unmodifiableMap(payloadBytesByField);
+    }
+
+    /**
+     * Stages of the given workflow type (e.g. {@code MegaBurgerOrderWorkflow}), in the order they were first seen.
+     */
+    Map<String, StageCost> getStageCosts(String workflowType) {
+        return Collections.unmodifiableMap(stageCosts.getOrDefault(workflowType, Collections.emptyMap()));
+    }
+
+    List<History> getLargestHistories() {
+        List<History> largest = new ArrayList<>(largestHistories);
+        largest.sort(Comparator.comparingLong(History::getEvents).reversed());
+        return largest;
+    }
+
+    /**
+     * Reads a {@code {"workflowId": .., "events": [..]}} object, the parser being at its start.
+     */
+    private History readHistoryWithMetadata(JsonParser parser, String id) throws IOException {
+        History history = null;
+        String workflowId = null;
+        for (JsonToken token = parser.nextToken(); token != JsonToken.END_OBJECT; token = parser.nextToken()) {
+            expect(parser, token, JsonToken.FIELD_NAME);
+            String field = parser.getCurrentName();
+            token = parser.nextToken();
+            if ("events".equals(field)) {
+                expect(parser, token, JsonToken.START_ARRAY);
+                history = readHistory(parser, parser.nextToken(), id);
+            } else if ("workflowId".equals(field) && token == JsonToken.VALUE_STRING) {
+                workflowId = parser.getText();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        if (history == null) {
+            throw new IOException("No events in " + id);
+        }
+        history.workflowId = workflowId;
+        return history;
+    }
+
+    private History readHistory(JsonParser parser, JsonToken token, String id) throws IOException {
+        History history = new History(id);
+        for (; token != JsonToken.END_ARRAY; token = parser.nextToken()) {
+            expect(parser, token, JsonToken.START_OBJECT);
+            add(history, readEvent(parser));
+        }
+        return history;
+    }
+
+    private void add(History history) {
+        histories++;
+        eventsPerOrder.merge(history.getOrderId(), history.getEvents(), Long::sum);
+        historiesByWorkflowType.merge(history.getWorkflowType(), 1L, Long::sum);
+        largestHistories.add(history);
+        if (largestHistories.size() > top) {
+            largestHistories.poll();
+        }
+    }
+
+    /**
+     * Reads the event the parser is at the start of, keeping only what the report needs.
+     */
+    private Event readEvent(JsonParser parser) throws IOException {
+        Event event = new Event();
+        // Names of the fields enclosing the current token, outermost first
+        List<String> path = new ArrayList<>();
+        String field = null;
+        int depth = 1;
+        while (depth > 0) {
+            JsonToken token = parser.nextToken();
+            if (token == null) {
+                throw new IOException("History ends in the middle of an event");
+            }
+            switch (token) {
+                case FIELD_NAME:
+                    field = parser.getCurrentName();
+                    break;
+                case START_OBJECT:
+                case START_ARRAY:
+                    path.add(field);
+                    field = null;
+                    depth++;
+                    break;
+                case END_OBJECT:
+                case END_ARRAY:
+                    depth--;
+                    if (depth > 0) {
+                        field = path.remove(path.size() - 1);
+                    }
+                    break;
+                case VALUE_STRING:
+                    event.read(path, field, parser.getText());
+                    break;
+                default:
+            }
+        }
+        return event;
+    }
+
+    private void add(History history, Event event) {
+        String type = event.eventType != null ? event.eventType : UNKNOWN;
+        events++;
+        history.events++;
+        eventsByType.merge(type, 1L, Long::sum);
+        for (Map.Entry<String, Long> field : event.payloadBytes.entrySet()) {
+            payloadBytesByField.merge(field.getKey(), field.getValue(), Long::sum);
+            payloadBytes += field.getValue();
+            history.payloadBytes += field.getValue();
+        }
+
+        switch (type) {
+            case "WorkflowExecutionStarted":
+                if (event.workflowType != null) {
+                    // e.g. MegaBurgerOrderWorkflow::orderFood
+                    history.workflowType = event.workflowType.split("::")[0];
+                }
+                history.parentWorkflowId = event.parentWorkflowId;
+                break;
+            case "StartChildWorkflowExecutionInitiated":
+                int separator = event.childWorkflowId != null ? event.childWorkflowId.lastIndexOf('/') : -1;
+                if (separator > 0) {
+                    history.childWorkflowIdPrefix = event.childWorkflowId.substring(0, separator);
+                }
+                break;
+            case "TimerStarted":
+                stageCost(history).timers++;
+                break;
+            case "ActivityTaskScheduled":
+                stageCost(history).activities++;
+                break;
+            case "SignalExternalWorkflowExecutionInitiated":
+                String status = decodeStatus(event.signalName, event.input);
+                if (status != null) {
+                    history.stage = status;
+                }
+                break;
+            default:
+        }
+    }
+
+    private StageCost stageCost(History history) {
+        return stageCosts.computeIfAbsent(history.getWorkflowType(), type -> new LinkedHashMap<>())
+                .computeIfAbsent(history.stage, stage -> new StageCost());
+    }
+
+    /**
+     * The status a workflow signalled to its order, or null if the signal isn't a status update.
+     */
+    private String decodeStatus(String signalName, String input) {
+        if (input == null || !(STATUS_SIGNAL.equals(signalName) || ITEM_STATUS_SIGNAL.equals(signalName))) {
+            return null;
+        }
+        try {
+            byte[] data = Base64.getDecoder().decode(input);
+            Object[] arguments = STATUS_SIGNAL.equals(signalName)
+                    ? dataConverter.fromDataArray(data, OrderStatus.class)
+                    : dataConverter.fromDataArray(data, String.class, OrderStatus.class);
+            return String.valueOf(arguments[arguments.length - 1]);
+        } catch (IllegalArgumentException | DataConverterException e) {
+            return UNKNOWN;
+        }
+    }
+
+    private static void expect(JsonParser parser, JsonToken actual, JsonToken expected) throws IOException {
+        if (actual != expected) {
+            throw new IOException(String.format("Expected %s but found %s at %s", expected, actual,
+                    parser.getCurrentLocation()));
+        }
+    }
+
+    private static String historyId(String source, int index) {
+        String name = source.replaceFirst("\\.json(\\.gz)?$", "");
+        return index < 0 ? name : name + "#" + index;
+    }
+
+    private static List<Path> historyFiles(Path path) throws IOException {
+        if (!Files.isDirectory(path)) {
+            return Collections.singletonList(path);
+        }
+        try (Stream<Path> files = Files.walk(path)) {
+            return files.filter(file -> file.toString().endsWith(".json") || file.toString().endsWith(".json.gz"))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static InputStream open(Path file) throws IOException {
+        InputStream in = new BufferedInputStream(Files.newInputStream(file));
+        return file.toString().endsWith(".gz") ? new GZIPInputStream(in) : in;
+    }
+
+    private static long percentile(long[] sorted, double percentile) {
+        return sorted[(int) Math.min(sorted.length - 1, Math.ceil(percentile * sorted.length) - 1)];
+    }
+
+    private static List<Map.Entry<String, Long>> largest(Map<String, Long> counts, int limit) {
+        return counts.entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()))
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Base64 decoded length of an exported binary value.
+     */
+    private static long decodedLength(String base64) {
+        int padding = base64.endsWith("==") ? 2 : base64.endsWith("=") ? 1 : 0;
+        return base64.length() / 4 * 3 - padding;
+    }
+
+    static final class StageCost {
+        private long timers;
+        private long activities;
+
+        long getTimers() {
+            return timers;
+        }
+
+        long getActivities() {
+            return activities;
+        }
+    }
+
+    static final class History {
+        private final String id;
+        private String workflowType = UNKNOWN;
+        private String parentWorkflowId;
+        private String workflowId;
+        private String childWorkflowIdPrefix;
+        private String stage = INITIAL_STAGE;
+        private long events;
+        private long payloadBytes;
+
+        private History(String id) {
+            this.id = id;
+        }
+
+        String getId() {
+            return id;
+        }
+
+        String getWorkflowType() {
+            return workflowType;
+        }
+
+        String getOrderId() {
+            if (parentWorkflowId != null) {
+                return parentWorkflowId;
+            }
+            if (workflowId != null) {
+                return workflowId;
+            }
+            return childWorkflowIdPrefix != null ? childWorkflowIdPrefix : id;
+        }
+
+        long getEvents() {
+            return events;
+        }
+
+        long getPayloadBytes() {
+            return payloadBytes;
+        }
+    }
+
+    private static final class Event {
+        private String eventType;
+        private String workflowType;
+        private String parentWorkflowId;
+        private String childWorkflowId;
+        private String signalName;
+        private String input;
+        private final Map<String, Long> payloadBytes = new HashMap<>(4);
+
+        /**
+         * Takes a string value found at {@code path}, the first element of which is the event's attributes.
+         */
+        private void read(List<String> path, String field, String value) {
+            if (path.isEmpty()) {
+                if ("eventType".equals(field)) {
+                    eventType = value;
+                }
+                return;
+            }
+            String attributes = path.get(0);
+            if (attributes == null || !attributes.endsWith(ATTRIBUTES_SUFFIX)) {
+                return;
+            }
+            if (path.size() == 1) {
+                if ("signalName".equals(field)) {
+                    signalName = value;
+                } else if ("input".equals(field)) {
+                    input = value;
+                } else if ("workflowId".equals(field)
+                        && "startChildWorkflowExecutionInitiatedEventAttributes".equals(attributes)) {
+                    childWorkflowId = value;
+                }
+                if (PAYLOAD_FIELDS.contains(field)) {
+                    addPayload(attributes, field, value);
+                }
+            } else if (PAYLOAD_MAPS.contains(path.get(1))) {
+                addPayload(attributes, path.get(1), value);
+            } else if (path.size() == 2 && "workflowType".equals(path.get(1)) && "name".equals(field)) {
+                workflowType = value;
+            } else if (path.size() == 2 && "parentWorkflowExecution".equals(path.get(1))
+                    && "workflowId".equals(field)) {
+                parentWorkflowId = value;
+            }
+        }
+
+        private void addPayload(String attributes, String field, String value) {
+            // e.g. activityTaskCompletedEventAttributes.result becomes activityTaskCompleted.result
+            String name = attributes.substring(0, attributes.length() - ATTRIBUTES_SUFFIX.length()) + "." + field;
+            payloadBytes.merge(name, decodedLength(value), Long::sum);
+        }
+    }
+}
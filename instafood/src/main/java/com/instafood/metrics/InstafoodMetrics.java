@@ -0,0 +1,82 @@
+package com.instafood.metrics;
+
+import com.sun.net.httpserver.HttpServer;
+import com.uber.m3.tally.RootScopeBuilder;
+import com.uber.m3.tally.Scope;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.binder.jvm.ClassLoaderMetrics;
+import io.micrometer.core.instrument.binder.jvm.JvmGcMetrics;
+import io.micrometer.core.instrument.binder.jvm.JvmMemoryMetrics;
+import io.micrometer.core.instrument.binder.jvm.JvmThreadMetrics;
+import io.micrometer.core.instrument.binder.system.ProcessorMetrics;
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Owns the worker's metrics: a Prometheus registry that receives both the Cadence client metrics (through a
+ * Tally scope) and our own Micrometer meters, served in the Prometheus text format on {@code /metrics}.
+ */
+public class InstafoodMetrics {
+
+    private static final Logger logger = LoggerFactory.getLogger(InstafoodMetrics.class);
+
+    private final PrometheusMeterRegistry registry;
+    private final Scope scope;
+    private HttpServer server;
+
+    public InstafoodMetrics() {
+        registry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+        new JvmMemoryMetrics().bindTo(registry);
+        new JvmGcMetrics().bindTo(registry);
+        new JvmThreadMetrics().bindTo(registry);
+        new ClassLoaderMetrics().bindTo(registry);
+        new ProcessorMetrics().bindTo(registry);
+        // Meters created against the global registry (e.g. by MegaBurgerOrdersApiClient) end up here too
+        Metrics.addRegistry(registry);
+
+        scope = new RootScopeBuilder()
+                .reporter(new MicrometerStatsReporter(registry))
+                .reportEvery(com.uber.m3.util.Duration.ofSeconds(1));
+    }
+
+    public Scope getScope() {
+        return scope;
+    }
+
+    public PrometheusMeterRegistry getRegistry() {
+        return registry;
+    }
+
+    public void startServer(int port) {
+        try {
+            server = HttpServer.create(new InetSocketAddress(port), 0);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        server.createContext("/metrics", exchange -> {
+            byte[] body = registry.scrape().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("content-type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream responseBody = exchange.getResponseBody()) {
+                responseBody.write(body);
+            }
+        });
+        server.start();
+        logger.info("Serving Prometheus metrics on port {}", port);
+    }
+
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+        }
+        Metrics.removeRegistry(registry);
+        registry.close();
+    }
+}
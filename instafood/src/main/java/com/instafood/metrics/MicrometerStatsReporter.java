@@ -0,0 +1,104 @@
+package com.instafood.metrics;
+
+import com.google.common.util.concurrent.AtomicDouble;
+import com.uber.m3.tally.Buckets;
+import com.uber.m3.tally.Capabilities;
+import com.uber.m3.tally.CapableOf;
+import com.uber.m3.tally.StatsReporter;
+import com.uber.m3.util.Duration;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Tally {@link StatsReporter} that forwards everything reported by the Cadence client (and by
+ * {@code Workflow.getMetricsScope()}) into a Micrometer {@link MeterRegistry}.
+ */
+public class MicrometerStatsReporter implements StatsReporter {
+
+    private final MeterRegistry registry;
+    // Micrometer only keeps a weak reference to gauge state, so we hold on to it here
+    private final Map<List<Object>, AtomicDouble> gauges = new ConcurrentHashMap<>();
+
+    public MicrometerStatsReporter(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public void reportCounter(String name, Map<String, String> tags, long value) {
+        registry.counter(name, toTags(tags)).increment(value);
+    }
+
+    @Override
+    public void reportGauge(String name, Map<String, String> tags, double value) {
+        gauges.computeIfAbsent(Arrays.asList(name, tags),
+                key -> registry.gauge(name, toTags(tags), new AtomicDouble()))
+                .set(value);
+    }
+
+    @Override
+    public void reportTimer(String name, Map<String, String> tags, Duration interval) {
+        registry.timer(name, toTags(tags)).record(interval.getNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void reportHistogramValueSamples(String name, Map<String, String> tags, Buckets buckets,
+                                            double bucketLowerBound, double bucketUpperBound, long samples) {
+        DistributionSummary summary = DistributionSummary.builder(name)
+                .tags(toTags(tags))
+                .publishPercentileHistogram()
+                .register(registry);
+        // Tally only tells us which bucket the samples fell in, so we record its upper bound
+        double value = Double.isInfinite(bucketUpperBound) ? bucketLowerBound : bucketUpperBound;
+        for (long i = 0; i < samples; i++) {
+            summary.record(value);
+        }
+    }
+
+    @Override
+    public void reportHistogramDurationSamples(String name, Map<String, String> tags, Buckets buckets,
+                                               Duration bucketLowerBound, Duration bucketUpperBound, long samples) {
+        Timer timer = Timer.builder(name)
+                .tags(toTags(tags))
+                .publishPercentileHistogram()
+                .register(registry);
+        long nanos = bucketUpperBound.getNanos() == Long.MAX_VALUE
+                ? bucketLowerBound.getNanos()
+                : bucketUpperBound.getNanos();
+        for (long i = 0; i < samples; i++) {
+            timer.record(nanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public Capabilities capabilities() {
+        return CapableOf.REPORTING_TAGGING;
+    }
+
+    @Override
+    public void flush() {
+        // Micrometer meters are updated in place, nothing to flush
+    }
+
+    @Override
+    public void close() {
+        // The registry lifecycle is owned by InstafoodMetrics
+    }
+
+    private static List<Tag> toTags(Map<String, String> tags) {
+        if (tags == null) {
+            return List.of();
+        }
+        return tags.entrySet().stream()
+                .map(tag -> Tag.of(tag.getKey(), tag.getValue()))
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,65 @@
+package com.instafood.metrics;
+
+import com.instafood.orders.dispatcher.domain.OrderStatus;
+import com.uber.cadence.workflow.Workflow;
+import com.uber.m3.tally.Buckets;
+import com.uber.m3.tally.DurationBuckets;
+import com.uber.m3.tally.Scope;
+import com.uber.m3.tally.ValueBuckets;
+import com.uber.m3.util.Duration;
+
+import java.util.Collections;
+
+/**
+ * Order level metrics recorded from workflow code. They go through {@link Workflow#getMetricsScope()}, which
+ * drops anything reported while a workflow is replaying, so each value is only recorded once.
+ */
+public final class OrderMetrics {
+
+    public static final String POLL_ITERATIONS = "instafood-order-poll-iterations";
+    public static final String STAGE_LATENCY = "instafood-order-stage-latency";
+    public static final String ORDER_LATENCY = "instafood-order-latency";
+
+    private static final Buckets POLL_ITERATION_BUCKETS = ValueBuckets.linear(0, 1, 30);
+    private static final Buckets ORDER_DURATION_BUCKETS =
+            DurationBuckets.exponential(Duration.ofSeconds(5), 1.5, 20);
+
+    private OrderMetrics() {
+    }
+
+    /**
+     * Number of times a MegaBurger order was polled before it left {@code stage}.
+     */
+    public static void recordPollIterations(OrderStatus stage, int iterations) {
+        taggedWith("stage", stage.name())
+                .histogram(POLL_ITERATIONS, POLL_ITERATION_BUCKETS)
+                .recordValue(iterations);
+    }
+
+    /**
+     * Time an order spent in {@code stage} before moving on to the next status.
+     */
+    public static void recordStageDuration(OrderStatus stage, java.time.Duration duration) {
+        taggedWith("stage", stage.name())
+                .histogram(STAGE_LATENCY, ORDER_DURATION_BUCKETS)
+                .recordDuration(toTallyDuration(duration));
+    }
+
+    /**
+     * End to end duration of an order, from creation until its final status.
+     */
+    public static void recordOrderDuration(OrderStatus finalStatus, java.time.Duration duration) {
+        Scope scope = taggedWith("status", finalStatus.name());
+        scope.timer(ORDER_LATENCY).record(toTallyDuration(duration));
+        scope.histogram(ORDER_LATENCY + "-histogram", ORDER_DURATION_BUCKETS)
+                .recordDuration(toTallyDuration(duration));
+    }
+
+    private static Scope taggedWith(String tag, String value) {
+        return Workflow.getMetricsScope().tagged(Collections.singletonMap(tag, value));
+    }
+
+    private static Duration toTallyDuration(java.time.Duration duration) {
+        return Duration.ofNanos(duration.toNanos());
+    }
+}
@@ -1,13 +1,20 @@
 package com.instafood.orders.delivery;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
 import com.instafood.orders.dispatcher.domain.Restaurant;
 
+@JsonPropertyOrder({"restaurant", "address", "telephone"})
 public class CourierDeliveryJob {
     private final Restaurant restaurant;
     private final String address;
     private final String telephone;
 
-    public CourierDeliveryJob(Restaurant restaurant, String address, String telephone) {
+    @JsonCreator
+    public CourierDeliveryJob(@JsonProperty("restaurant") Restaurant restaurant,
+                              @JsonProperty("address") String address,
+                              @JsonProperty("telephone") String telephone) {
         this.restaurant = restaurant;
         this.address = address;
         this.telephone = telephone;
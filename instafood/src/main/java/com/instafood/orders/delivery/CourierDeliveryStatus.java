@@ -1,5 +1,9 @@
 package com.instafood.orders.delivery;
 
+/**
+ * Declared in the order deliveries go through, a rejected job goes back to CREATED when it's offered to the next
+ * courier.
+ */
 public enum CourierDeliveryStatus {
     CREATED, ACCEPTED, REJECTED, PICKED_UP, DELIVERED
 }
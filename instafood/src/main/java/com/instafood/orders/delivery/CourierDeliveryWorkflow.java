@@ -11,6 +11,21 @@ public interface CourierDeliveryWorkflow {
     @SignalMethod
     void updateStatus(CourierDeliveryStatus status);
 
+    /**
+     * Status reported by a courier's device, ignored unless it comes from the courier the delivery is assigned to.
+     */
+    @SignalMethod
+    void updateCourierStatus(String courierId, CourierDeliveryStatus status);
+
     @QueryMethod
     boolean courierSupportsGPSTracking();
+
+    @QueryMethod
+    String getAssignedCourierId();
+
+    /**
+     * Id of the delivery's GPS trail in the courier tracking API, null while it isn't being tracked.
+     */
+    @QueryMethod
+    String getGpsTrackingId();
 }
@@ -1,32 +1,102 @@
 package com.instafood.orders.delivery;
 
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
 
+import com.instafood.orders.delivery.activities.CourierDispatchActivities;
 import com.instafood.orders.delivery.activities.CourierGPSActivities;
+import com.instafood.orders.delivery.activities.CourierTrackingActivities;
 import com.instafood.orders.dispatcher.OrderWorkflow;
 import com.instafood.orders.dispatcher.domain.OrderStatus;
+import com.instafood.tracing.WorkflowSpan;
 import com.uber.cadence.activity.ActivityOptions;
 import com.uber.cadence.common.RetryOptions;
 import com.uber.cadence.workflow.Workflow;
+import org.slf4j.Logger;
 
 public class CourierDeliveryWorkflowImpl implements CourierDeliveryWorkflow {
 
+    private static final Logger logger = Workflow.getLogger(CourierDeliveryWorkflowImpl.class);
+
+    // How long an assigned courier has to accept a job before it's offered to the next one
+    private static final Duration COURIER_RESPONSE_TIMEOUT = Duration.ofMinutes(2);
+    private static final int MAX_COURIER_ASSIGNMENTS = 5;
+    // Shared by every open delivery
+    private static final ActivityOptions GPS_ACTIVITY_OPTIONS = new ActivityOptions.Builder()
+            .setRetryOptions(new RetryOptions.Builder()
+                    .setInitialInterval(Duration.ofSeconds(10))
+                    .setMaximumAttempts(3)
+                    .build())
+            .setScheduleToCloseTimeout(Duration.ofMinutes(5)).build();
+    private static final ActivityOptions DISPATCH_ACTIVITY_OPTIONS = new ActivityOptions.Builder()
+            .setTaskList(CourierDispatchActivities.TASK_LIST)
+            .setRetryOptions(new RetryOptions.Builder()
+                    .setInitialInterval(Duration.ofSeconds(1))
+                    .setMaximumAttempts(3)
+                    .build())
+            .setScheduleToCloseTimeout(Duration.ofSeconds(30)).build();
+    private static final ActivityOptions TRACKING_ACTIVITY_OPTIONS = new ActivityOptions.Builder()
+            .setTaskList(CourierTrackingActivities.TASK_LIST)
+            .setRetryOptions(new RetryOptions.Builder()
+                    .setInitialInterval(Duration.ofSeconds(1))
+                    .setMaximumAttempts(3)
+                    .build())
+            .setScheduleToCloseTimeout(Duration.ofSeconds(30)).build();
+
     private CourierDeliveryStatus currentStatus = CourierDeliveryStatus.CREATED;
     private boolean supportsGpsTracking = false;
+    private String assignedCourierId;
+    private String gpsTrackingId;
 
     private final CourierGPSActivities courierGPSActivities = Workflow.newActivityStub(CourierGPSActivities.class,
-            new ActivityOptions.Builder()
-                    .setRetryOptions(new RetryOptions.Builder()
-                            .setInitialInterval(Duration.ofSeconds(10))
-                            .setMaximumAttempts(3)
-                            .build())
-                    .setScheduleToCloseTimeout(Duration.ofMinutes(5)).build());
+            GPS_ACTIVITY_OPTIONS);
+
+    private final CourierDispatchActivities courierDispatchActivities = Workflow.newActivityStub(
+            CourierDispatchActivities.class, DISPATCH_ACTIVITY_OPTIONS);
+
+    private final CourierTrackingActivities courierTrackingActivities = Workflow.newActivityStub(
+            CourierTrackingActivities.class, TRACKING_ACTIVITY_OPTIONS);
 
     @Override
     public void deliverOrder(CourierDeliveryJob courierDeliveryJob) {
+        WorkflowSpan span = WorkflowSpan.start("CourierDeliveryWorkflow.deliverOrder");
+        try {
+            deliver(courierDeliveryJob);
+        } catch (RuntimeException e) {
+            span.end(e);
+            throw e;
+        }
+        span.end();
+    }
+
+    private void deliver(CourierDeliveryJob courierDeliveryJob) {
+        // Cancelled deliveries used to keep their courier reserved and tracked, now both are released
+        int cancellationVersion = Workflow.getVersion("ReleaseCourierOnCancellation", Workflow.DEFAULT_VERSION, 1);
+        try {
+            deliverWithCourier(courierDeliveryJob);
+        } catch (CancellationException e) {
+            if (cancellationVersion >= 1) {
+                // The workflow's own scope is cancelled by then, releasing needs a detached one
+                Workflow.newDetachedCancellationScope(this::releaseCourier);
+            }
+            throw e;
+        }
+    }
+
+    private void deliverWithCourier(CourierDeliveryJob courierDeliveryJob) {
         OrderWorkflow parentOrderWorkflow = getParentOrderWorkflow();
+        // Statuses used to be awaited one by one, stuck when a later one arrived before an earlier one was seen
+        int monotonicStatusVersion = Workflow.getVersion("MonotonicCourierStatus", Workflow.DEFAULT_VERSION, 1);
 
-        Workflow.await(() -> !CourierDeliveryStatus.CREATED.equals(currentStatus));
+        // Couriers used to be assigned manually, now the nearest available one is picked for the job
+        int dispatchVersion = Workflow.getVersion("AutomaticCourierDispatch", Workflow.DEFAULT_VERSION, 1);
+        if (dispatchVersion >= 1) {
+            dispatchCourier(courierDeliveryJob);
+        } else {
+            Workflow.await(() -> !CourierDeliveryStatus.CREATED.equals(currentStatus));
+        }
 
         if (CourierDeliveryStatus.REJECTED.equals(currentStatus)) {
             parentOrderWorkflow.updateStatus(OrderStatus.COURIER_REJECTED);
@@ -41,12 +111,74 @@ public class CourierDeliveryWorkflowImpl implements CourierDeliveryWorkflow {
                     courierDeliveryJob.getRestaurant().toString(),
                     courierDeliveryJob.getAddress());
         }
+        // Positions are recorded by the tracking service, the workflow only keeps the id to look them up with
+        int trackingVersion = Workflow.getVersion("GpsTrackingPipeline", Workflow.DEFAULT_VERSION, 1);
+        if (trackingVersion >= 1 && assignedCourierId != null) {
+            gpsTrackingId = courierTrackingActivities.startTracking(assignedCourierId);
+        }
 
-        Workflow.await(() -> CourierDeliveryStatus.PICKED_UP.equals(currentStatus));
+        Workflow.await(() -> hasReached(CourierDeliveryStatus.PICKED_UP, monotonicStatusVersion));
         parentOrderWorkflow.updateStatus(OrderStatus.PICKED_UP);
 
-        Workflow.await(() -> CourierDeliveryStatus.DELIVERED.equals(currentStatus));
+        Workflow.await(() -> hasReached(CourierDeliveryStatus.DELIVERED, monotonicStatusVersion));
         parentOrderWorkflow.updateStatus(OrderStatus.COURIER_DELIVERED);
+
+        releaseCourier();
+    }
+
+    /**
+     * Stops tracking the courier and makes them available for other deliveries.
+     */
+    private void releaseCourier() {
+        if (gpsTrackingId != null) {
+            courierTrackingActivities.stopTracking();
+            gpsTrackingId = null;
+        }
+
+        if (assignedCourierId != null) {
+            courierDispatchActivities.releaseCourier();
+        }
+    }
+
+    /**
+     * Offers the job to the nearest available courier, moving on to the next nearest one whenever a courier
+     * rejects it or doesn't answer in time. Falls back to waiting for a manual assignment when nobody is
+     * available, and leaves the job as rejected after {@link #MAX_COURIER_ASSIGNMENTS} attempts.
+     */
+    private void dispatchCourier(CourierDeliveryJob courierDeliveryJob) {
+        List<String> rejectedBy = new ArrayList<>();
+        while (true) {
+            assignedCourierId = courierDispatchActivities.assignCourier(courierDeliveryJob, rejectedBy);
+            if (assignedCourierId == null) {
+                Workflow.await(() -> !CourierDeliveryStatus.CREATED.equals(currentStatus));
+                return;
+            }
+            Workflow.await(COURIER_RESPONSE_TIMEOUT, () -> !CourierDeliveryStatus.CREATED.equals(currentStatus));
+            if (!CourierDeliveryStatus.CREATED.equals(currentStatus)
+                    && !CourierDeliveryStatus.REJECTED.equals(currentStatus)) {
+                return;
+            }
+
+            rejectedBy.add(assignedCourierId);
+            courierDispatchActivities.releaseCourier();
+            assignedCourierId = null;
+            if (rejectedBy.size() >= MAX_COURIER_ASSIGNMENTS) {
+                currentStatus = CourierDeliveryStatus.REJECTED;
+                return;
+            }
+            currentStatus = CourierDeliveryStatus.CREATED;
+        }
+    }
+
+    /**
+     * Whether the delivery got to {@code status}, possibly moving past it already. Several signals can be handled
+     * in the same decision task, and the courier event gateway only signals the latest of a courier's updates.
+     */
+    private boolean hasReached(CourierDeliveryStatus status, int monotonicStatusVersion) {
+        if (monotonicStatusVersion < 1) {
+            return status.equals(currentStatus);
+        }
+        return currentStatus.ordinal() >= status.ordinal();
     }
 
     private OrderWorkflow getParentOrderWorkflow() {
@@ -59,9 +191,29 @@ public class CourierDeliveryWorkflowImpl implements CourierDeliveryWorkflow {
         this.currentStatus = status;
     }
 
+    @Override
+    public void updateCourierStatus(String courierId, CourierDeliveryStatus status) {
+        // A courier the job was taken from, e.g. after not answering in time, may still report on it
+        if (assignedCourierId != null && !assignedCourierId.equals(courierId)) {
+            logger.info("Ignored {} from {}, the delivery is assigned to {}", status, courierId, assignedCourierId);
+            return;
+        }
+        updateStatus(status);
+    }
+
     @Override
     public boolean courierSupportsGPSTracking() {
         // TODO Auto-generated method stub
         return supportsGpsTracking;
     }
+
+    @Override
+    public String getAssignedCourierId() {
+        return assignedCourierId;
+    }
+
+    @Override
+    public String getGpsTrackingId() {
+        return gpsTrackingId;
+    }
 }
@@ -0,0 +1,29 @@
+package com.instafood.orders.delivery.activities;
+
+import com.instafood.orders.delivery.CourierDeliveryJob;
+import com.uber.cadence.activity.ActivityMethod;
+
+import java.util.List;
+
+public interface CourierDispatchActivities {
+
+    /**
+     * Polled only by the {@code courierHub} process, whose dispatcher holds every courier and reservation, so the
+     * assignment and release of a delivery reach the same dispatcher whichever worker runs the workflow.
+     */
+    String TASK_LIST = "courier-dispatch-task-list";
+
+    /**
+     * Reserves the nearest available courier for the calling delivery workflow.
+     *
+     * @return the assigned courier id, or null if no courier is available
+     */
+    @ActivityMethod
+    String assignCourier(CourierDeliveryJob courierDeliveryJob, List<String> excludedCourierIds);
+
+    /**
+     * Frees the courier currently held by the calling delivery workflow.
+     */
+    @ActivityMethod
+    void releaseCourier();
+}
@@ -0,0 +1,27 @@
+package com.instafood.orders.delivery.activities;
+
+import com.uber.cadence.activity.ActivityMethod;
+
+public interface CourierTrackingActivities {
+
+    /**
+     * Trails are recorded by the {@link com.instafood.orders.delivery.tracking.CourierTracker} of the
+     * {@code courierHub} process, which also serves the courier API the pings come in through. Only that process
+     * polls this task list, so tracking starts and stops where the delivery's pings land.
+     */
+    String TASK_LIST = "courier-tracking-task-list";
+
+    /**
+     * Starts recording the positions reported by the courier making the calling delivery workflow.
+     *
+     * @return id to look the delivery's trail up with
+     */
+    @ActivityMethod
+    String startTracking(String courierId);
+
+    /**
+     * Stops recording positions for the calling delivery workflow and discards its trail.
+     */
+    @ActivityMethod
+    void stopTracking();
+}
@@ -0,0 +1,34 @@
+package com.instafood.orders.delivery.activities;
+
+import com.instafood.orders.delivery.tracking.CourierTracker;
+import com.uber.cadence.activity.Activity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Tracks deliveries on the {@link CourierTracker} fed by this process' courier API, so it must only be registered
+ * next to that API, i.e. on the {@code courierHub} process.
+ */
+public class GpsCourierTrackingActivities implements CourierTrackingActivities {
+
+    private static Logger logger = LoggerFactory.getLogger(GpsCourierTrackingActivities.class);
+
+    private final CourierTracker courierTracker;
+
+    public GpsCourierTrackingActivities(CourierTracker courierTracker) {
+        this.courierTracker = courierTracker;
+    }
+
+    @Override
+    public String startTracking(String courierId) {
+        String trackingId = Activity.getWorkflowExecution().getWorkflowId();
+        courierTracker.startTracking(trackingId, courierId);
+        logger.info("GPS tracking of delivery {} by courier {} started", trackingId, courierId);
+        return trackingId;
+    }
+
+    @Override
+    public void stopTracking() {
+        courierTracker.stopTracking(Activity.getWorkflowExecution().getWorkflowId());
+    }
+}
@@ -0,0 +1,37 @@
+package com.instafood.orders.delivery.activities;
+
+import com.instafood.orders.delivery.CourierDeliveryJob;
+import com.instafood.orders.delivery.dispatch.CourierDispatcher;
+import com.uber.cadence.activity.Activity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashSet;
+import java.util.List;
+
+public class SpatialCourierDispatchActivities implements CourierDispatchActivities {
+
+    private static Logger logger = LoggerFactory.getLogger(SpatialCourierDispatchActivities.class);
+
+    private final CourierDispatcher courierDispatcher;
+
+    public SpatialCourierDispatchActivities(CourierDispatcher courierDispatcher) {
+        this.courierDispatcher = courierDispatcher;
+    }
+
+    @Override
+    public String assignCourier(CourierDeliveryJob courierDeliveryJob, List<String> excludedCourierIds) {
+        String deliveryId = Activity.getWorkflowExecution().getWorkflowId();
+        String courierId = courierDispatcher.assign(deliveryId,
+                courierDeliveryJob.getRestaurant().getLatitude(),
+                courierDeliveryJob.getRestaurant().getLongitude(),
+                new HashSet<>(excludedCourierIds)).orElse(null);
+        logger.info("Delivery {} assigned to courier {}", deliveryId, courierId);
+        return courierId;
+    }
+
+    @Override
+    public void releaseCourier() {
+        courierDispatcher.release(Activity.getWorkflowExecution().getWorkflowId());
+    }
+}
@@ -0,0 +1,121 @@
+package com.instafood.orders.delivery.dispatch;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Matches deliveries with the nearest available courier.
+ * <p>
+ * Available couriers live in a {@link CourierLocationIndex}; assigning a courier to a delivery reserves it and
+ * takes it out of the index until the delivery releases it again (rejection, timeout or completion). Positions
+ * of busy couriers keep being tracked so they are indexed where they actually are once released.
+ * <p>
+ * Everything a courier's availability depends on changes within {@code assignedCouriers.compute} on that courier's
+ * entry, so a position update racing with an assignment can't put the assigned courier back in the index.
+ */
+public class CourierDispatcher {
+
+    private final CourierLocationIndex availableCouriers;
+    private final Map<String, double[]> positions = new ConcurrentHashMap<>();
+    // courier id -> delivery id
+    private final Map<String, String> assignedCouriers = new ConcurrentHashMap<>();
+    // delivery id -> courier id
+    private final Map<String, String> assignments = new ConcurrentHashMap<>();
+
+    public CourierDispatcher(CourierLocationIndex availableCouriers) {
+        this.availableCouriers = availableCouriers;
+    }
+
+    public CourierDispatcher() {
+        this(new CourierLocationIndex());
+    }
+
+    /**
+     * Records the latest position of a courier, making it available for dispatch if it isn't busy.
+     */
+    public void updatePosition(String courierId, double latitude, double longitude) {
+        assignedCouriers.compute(courierId, (id, deliveryId) -> {
+            positions.put(id, new double[]{latitude, longitude});
+            if (deliveryId == null) {
+                availableCouriers.update(id, latitude, longitude);
+            }
+            return deliveryId;
+        });
+    }
+
+    /**
+     * Takes a courier out of dispatch, e.g. at the end of their shift.
+     */
+    public void goOffline(String courierId) {
+        assignedCouriers.compute(courierId, (id, deliveryId) -> {
+            positions.remove(id);
+            availableCouriers.remove(id);
+            return deliveryId;
+        });
+    }
+
+    /**
+     * Reserves the nearest available courier for a delivery picking up at the given point, skipping the ones
+     * in {@code excludedCourierIds} (typically couriers that already rejected it). Assigning the same delivery
+     * again returns the courier it already holds, so the call can safely be retried.
+     */
+    public Optional<String> assign(String deliveryId, double latitude, double longitude,
+                                   Collection<String> excludedCourierIds) {
+        String currentCourierId = assignments.get(deliveryId);
+        if (currentCourierId != null && !excludedCourierIds.contains(currentCourierId)) {
+            return Optional.of(currentCourierId);
+        }
+        if (currentCourierId != null) {
+            release(deliveryId);
+        }
+        while (true) {
+            String courierId = availableCouriers.nearest(latitude, longitude,
+                    candidate -> !excludedCourierIds.contains(candidate) && !assignedCouriers.containsKey(candidate));
+            if (courierId == null) {
+                return Optional.empty();
+            }
+            // Another delivery may have grabbed the same courier in the meantime, in which case we look again
+            String assignedDeliveryId = assignedCouriers.compute(courierId, (id, current) -> {
+                if (current != null) {
+                    return current;
+                }
+                availableCouriers.remove(id);
+                return deliveryId;
+            });
+            if (deliveryId.equals(assignedDeliveryId)) {
+                assignments.put(deliveryId, courierId);
+                return Optional.of(courierId);
+            }
+        }
+    }
+
+    /**
+     * Frees the courier held by a delivery, putting it back at its last known position.
+     */
+    public void release(String deliveryId) {
+        String courierId = assignments.remove(deliveryId);
+        if (courierId == null) {
+            return;
+        }
+        assignedCouriers.computeIfPresent(courierId, (id, current) -> {
+            if (!current.equals(deliveryId)) {
+                return current;
+            }
+            double[] position = positions.get(id);
+            if (position != null) {
+                availableCouriers.update(id, position[0], position[1]);
+            }
+            return null;
+        });
+    }
+
+    public Optional<String> getAssignedCourier(String deliveryId) {
+        return Optional.ofNullable(assignments.get(deliveryId));
+    }
+
+    public int availableCourierCount() {
+        return availableCouriers.size();
+    }
+}
@@ -0,0 +1,219 @@
+package com.instafood.orders.delivery.dispatch;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * In-memory spatial index of courier positions.
+ * <p>
+ * Positions are bucketed into a uniform latitude/longitude grid. A nearest neighbour query walks rings of cells
+ * around the target and stops as soon as no cell in the next ring can hold anything closer than the best
+ * courier found so far, so it only ever looks at a handful of cells. Moving a courier within its cell is a
+ * couple of field writes; moving to another cell touches the two cells involved.
+ */
+public class CourierLocationIndex {
+
+    private static final double EARTH_RADIUS_METERS = 6_371_000;
+    private static final double METERS_PER_DEGREE = Math.toRadians(1) * EARTH_RADIUS_METERS;
+
+    private final double cellSizeDegrees;
+    private final int maxRings;
+    private final Map<Long, Cell> cells = new ConcurrentHashMap<>();
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * @param cellSizeDegrees       side of a grid cell, ~0.005 (about 500m) suits city-wide courier fleets
+     * @param maxSearchRadiusMeters couriers further away than this are never returned
+     */
+    public CourierLocationIndex(double cellSizeDegrees, double maxSearchRadiusMeters) {
+        this.cellSizeDegrees = cellSizeDegrees;
+        this.maxRings = (int) Math.ceil(maxSearchRadiusMeters / (cellSizeDegrees * METERS_PER_DEGREE)) + 1;
+    }
+
+    public CourierLocationIndex() {
+        this(0.005, 50_000);
+    }
+
+    public void update(String courierId, double latitude, double longitude) {
+        long cellKey = cellKey(cellIndex(latitude), cellIndex(longitude));
+        while (true) {
+            Entry entry = entries.computeIfAbsent(courierId, Entry::new);
+            synchronized (entry) {
+                if (entry.removed) {
+                    // Lost a race with remove(), go again with a fresh entry
+                    continue;
+                }
+                if (entry.cell != null && entry.cellKey == cellKey) {
+                    entry.cell.move(entry, latitude, longitude);
+                    return;
+                }
+                if (entry.cell != null) {
+                    entry.cell.remove(entry);
+                }
+                entry.cell = cells.computeIfAbsent(cellKey, key -> new Cell());
+                entry.cell.add(entry, latitude, longitude);
+                entry.cellKey = cellKey;
+                return;
+            }
+        }
+    }
+
+    public void remove(String courierId) {
+        Entry entry = entries.remove(courierId);
+        if (entry != null) {
+            synchronized (entry) {
+                entry.removed = true;
+                if (entry.cell != null) {
+                    entry.cell.remove(entry);
+                    entry.cell = null;
+                }
+            }
+        }
+    }
+
+    public boolean contains(String courierId) {
+        return entries.containsKey(courierId);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Nearest indexed courier to the given point that satisfies {@code filter}, or null if there is none within
+     * the maximum search radius.
+     */
+    public String nearest(double latitude, double longitude, Predicate<String> filter) {
+        int latIndex = cellIndex(latitude);
+        int lonIndex = cellIndex(longitude);
+        double metersPerDegreeLon = METERS_PER_DEGREE * Math.cos(Math.toRadians(latitude));
+        double ringMeters = cellSizeDegrees * Math.min(METERS_PER_DEGREE, metersPerDegreeLon);
+
+        Nearest nearest = new Nearest(latitude, longitude, metersPerDegreeLon, filter);
+        for (int ring = 0; ring <= maxRings; ring++) {
+            // The target can sit anywhere in its own cell, so ring r is at least r - 1 cells away
+            if (ring > 0 && nearest.courierId != null
+                    && nearest.distanceSquared <= square((ring - 1) * ringMeters)) {
+                break;
+            }
+            for (int dLat = -ring; dLat <= ring; dLat++) {
+                boolean edgeRow = Math.abs(dLat) == ring;
+                for (int dLon = -ring; dLon <= ring; dLon += edgeRow ? 1 : 2 * ring) {
+                    Cell cell = cells.get(cellKey(latIndex + dLat, lonIndex + dLon));
+                    if (cell != null) {
+                        cell.visit(nearest);
+                    }
+                    if (ring == 0) {
+                        break;
+                    }
+                }
+            }
+        }
+        return nearest.courierId;
+    }
+
+    private int cellIndex(double degrees) {
+        return (int) Math.floor(degrees / cellSizeDegrees);
+    }
+
+    private static long cellKey(int latIndex, int lonIndex) {
+        return ((long) latIndex << 32) | (lonIndex & 0xffffffffL);
+    }
+
+    private static double square(double value) {
+        return value * value;
+    }
+
+    private static final class Entry {
+        private final String courierId;
+        private long cellKey;
+        private Cell cell;
+        // Position of the entry within its cell, only accessed while holding the cell's lock
+        private int slot;
+        private boolean removed;
+
+        private Entry(String courierId) {
+            this.courierId = courierId;
+        }
+    }
+
+    private static final class Nearest {
+        private final double latitude;
+        private final double longitude;
+        private final double metersPerDegreeLon;
+        private final Predicate<String> filter;
+        private String courierId;
+        private double distanceSquared = Double.MAX_VALUE;
+
+        private Nearest(double latitude, double longitude, double metersPerDegreeLon, Predicate<String> filter) {
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.metersPerDegreeLon = metersPerDegreeLon;
+            this.filter = filter;
+        }
+
+        private void offer(String candidateId, double candidateLatitude, double candidateLongitude) {
+            // Equirectangular approximation, accurate enough at city scale
+            double dy = (candidateLatitude - latitude) * METERS_PER_DEGREE;
+            double dx = (candidateLongitude - longitude) * metersPerDegreeLon;
+            double candidateDistanceSquared = dx * dx + dy * dy;
+            if (candidateDistanceSquared < distanceSquared && filter.test(candidateId)) {
+                distanceSquared = candidateDistanceSquared;
+                courierId = candidateId;
+            }
+        }
+    }
+
+    /**
+     * Couriers in a grid cell. Coordinates are kept in parallel arrays so a query scans contiguous memory
+     * instead of chasing a pointer per courier.
+     */
+    private static final class Cell {
+        private Entry[] entries = new Entry[4];
+        private String[] courierIds = new String[4];
+        private double[] latitudes = new double[4];
+        private double[] longitudes = new double[4];
+        private int size;
+
+        private synchronized void add(Entry entry, double latitude, double longitude) {
+            if (size == entries.length) {
+                entries = Arrays.copyOf(entries, size * 2);
+                courierIds = Arrays.copyOf(courierIds, size * 2);
+                latitudes = Arrays.copyOf(latitudes, size * 2);
+                longitudes = Arrays.copyOf(longitudes, size * 2);
+            }
+            entries[size] = entry;
+            courierIds[size] = entry.courierId;
+            latitudes[size] = latitude;
+            longitudes[size] = longitude;
+            entry.slot = size++;
+        }
+
+        private synchronized void move(Entry entry, double latitude, double longitude) {
+            latitudes[entry.slot] = latitude;
+            longitudes[entry.slot] = longitude;
+        }
+
+        private synchronized void remove(Entry entry) {
+            int slot = entry.slot;
+            int last = --size;
+            if (slot != last) {
+                entries[slot] = entries[last];
+                courierIds[slot] = courierIds[last];
+                latitudes[slot] = latitudes[last];
+                longitudes[slot] = longitudes[last];
+                entries[slot].slot = slot;
+            }
+            entries[last] = null;
+            courierIds[last] = null;
+        }
+
+        private synchronized void visit(Nearest nearest) {
+            for (int i = 0; i < size; i++) {
+                nearest.offer(courierIds[i], latitudes[i], longitudes[i]);
+            }
+        }
+    }
+}
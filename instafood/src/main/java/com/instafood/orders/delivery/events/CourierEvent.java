@@ -0,0 +1,65 @@
+package com.instafood.orders.delivery.events;
+
+import com.instafood.orders.delivery.CourierDeliveryStatus;
+
+import java.util.Objects;
+
+/**
+ * A delivery status reported by a courier's device.
+ */
+public class CourierEvent {
+    private final String courierId;
+    private final CourierDeliveryStatus status;
+
+    public CourierEvent(String courierId, CourierDeliveryStatus status) {
+        this.courierId = courierId;
+        this.status = status;
+    }
+
+    public String getCourierId() {
+        return courierId;
+    }
+
+    public CourierDeliveryStatus getStatus() {
+        return status;
+    }
+
+    /**
+     * How far along the delivery the event is. Accepting and rejecting a job are answers to the same offer.
+     */
+    int getProgress() {
+        switch (status) {
+            case ACCEPTED:
+            case REJECTED:
+                return 1;
+            case PICKED_UP:
+                return 2;
+            case DELIVERED:
+                return 3;
+            default:
+                return 0;
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        CourierEvent that = (CourierEvent) o;
+        return Objects.equals(courierId, that.courierId) && status == that.status;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(courierId, status);
+    }
+
+    @Override
+    public String toString() {
+        return status + " by " + courierId;
+    }
+}
@@ -0,0 +1,273 @@
+package com.instafood.orders.delivery.events;
+
+import com.instafood.orders.delivery.CourierDeliveryStatus;
+import com.instafood.orders.delivery.CourierDeliveryWorkflow;
+import com.uber.cadence.client.WorkflowClient;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Turns status events reported by courier devices into {@link CourierDeliveryWorkflow#updateCourierStatus} signals,
+ * so devices don't need a Cadence connection or to know workflow ids beyond the delivery id they were assigned.
+ * Signals carry the reporting courier, the workflow only takes them from the courier it assigned.
+ * <p>
+ * Every delivery has a mailbox of events waiting to be signalled, drained by at most one thread at a time so a
+ * delivery's signals go out in the order they came in. Mailboxes are drained by a fixed pool of {@code signallers},
+ * which bounds the concurrent calls to Cadence however many devices report at once. Events are cleaned up on
+ * their way in:
+ * <ul>
+ *     <li>an event the delivery already got (devices retry on flaky networks) is dropped,</li>
+ *     <li>an event behind what the same courier already reported (e.g. a late ACCEPTED after their PICKED_UP) is
+ *     dropped. Couriers are only compared with themselves: whatever a courier the job was taken from still reports
+ *     is left for the workflow to ignore, it never holds back the courier the job went to next,</li>
+ *     <li>an event that hasn't been signalled yet is replaced by a later one from the same courier, e.g. PICKED_UP
+ *     and DELIVERED queued behind a slow signal go out as a single DELIVERED. Rejections are always signalled, the
+ *     workflow needs them to offer the job to someone else.</li>
+ * </ul>
+ */
+public class CourierEventGateway {
+
+    private static final int SIGNAL_ATTEMPTS = 3;
+    private static final Duration SIGNAL_RETRY_INTERVAL = Duration.ofMillis(100);
+
+    private static Logger logger = LoggerFactory.getLogger(CourierEventGateway.class);
+
+    private final DeliverySignaller signaller;
+    private final int maxPendingEvents;
+    private final Duration idleMailboxTimeout;
+    private final ExecutorService signallers;
+    private final Map<String, Mailbox> mailboxes = new ConcurrentHashMap<>();
+    private final AtomicInteger pendingEvents = new AtomicInteger();
+    private final AtomicLong nextEvictionMillis;
+    private final Counter queuedEvents = Metrics.counter("courier.events", "result", "queued");
+    private final Counter coalescedEvents = Metrics.counter("courier.events", "result", "coalesced");
+    private final Counter duplicateEvents = Metrics.counter("courier.events", "result", "duplicate");
+    private final Counter staleEvents = Metrics.counter("courier.events", "result", "stale");
+    private final Counter rejectedEvents = Metrics.counter("courier.events", "result", "rejected");
+    private final Counter signalledEvents = Metrics.counter("courier.events.signals", "result", "signalled");
+    private final Counter failedEvents = Metrics.counter("courier.events.signals", "result", "failed");
+
+    /**
+     * @param signallers       threads signalling workflows, i.e. concurrent calls to Cadence
+     * @param maxPendingEvents events waiting to be signalled before new ones are turned away
+     */
+    public CourierEventGateway(WorkflowClient workflowClient, int signallers, int maxPendingEvents) {
+        this((deliveryId, courierId, status) -> workflowClient.newWorkflowStub(CourierDeliveryWorkflow.class,
+                deliveryId).updateCourierStatus(courierId, status), signallers, maxPendingEvents, Duration.ofHours(1));
+    }
+
+    CourierEventGateway(DeliverySignaller signaller, int signallers, int maxPendingEvents,
+                        Duration idleMailboxTimeout) {
+        this.signaller = signaller;
+        this.maxPendingEvents = maxPendingEvents;
+        this.idleMailboxTimeout = idleMailboxTimeout;
+        this.signallers = Executors.newFixedThreadPool(signallers, runnable -> {
+            Thread thread = new Thread(runnable, "courier-event-signaller");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.nextEvictionMillis = new AtomicLong(System.currentTimeMillis() + idleMailboxTimeout.toMillis());
+        Metrics.gauge("courier.events.pending", pendingEvents);
+    }
+
+    /**
+     * Takes an event for the given delivery, returning before it's signalled.
+     */
+    public Result offer(String deliveryId, CourierEvent event) {
+        evictIdleMailboxesIfDue();
+        while (true) {
+            Mailbox mailbox = mailboxes.computeIfAbsent(deliveryId, Mailbox::new);
+            synchronized (mailbox) {
+                if (mailbox.evicted) {
+                    // Lost a race with the eviction, go again with a fresh mailbox
+                    continue;
+                }
+                Result result = mailbox.add(event);
+                count(result);
+                if (result == Result.QUEUED && !mailbox.draining) {
+                    mailbox.draining = true;
+                    signallers.execute(() -> drain(mailbox));
+                }
+                return result;
+            }
+        }
+    }
+
+    public int getPendingEvents() {
+        return pendingEvents.get();
+    }
+
+    public void stop() {
+        signallers.shutdown();
+    }
+
+    private void drain(Mailbox mailbox) {
+        while (true) {
+            CourierEvent event;
+            synchronized (mailbox) {
+                event = mailbox.events.pollFirst();
+                if (event == null) {
+                    mailbox.draining = false;
+                    return;
+                }
+                pendingEvents.decrementAndGet();
+            }
+            boolean signalled = signal(mailbox.deliveryId, event);
+            synchronized (mailbox) {
+                if (!signalled) {
+                    // A device retrying an event that couldn't be signalled gets another chance
+                    mailbox.seen.remove(event);
+                }
+                mailbox.lastActivityMillis = System.currentTimeMillis();
+            }
+        }
+    }
+
+    private boolean signal(String deliveryId, CourierEvent event) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                signaller.signal(deliveryId, event.getCourierId(), event.getStatus());
+                signalledEvents.increment();
+                return true;
+            } catch (RuntimeException e) {
+                if (attempt >= SIGNAL_ATTEMPTS) {
+                    logger.warn("Couldn't signal {} to delivery {}", event, deliveryId, e);
+                    failedEvents.increment();
+                    return false;
+                }
+            }
+            try {
+                Thread.sleep(SIGNAL_RETRY_INTERVAL.toMillis() << (attempt - 1));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failedEvents.increment();
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Mailboxes are kept after their last event so that late retries are still recognised, until they've been
+     * idle for {@code idleMailboxTimeout}.
+     */
+    private void evictIdleMailboxesIfDue() {
+        long now = System.currentTimeMillis();
+        long due = nextEvictionMillis.get();
+        if (now < due || !nextEvictionMillis.compareAndSet(due, now + idleMailboxTimeout.toMillis() / 4)) {
+            return;
+        }
+        long threshold = now - idleMailboxTimeout.toMillis();
+        mailboxes.values().removeIf(mailbox -> {
+            synchronized (mailbox) {
+                mailbox.evicted = !mailbox.draining && mailbox.lastActivityMillis < threshold;
+                return mailbox.evicted;
+            }
+        });
+    }
+
+    private void count(Result result) {
+        switch (result) {
+            case QUEUED:
+                queuedEvents.increment();
+                break;
+            case COALESCED:
+                coalescedEvents.increment();
+                break;
+            case DUPLICATE:
+                duplicateEvents.increment();
+                break;
+            case STALE:
+                staleEvents.increment();
+                break;
+            default:
+                rejectedEvents.increment();
+        }
+    }
+
+    public enum Result {
+        /**
+         * Will be signalled.
+         */
+        QUEUED,
+        /**
+         * Replaced an event of the same courier that hadn't been signalled yet.
+         */
+        COALESCED,
+        /**
+         * Already taken for the delivery, nothing to do.
+         */
+        DUPLICATE,
+        /**
+         * Behind what the same courier already reported, nothing to do.
+         */
+        STALE,
+        /**
+         * Too many events are waiting to be signalled, the device should retry later.
+         */
+        REJECTED
+    }
+
+    interface DeliverySignaller {
+        void signal(String deliveryId, String courierId, CourierDeliveryStatus status);
+    }
+
+    private final class Mailbox {
+        private final String deliveryId;
+        private final Deque<CourierEvent> events = new ArrayDeque<>();
+        // Every event taken, a handful per delivery
+        private final Set<CourierEvent> seen = new HashSet<>();
+        // Latest event taken from each courier, only compared with the same courier's later ones
+        private final Map<String, CourierEvent> latestByCourier = new HashMap<>();
+        private boolean draining;
+        private boolean evicted;
+        private long lastActivityMillis = System.currentTimeMillis();
+
+        private Mailbox(String deliveryId) {
+            this.deliveryId = deliveryId;
+        }
+
+        private Result add(CourierEvent event) {
+            lastActivityMillis = System.currentTimeMillis();
+            if (seen.contains(event)) {
+                return Result.DUPLICATE;
+            }
+            CourierEvent latest = latestByCourier.get(event.getCourierId());
+            if (latest != null && latest.getStatus() != CourierDeliveryStatus.REJECTED
+                    && event.getProgress() < latest.getProgress()) {
+                return Result.STALE;
+            }
+            CourierEvent queued = events.peekLast();
+            if (queued != null && queued.getStatus() != CourierDeliveryStatus.REJECTED
+                    && queued.getCourierId() != null && queued.getCourierId().equals(event.getCourierId())) {
+                events.pollLast();
+                events.addLast(event);
+                seen.add(event);
+                latestByCourier.put(event.getCourierId(), event);
+                return Result.COALESCED;
+            }
+            if (pendingEvents.get() >= maxPendingEvents) {
+                return Result.REJECTED;
+            }
+            events.addLast(event);
+            seen.add(event);
+            latestByCourier.put(event.getCourierId(), event);
+            pendingEvents.incrementAndGet();
+            return Result.QUEUED;
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package com.instafood.orders.delivery.tracking;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Ingests courier location pings and keeps the trail of every delivery being tracked.
+ * <p>
+ * {@link #offer(GpsPing)} never blocks: pings go into a bounded queue and are dropped when it's full, which only
+ * costs a few seconds of resolution since the courier sends a fresh one shortly after. A single thread drains
+ * the queue in batches, appending to the trail of the delivery the courier is on and forwarding positions to
+ * {@code positionListener} (e.g. courier dispatch). GPS points live here only, workflows refer to a trail by its
+ * tracking id.
+ */
+public class CourierTracker {
+
+    private static Logger logger = LoggerFactory.getLogger(CourierTracker.class);
+
+    private final BlockingQueue<GpsPing> pings;
+    private final int batchSize;
+    private final Duration idleTrackingTimeout;
+    private final Consumer<GpsPing> positionListener;
+    private final Map<String, Tracking> trackingById = new ConcurrentHashMap<>();
+    private final Map<String, Tracking> trackingByCourier = new ConcurrentHashMap<>();
+    private final Map<String, GpsPing> latestPings = new ConcurrentHashMap<>();
+    private final Counter acceptedPings = Metrics.counter("courier.gps.pings", "result", "accepted");
+    private final Counter droppedPings = Metrics.counter("courier.gps.pings", "result", "dropped");
+    private volatile Thread drainer;
+
+    /**
+     * @param capacity            pings buffered before new ones are dropped
+     * @param batchSize           pings processed per drain iteration
+     * @param idleTrackingTimeout trails of deliveries that were never stopped are discarded after this long
+     *                            without pings
+     */
+    public CourierTracker(int capacity, int batchSize, Duration idleTrackingTimeout,
+                          Consumer<GpsPing> positionListener) {
+        this.pings = new ArrayBlockingQueue<>(capacity);
+        this.batchSize = batchSize;
+        this.idleTrackingTimeout = idleTrackingTimeout;
+        this.positionListener = positionListener;
+    }
+
+    public CourierTracker(Consumer<GpsPing> positionListener) {
+        this(65_536, 1_024, Duration.ofHours(2), positionListener);
+    }
+
+    /**
+     * Queues a ping for processing.
+     *
+     * @return false if the ping was dropped because the pipeline is saturated
+     */
+    public boolean offer(GpsPing ping) {
+        if (pings.offer(ping)) {
+            acceptedPings.increment();
+            return true;
+        }
+        droppedPings.increment();
+        return false;
+    }
+
+    /**
+     * Starts recording the trail of a delivery made by the given courier. Calling it again for the same tracking
+     * id keeps the existing trail, so it can safely be retried.
+     */
+    public void startTracking(String trackingId, String courierId) {
+        Tracking tracking = trackingById.computeIfAbsent(trackingId, id -> {
+            Tracking created = new Tracking(courierId);
+            GpsPing latest = latestPings.get(courierId);
+            if (latest != null) {
+                created.append(latest);
+            }
+            return created;
+        });
+        trackingByCourier.put(courierId, tracking);
+    }
+
+    public void stopTracking(String trackingId) {
+        Tracking tracking = trackingById.remove(trackingId);
+        if (tracking != null) {
+            trackingByCourier.remove(tracking.courierId, tracking);
+        }
+    }
+
+    public Optional<GpsPoint> getLatestPosition(String trackingId) {
+        return Optional.ofNullable(trackingById.get(trackingId)).map(tracking -> tracking.trail.latest());
+    }
+
+    public Optional<List<GpsPoint>> getTrail(String trackingId) {
+        return Optional.ofNullable(trackingById.get(trackingId)).map(tracking -> tracking.trail.points());
+    }
+
+    public int getTrackedDeliveries() {
+        return trackingById.size();
+    }
+
+    public synchronized void start() {
+        if (drainer != null) {
+            return;
+        }
+        drainer = new Thread(this::drainLoop, "courier-gps-drainer");
+        drainer.setDaemon(true);
+        drainer.start();
+    }
+
+    public synchronized void stop() {
+        if (drainer != null) {
+            drainer.interrupt();
+            drainer = null;
+        }
+    }
+
+    /**
+     * Processes whatever is queued, for callers that don't run the drain thread.
+     */
+    void drain() {
+        List<GpsPing> batch = new ArrayList<>(batchSize);
+        while (pings.drainTo(batch, batchSize) > 0) {
+            process(batch);
+            batch.clear();
+        }
+    }
+
+    private void drainLoop() {
+        List<GpsPing> batch = new ArrayList<>(batchSize);
+        long nextEvictionMillis = System.currentTimeMillis() + idleTrackingTimeout.toMillis();
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                GpsPing first = pings.poll(1, TimeUnit.SECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    pings.drainTo(batch, batchSize - 1);
+                    process(batch);
+                    batch.clear();
+                }
+                if (System.currentTimeMillis() >= nextEvictionMillis) {
+                    evictIdleTracking();
+                    nextEvictionMillis = System.currentTimeMillis() + idleTrackingTimeout.toMillis() / 4;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                logger.error("Failed to process GPS pings", e);
+                batch.clear();
+            }
+        }
+    }
+
+    private void process(List<GpsPing> batch) {
+        for (GpsPing ping : batch) {
+            GpsPing previous = latestPings.get(ping.getCourierId());
+            if (previous != null && previous.getTimestampMillis() > ping.getTimestampMillis()) {
+                continue;
+            }
+            latestPings.put(ping.getCourierId(), ping);
+            Tracking tracking = trackingByCourier.get(ping.getCourierId());
+            if (tracking != null) {
+                tracking.append(ping);
+            }
+            positionListener.accept(ping);
+        }
+    }
+
+    private void evictIdleTracking() {
+        long threshold = System.currentTimeMillis() - idleTrackingTimeout.toMillis();
+        trackingById.forEach((trackingId, tracking) -> {
+            if (tracking.lastUpdatedMillis < threshold) {
+                logger.warn("Discarding GPS trail {} of courier {}, no pings since {}",
+                        trackingId, tracking.courierId, tracking.lastUpdatedMillis);
+                stopTracking(trackingId);
+            }
+        });
+        latestPings.values().removeIf(ping -> ping.getTimestampMillis() < threshold);
+    }
+
+    private static final class Tracking {
+        private final String courierId;
+        private final GpsTrail trail = new GpsTrail();
+        private volatile long lastUpdatedMillis = System.currentTimeMillis();
+
+        private Tracking(String courierId) {
+            this.courierId = courierId;
+        }
+
+        private void append(GpsPing ping) {
+            trail.append(ping.getTimestampMillis(), ping.getLatitude(), ping.getLongitude());
+            lastUpdatedMillis = System.currentTimeMillis();
+        }
+    }
+}
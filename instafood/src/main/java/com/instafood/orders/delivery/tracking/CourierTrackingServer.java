@@ -0,0 +1,207 @@
+package com.instafood.orders.delivery.tracking;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.instafood.orders.delivery.CourierDeliveryStatus;
+import com.instafood.orders.delivery.events.CourierEvent;
+import com.instafood.orders.delivery.events.CourierEventGateway;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * HTTP API used by courier devices to report their location and how their deliveries go, and by anyone holding a
+ * tracking id (see {@code CourierDeliveryWorkflow.getGpsTrackingId}) to follow a delivery.
+ * <ul>
+ *     <li>{@code POST /couriers/{courierId}/location} with {@code {"latitude": .., "longitude": ..,
+ *     "timestampMillis": ..}}, or an array of them for pings buffered while offline. Answers 202 once queued
+ *     and 503 when the pipeline is saturated.</li>
+ *     <li>{@code GET /deliveries/{trackingId}/location} latest position of a delivery.</li>
+ *     <li>{@code GET /deliveries/{trackingId}/trail} every position reported during a delivery.</li>
+ *     <li>{@code POST /deliveries/{deliveryId}/events} with {@code {"courierId": .., "status": ..}}, the delivery id
+ *     being {@code <order workflow id>/courier} and the status
+ *     being ACCEPTED, REJECTED, PICKED_UP or DELIVERED. Answers 202 once queued for the delivery workflow, 200 when
+ *     there's nothing new in it and 503 when too many events are waiting to be signalled.</li>
+ * </ul>
+ * Pings and trails only exist in the process serving this API, so courier devices and trail readers have to reach
+ * the one process running it rather than any instafood worker.
+ */
+public class CourierTrackingServer {
+
+    private static Logger logger = LoggerFactory.getLogger(CourierTrackingServer.class);
+
+    private final CourierTracker tracker;
+    private final CourierEventGateway eventGateway;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private HttpServer server;
+    private ExecutorService executor;
+
+    public CourierTrackingServer(CourierTracker tracker) {
+        this(tracker, null);
+    }
+
+    public CourierTrackingServer(CourierTracker tracker, CourierEventGateway eventGateway) {
+        this.tracker = tracker;
+        this.eventGateway = eventGateway;
+    }
+
+    public void start(int port, int threads) {
+        try {
+            server = HttpServer.create(new InetSocketAddress(port), 0);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        executor = Executors.newFixedThreadPool(threads);
+        server.setExecutor(executor);
+        server.createContext("/couriers/", this::handleCourier);
+        server.createContext("/deliveries/", this::handleDelivery);
+        server.start();
+        logger.info("Serving courier tracking API on port {}", port);
+    }
+
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdown();
+        }
+    }
+
+    private void handleCourier(HttpExchange exchange) throws IOException {
+        // /couriers/{courierId}/location
+        String[] path = exchange.getRequestURI().getPath().split("/");
+        if (path.length != 4 || !"location".equals(path[3])) {
+            send(exchange, 404, null);
+            return;
+        }
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            send(exchange, 405, null);
+            return;
+        }
+        JsonNode body;
+        try (InputStream requestBody = exchange.getRequestBody()) {
+            body = objectMapper.readTree(requestBody);
+        } catch (IOException e) {
+            send(exchange, 400, null);
+            return;
+        }
+        if (body == null || body.isMissingNode()) {
+            send(exchange, 400, null);
+            return;
+        }
+        long receivedAtMillis = System.currentTimeMillis();
+        boolean accepted = true;
+        Iterable<JsonNode> locations = body.isArray() ? body : Collections.singletonList(body);
+        for (JsonNode location : locations) {
+            if (!location.path("latitude").isNumber() || !location.path("longitude").isNumber()) {
+                send(exchange, 400, null);
+                return;
+            }
+            accepted &= tracker.offer(new GpsPing(path[2],
+                    location.path("timestampMillis").asLong(receivedAtMillis),
+                    location.get("latitude").asDouble(),
+                    location.get("longitude").asDouble()));
+        }
+        if (accepted) {
+            send(exchange, 202, null);
+        } else {
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            send(exchange, 503, null);
+        }
+    }
+
+    private void handleDelivery(HttpExchange exchange) throws IOException {
+        // /deliveries/{trackingId}/location, /deliveries/{trackingId}/trail or /deliveries/{deliveryId}/events
+        String[] path = exchange.getRequestURI().getPath().split("/");
+        if (path.length != 4) {
+            send(exchange, 404, null);
+            return;
+        }
+        if ("events".equals(path[3])) {
+            handleEvent(exchange, path[2]);
+            return;
+        }
+        if (!"GET".equals(exchange.getRequestMethod())) {
+            send(exchange, 405, null);
+            return;
+        }
+        Optional<?> response;
+        if ("location".equals(path[3])) {
+            response = tracker.getLatestPosition(path[2]);
+        } else if ("trail".equals(path[3])) {
+            response = tracker.getTrail(path[2]);
+        } else {
+            response = Optional.empty();
+        }
+        if (response.isPresent()) {
+            send(exchange, 200, objectMapper.writeValueAsBytes(response.get()));
+        } else {
+            send(exchange, 404, null);
+        }
+    }
+
+    private void handleEvent(HttpExchange exchange, String deliveryId) throws IOException {
+        if (eventGateway == null) {
+            send(exchange, 404, null);
+            return;
+        }
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            send(exchange, 405, null);
+            return;
+        }
+        JsonNode body;
+        try (InputStream requestBody = exchange.getRequestBody()) {
+            body = objectMapper.readTree(requestBody);
+        } catch (IOException e) {
+            send(exchange, 400, null);
+            return;
+        }
+        CourierDeliveryStatus status = body == null ? null : parseStatus(body.path("status").asText());
+        if (status == null || CourierDeliveryStatus.CREATED.equals(status) || !body.path("courierId").isTextual()) {
+            send(exchange, 400, null);
+            return;
+        }
+        switch (eventGateway.offer(deliveryId, new CourierEvent(body.get("courierId").asText(), status))) {
+            case QUEUED:
+            case COALESCED:
+                send(exchange, 202, null);
+                break;
+            case REJECTED:
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                send(exchange, 503, null);
+                break;
+            default:
+                send(exchange, 200, null);
+        }
+    }
+
+    private static CourierDeliveryStatus parseStatus(String status) {
+        try {
+            return CourierDeliveryStatus.valueOf(status);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static void send(HttpExchange exchange, int status, byte[] body) throws IOException {
+        if (body == null) {
+            exchange.sendResponseHeaders(status, -1);
+            exchange.close();
+            return;
+        }
+        exchange.getResponseHeaders().set("content-type", "application/json");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream responseBody = exchange.getResponseBody()) {
+            responseBody.write(body);
+        }
+    }
+}
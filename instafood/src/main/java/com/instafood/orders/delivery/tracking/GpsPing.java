@@ -0,0 +1,34 @@
+package com.instafood.orders.delivery.tracking;
+
+/**
+ * A location report sent by a courier's device.
+ */
+public class GpsPing {
+    private final String courierId;
+    private final long timestampMillis;
+    private final double latitude;
+    private final double longitude;
+
+    public GpsPing(String courierId, long timestampMillis, double latitude, double longitude) {
+        this.courierId = courierId;
+        this.timestampMillis = timestampMillis;
+        this.latitude = latitude;
+        this.longitude = longitude;
+    }
+
+    public String getCourierId() {
+        return courierId;
+    }
+
+    public long getTimestampMillis() {
+        return timestampMillis;
+    }
+
+    public double getLatitude() {
+        return latitude;
+    }
+
+    public double getLongitude() {
+        return longitude;
+    }
+}
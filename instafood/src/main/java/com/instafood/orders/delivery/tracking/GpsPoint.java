@@ -0,0 +1,25 @@
+package com.instafood.orders.delivery.tracking;
+
+public class GpsPoint {
+    private final long timestampMillis;
+    private final double latitude;
+    private final double longitude;
+
+    public GpsPoint(long timestampMillis, double latitude, double longitude) {
+        this.timestampMillis = timestampMillis;
+        this.latitude = latitude;
+        this.longitude = longitude;
+    }
+
+    public long getTimestampMillis() {
+        return timestampMillis;
+    }
+
+    public double getLatitude() {
+        return latitude;
+    }
+
+    public double getLongitude() {
+        return longitude;
+    }
+}
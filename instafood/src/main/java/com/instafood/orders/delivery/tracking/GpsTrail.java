@@ -0,0 +1,108 @@
+package com.instafood.orders.delivery.tracking;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compact, append-only trail of the positions reported during a delivery.
+ * <p>
+ * Coordinates are stored as fixed point micro-degrees (about 11cm) and every point is written as the zigzag
+ * varint encoded difference to the previous one. Consecutive pings a few seconds apart only move a few metres,
+ * so a point typically takes 5 or 6 bytes instead of the 24 of its raw form.
+ */
+public class GpsTrail {
+
+    private static final double SCALE = 1_000_000;
+
+    private byte[] buffer = new byte[64];
+    private int length;
+    private int size;
+    private long lastTimestampMillis;
+    private int lastLatitude;
+    private int lastLongitude;
+
+    /**
+     * Appends a position, ignoring it if it's older than the last one (pings can arrive out of order).
+     *
+     * @return whether the point was added
+     */
+    public synchronized boolean append(long timestampMillis, double latitude, double longitude) {
+        if (size > 0 && timestampMillis < lastTimestampMillis) {
+            return false;
+        }
+        int fixedLatitude = (int) Math.round(latitude * SCALE);
+        int fixedLongitude = (int) Math.round(longitude * SCALE);
+        // Worst case is three 10 byte varints
+        ensureCapacity(length + 30);
+        writeVarLong(zigzag(timestampMillis - lastTimestampMillis));
+        writeVarLong(zigzag((long) fixedLatitude - lastLatitude));
+        writeVarLong(zigzag((long) fixedLongitude - lastLongitude));
+        lastTimestampMillis = timestampMillis;
+        lastLatitude = fixedLatitude;
+        lastLongitude = fixedLongitude;
+        size++;
+        return true;
+    }
+
+    public synchronized GpsPoint latest() {
+        return size == 0 ? null : new GpsPoint(lastTimestampMillis, lastLatitude / SCALE, lastLongitude / SCALE);
+    }
+
+    public synchronized List<GpsPoint> points() {
+        List<GpsPoint> points = new ArrayList<>(size);
+        long timestampMillis = 0;
+        long latitude = 0;
+        long longitude = 0;
+        int[] position = {0};
+        for (int i = 0; i < size; i++) {
+            timestampMillis += unzigzag(readVarLong(position));
+            latitude += unzigzag(readVarLong(position));
+            longitude += unzigzag(readVarLong(position));
+            points.add(new GpsPoint(timestampMillis, latitude / SCALE, longitude / SCALE));
+        }
+        return points;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized int sizeInBytes() {
+        return length;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(capacity, buffer.length * 2));
+        }
+    }
+
+    private void writeVarLong(long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer[length++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[length++] = (byte) value;
+    }
+
+    private long readVarLong(int[] position) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer[position[0]++];
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -21,4 +21,13 @@ public interface OrderWorkflow {
 
     @SignalMethod
     void updateEta(int estimationInMinutes);
+
+    /**
+     * Status of one of the order's items, sent by the workflow placing it (identified by its workflow id).
+     */
+    @SignalMethod
+    void updateItemStatus(String itemWorkflowId, OrderStatus orderStatus);
+
+    @SignalMethod
+    void updateItemEta(String itemWorkflowId, int estimationInMinutes);
 }
@@ -1,23 +1,116 @@
 package com.instafood.orders.dispatcher;
 
+import com.instafood.metrics.OrderMetrics;
 import com.instafood.orders.delivery.CourierDeliveryJob;
 import com.instafood.orders.delivery.CourierDeliveryWorkflow;
+import com.instafood.orders.dispatcher.activities.OrderEtaActivities;
 import com.instafood.orders.dispatcher.domain.FoodOrder;
+import com.instafood.orders.dispatcher.domain.LineItem;
 import com.instafood.orders.dispatcher.domain.OrderStatus;
 import com.instafood.orders.dispatcher.domain.Restaurant;
 import com.instafood.orders.megaburger.MegaBurgerOrderWorkflow;
+import com.instafood.tracing.WorkflowSpan;
+import com.uber.cadence.ParentClosePolicy;
+import com.uber.cadence.activity.ActivityOptions;
+import com.uber.cadence.common.RetryOptions;
 import com.uber.cadence.workflow.Async;
+import com.uber.cadence.workflow.CancellationScope;
+import com.uber.cadence.workflow.ChildWorkflowException;
+import com.uber.cadence.workflow.ChildWorkflowOptions;
+import com.uber.cadence.workflow.Promise;
 import com.uber.cadence.workflow.Workflow;
+import org.slf4j.Logger;
 
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
 
 public class OrderWorkflowImpl implements OrderWorkflow {
+
+    private static final Logger logger = Workflow.getLogger(OrderWorkflowImpl.class);
+
+    // Options are immutable, so every open order shares them instead of holding its own copy
+    private static final ActivityOptions ORDER_ETA_ACTIVITY_OPTIONS = new ActivityOptions.Builder()
+            .setTaskList(OrderEtaActivities.TASK_LIST)
+            .setRetryOptions(new RetryOptions.Builder()
+                    .setInitialInterval(Duration.ofSeconds(1))
+                    .setMaximumAttempts(3)
+                    .build())
+            .setScheduleToCloseTimeout(Duration.ofSeconds(30)).build();
+
+    private final OrderEtaActivities orderEtaActivities = Workflow.newActivityStub(OrderEtaActivities.class,
+            ORDER_ETA_ACTIVITY_OPTIONS);
+
     private OrderStatus currentStatus = OrderStatus.CREATED;
     private int etaInMinutes = -1;
+    private long orderCreatedAtMillis;
+    private long statusChangedAtMillis;
+    private long acceptedAtMillis;
+    private long readyAtMillis;
+    // Items placed by their own child workflows, by child workflow id. Empty for orders placed before line items.
+    private final Map<String, ItemProgress> items = new LinkedHashMap<>();
+    private OrderStatus itemsStatus = OrderStatus.CREATED;
+    // One per child workflow started, so they can be cancelled as soon as the order fails
+    private final List<CancellationScope> childScopes = new ArrayList<>();
+    private int cancellationVersion;
+    private int childFailureVersion;
+    private boolean courierRejected;
 
     @Override
     public void orderFood(FoodOrder order) {
-        if (Restaurant.MEGABURGER.equals(order.getRestaurant())) {
+        WorkflowSpan span = WorkflowSpan.start("OrderWorkflow.orderFood")
+                .setAttribute("instafood.restaurant", String.valueOf(order.getRestaurant()))
+                .setAttribute("instafood.pickup", String.valueOf(order.isPickup()))
+                .setAttribute("instafood.items", order.getItems().size());
+        try {
+            placeOrder(order);
+        } catch (RuntimeException e) {
+            span.end(e);
+            throw e;
+        }
+        span.end();
+    }
+
+    private void placeOrder(FoodOrder order) {
+        // Couriers used to be sent once the restaurant's ETA elapsed, now the ETA is corrected with what the
+        // restaurant actually took on previous orders
+        int etaVersion = Workflow.getVersion("LearnedCourierDispatchEta", Workflow.DEFAULT_VERSION, 1);
+        // Orders used to hold a single meal, now every item is placed with its restaurant at the same time
+        int itemsVersion = Workflow.getVersion("ParallelLineItems", Workflow.DEFAULT_VERSION, 1);
+        // Children used to go on polling restaurants and holding couriers after the order failed or was cancelled
+        cancellationVersion = Workflow.getVersion("ChildCancellation", Workflow.DEFAULT_VERSION, 1);
+        // Failed children used to be noticed once the order was delivered, and a courier rejection never was
+        childFailureVersion = Workflow.getVersion("FailOnChildFailure", Workflow.DEFAULT_VERSION, 1);
+        try {
+            processOrder(order, etaVersion, itemsVersion);
+        } catch (CancellationException e) {
+            // Cancelling the workflow cancels its root scope, and with it the scopes of every child
+            if (cancellationVersion >= 1) {
+                updateStatus(OrderStatus.CANCELLED);
+                OrderMetrics.recordOrderDuration(currentStatus,
+                        Duration.ofMillis(Workflow.currentTimeMillis() - orderCreatedAtMillis));
+            }
+            throw e;
+        } catch (RuntimeException e) {
+            if (cancellationVersion >= 1) {
+                for (CancellationScope childScope : childScopes) {
+                    childScope.cancel();
+                }
+            }
+            throw e;
+        }
+    }
+
+    private void processOrder(FoodOrder order, int etaVersion, int itemsVersion) {
+        orderCreatedAtMillis = Workflow.currentTimeMillis();
+        statusChangedAtMillis = orderCreatedAtMillis;
+        List<Promise<Void>> placedItems = new ArrayList<>();
+        if (itemsVersion >= 1) {
+            startChildren(() -> placedItems.addAll(placeItems(order)));
+        } else if (Restaurant.MEGABURGER.equals(order.getRestaurant())) {
             MegaBurgerOrderWorkflow megaBurgerOrderWorkflow = Workflow
                     .newChildWorkflowStub(MegaBurgerOrderWorkflow.class);
             Async.procedure(megaBurgerOrderWorkflow::orderFood, order);
@@ -26,29 +119,193 @@ public class OrderWorkflowImpl implements OrderWorkflow {
                     String.format("%s invalid, Restaurant option not available", order.getRestaurant()));
         }
         // Wait for an ETA or abort if restaurant rejected order
-        Workflow.await(() -> etaInMinutes != -1 || OrderStatus.REJECTED.equals(currentStatus));
+        Workflow.await(() -> etaInMinutes != -1 || OrderStatus.REJECTED.equals(currentStatus)
+                || hasFailed(placedItems));
         if (OrderStatus.REJECTED.equals(currentStatus)) {
             throw new RuntimeException("Order was rejected by restaurant");
         }
+        throwIfFailed(placedItems);
 
         if (!order.isPickup()) {
             // Wait for predicted ETA or until order marks as ready
-            Workflow.await(Duration.ofMinutes(getTimeToSendCourier()), () -> OrderStatus.READY.equals(currentStatus));
+            Workflow.await(getTimeToSendCourier(order, etaVersion, itemsVersion),
+                    () -> OrderStatus.READY.equals(currentStatus) || hasFailed(placedItems));
+            throwIfFailed(placedItems);
 
-            CourierDeliveryWorkflow courierDeliveryWorkflow = Workflow
-                    .newChildWorkflowStub(CourierDeliveryWorkflow.class);
-            Async.procedure(courierDeliveryWorkflow::deliverOrder,
-                    new CourierDeliveryJob(order.getRestaurant(), order.getAddress(), order.getTelephone()));
+            // Deliveries used to get a random workflow id, now couriers can tell it from the order's
+            int deliveryIdVersion = Workflow.getVersion("OrderScopedDeliveryId", Workflow.DEFAULT_VERSION, 1);
+            List<Promise<Void>> courierDelivery = new ArrayList<>();
+            startChildren(() -> {
+                ChildWorkflowOptions.Builder deliveryOptions = newChildWorkflowOptions();
+                if (deliveryIdVersion >= 1) {
+                    deliveryOptions.setWorkflowId(Workflow.getWorkflowInfo().getWorkflowId() + "/courier");
+                }
+                CourierDeliveryWorkflow courierDeliveryWorkflow = cancellationVersion >= 1 || deliveryIdVersion >= 1
+                        ? Workflow.newChildWorkflowStub(CourierDeliveryWorkflow.class, deliveryOptions.build())
+                        : Workflow.newChildWorkflowStub(CourierDeliveryWorkflow.class);
+                courierDelivery.add(Async.procedure(courierDeliveryWorkflow::deliverOrder,
+                        new CourierDeliveryJob(order.getRestaurant(), order.getAddress(), order.getTelephone())));
+            });
 
-            Workflow.await(() -> OrderStatus.COURIER_DELIVERED.equals(currentStatus));
+            Workflow.await(() -> OrderStatus.COURIER_DELIVERED.equals(currentStatus) || hasFailed(placedItems)
+                    || childFailureVersion >= 1 && (courierRejected || hasFailed(courierDelivery)));
+            throwIfFailed(placedItems);
+            if (childFailureVersion >= 1 && !OrderStatus.COURIER_DELIVERED.equals(currentStatus)) {
+                throwIfFailed(courierDelivery);
+                throw new RuntimeException("Order was rejected by courier");
+            }
+            // The courier is released after COURIER_DELIVERED is reported. Orders used to close right away, and
+            // closing cancels the delivery, sometimes before the courier was back in dispatch.
+            int courierReleaseVersion = Workflow.getVersion("AwaitCourierRelease", Workflow.DEFAULT_VERSION, 1);
+            if (courierReleaseVersion >= 1) {
+                awaitCourierRelease(courierDelivery.get(0));
+            }
         } else {
-            Workflow.await(() -> OrderStatus.RESTAURANT_DELIVERED.equals(currentStatus));
+            Workflow.await(() -> OrderStatus.RESTAURANT_DELIVERED.equals(currentStatus) || hasFailed(placedItems));
+        }
+        // Any item that failed fails the order
+        Promise.allOf(placedItems).get();
+
+        if (etaVersion >= 1 && itemsVersion >= 1) {
+            for (ItemProgress item : items.values()) {
+                if (item.acceptedAtMillis != 0 && item.readyAtMillis != 0) {
+                    orderEtaActivities.recordPreparationTime(item.lineItem.getRestaurant(), item.lineItem.getMeal(),
+                            item.etaInMinutes,
+                            Duration.ofMillis(item.readyAtMillis - item.acceptedAtMillis).getSeconds());
+                }
+            }
+        } else if (etaVersion >= 1 && acceptedAtMillis != 0 && readyAtMillis != 0) {
+            orderEtaActivities.recordPreparationTime(order.getRestaurant(), order.getMeal(), etaInMinutes,
+                    Duration.ofMillis(readyAtMillis - acceptedAtMillis).getSeconds());
         }
+        OrderMetrics.recordOrderDuration(currentStatus,
+                Duration.ofMillis(Workflow.currentTimeMillis() - orderCreatedAtMillis));
     }
 
-    // TODO: this should be an activity
-    private int getTimeToSendCourier() {
-        return etaInMinutes;
+    /**
+     * Whether one of {@code children} already failed, which fails the order right away instead of once it's
+     * delivered.
+     */
+    private boolean hasFailed(List<Promise<Void>> children) {
+        if (childFailureVersion < 1) {
+            return false;
+        }
+        for (Promise<Void> child : children) {
+            if (child.isCompleted() && child.getFailure() != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void throwIfFailed(List<Promise<Void>> children) {
+        if (childFailureVersion < 1) {
+            return;
+        }
+        for (Promise<Void> child : children) {
+            if (child.isCompleted() && child.getFailure() != null) {
+                throw child.getFailure();
+            }
+        }
+    }
+
+    /**
+     * Waits for the delivery child to finish releasing its courier. The food is delivered by then, a delivery
+     * failing to release doesn't fail the order.
+     */
+    private static void awaitCourierRelease(Promise<Void> courierDelivery) {
+        try {
+            courierDelivery.get();
+        } catch (ChildWorkflowException e) {
+            logger.warn("Courier delivery failed after delivering", e);
+        }
+    }
+
+    /**
+     * Starts a child workflow per item with the item's restaurant, all of them running in parallel. Child workflow
+     * ids are derived from this workflow's, they report back on {@link #updateItemStatus} and {@link #updateItemEta}.
+     */
+    private List<Promise<Void>> placeItems(FoodOrder order) {
+        List<LineItem> lineItems = order.getItems();
+        for (LineItem lineItem : lineItems) {
+            if (!Restaurant.MEGABURGER.equals(lineItem.getRestaurant())) {
+                throw new RuntimeException(
+                        String.format("%s invalid, Restaurant option not available", lineItem.getRestaurant()));
+            }
+        }
+        if (!order.isPickup() && !order.hasSingleRestaurant()) {
+            throw new RuntimeException("Orders from several restaurants can't be delivered, only picked up");
+        }
+
+        String workflowId = Workflow.getWorkflowInfo().getWorkflowId();
+        List<Promise<Void>> placedItems = new ArrayList<>();
+        for (int i = 0; i < lineItems.size(); i++) {
+            String itemWorkflowId = workflowId + "/item-" + i;
+            items.put(itemWorkflowId, new ItemProgress(lineItems.get(i)));
+            MegaBurgerOrderWorkflow megaBurgerOrderWorkflow = Workflow.newChildWorkflowStub(
+                    MegaBurgerOrderWorkflow.class,
+                    newChildWorkflowOptions().setWorkflowId(itemWorkflowId).build());
+            placedItems.add(Async.procedure(megaBurgerOrderWorkflow::orderFood, order.forItem(lineItems.get(i))));
+        }
+        return placedItems;
+    }
+
+    /**
+     * Starts child workflows in a scope of their own, so that they can be cancelled when the order fails.
+     */
+    private void startChildren(Runnable start) {
+        if (cancellationVersion >= 1) {
+            childScopes.add(Workflow.newCancellationScope(start));
+        } else {
+            start.run();
+        }
+    }
+
+    /**
+     * Children are also cancelled when this workflow closes without running its own code, e.g. when it times out or
+     * is terminated. Cancelling rather than terminating lets them tell the restaurant and release the courier.
+     */
+    private ChildWorkflowOptions.Builder newChildWorkflowOptions() {
+        ChildWorkflowOptions.Builder options = new ChildWorkflowOptions.Builder();
+        if (cancellationVersion >= 1) {
+            options.setParentClosePolicy(ParentClosePolicy.REQUEST_CANCEL);
+        }
+        return options;
+    }
+
+    private Duration getTimeToSendCourier(FoodOrder order, int etaVersion, int itemsVersion) {
+        if (etaVersion < 1) {
+            return Duration.ofMinutes(etaInMinutes);
+        }
+        if (itemsVersion < 1) {
+            return getRemainingDelay(orderEtaActivities.getCourierDispatchDelaySeconds(order.getRestaurant(),
+                    order.getMeal(), etaInMinutes), acceptedAtMillis);
+        }
+
+        // The courier is only worth sending once the last item is due
+        List<ItemProgress> itemProgress = new ArrayList<>(items.values());
+        List<Promise<Long>> delays = new ArrayList<>();
+        for (ItemProgress item : itemProgress) {
+            delays.add(Async.function(orderEtaActivities::getCourierDispatchDelaySeconds,
+                    item.lineItem.getRestaurant(), item.lineItem.getMeal(), item.etaInMinutes));
+        }
+        Promise.allOf(delays).get();
+        Duration timeToSendCourier = Duration.ZERO;
+        for (int i = 0; i < itemProgress.size(); i++) {
+            Duration remaining = getRemainingDelay(delays.get(i).get(), itemProgress.get(i).acceptedAtMillis);
+            if (remaining.compareTo(timeToSendCourier) > 0) {
+                timeToSendCourier = remaining;
+            }
+        }
+        return timeToSendCourier;
+    }
+
+    private static Duration getRemainingDelay(long delaySeconds, long acceptedAtMillis) {
+        // The delay counts from acceptance, part of it may already be gone by the time the ETA arrives
+        long acceptedAt = acceptedAtMillis != 0 ? acceptedAtMillis : Workflow.currentTimeMillis();
+        Duration remaining = Duration.ofSeconds(delaySeconds)
+                .minusMillis(Workflow.currentTimeMillis() - acceptedAt);
+        return remaining.isNegative() ? Duration.ZERO : remaining;
     }
 
     @Override
@@ -63,6 +320,19 @@ public class OrderWorkflowImpl implements OrderWorkflow {
 
     @Override
     public void updateStatus(OrderStatus orderStatus) {
+        long now = Workflow.currentTimeMillis();
+        if (statusChangedAtMillis != 0 && !orderStatus.equals(currentStatus)) {
+            OrderMetrics.recordStageDuration(currentStatus, Duration.ofMillis(now - statusChangedAtMillis));
+            statusChangedAtMillis = now;
+        }
+        if (OrderStatus.ACCEPTED.equals(orderStatus) && acceptedAtMillis == 0) {
+            acceptedAtMillis = now;
+        } else if (OrderStatus.READY.equals(orderStatus) && readyAtMillis == 0) {
+            readyAtMillis = now;
+        } else if (OrderStatus.COURIER_REJECTED.equals(orderStatus)) {
+            // Kept apart from the status, which items reporting afterwards move on
+            courierRejected = true;
+        }
         this.currentStatus = orderStatus;
     }
 
@@ -70,4 +340,73 @@ public class OrderWorkflowImpl implements OrderWorkflow {
     public void updateEta(int etaInMinutes) {
         this.etaInMinutes = etaInMinutes;
     }
+
+    /**
+     * The order moves on as its least advanced item does, and is rejected as soon as any item is.
+     */
+    @Override
+    public void updateItemStatus(String itemWorkflowId, OrderStatus orderStatus) {
+        ItemProgress item = items.get(itemWorkflowId);
+        if (item == null) {
+            // Placed before line items, the child's status is the order's
+            updateStatus(orderStatus);
+            return;
+        }
+        long now = Workflow.currentTimeMillis();
+        if (OrderStatus.ACCEPTED.equals(orderStatus) && item.acceptedAtMillis == 0) {
+            item.acceptedAtMillis = now;
+        } else if (OrderStatus.READY.equals(orderStatus) && item.readyAtMillis == 0) {
+            item.readyAtMillis = now;
+        }
+        item.status = orderStatus;
+
+        OrderStatus leastAdvanced = null;
+        for (ItemProgress progress : items.values()) {
+            if (OrderStatus.REJECTED.equals(progress.status)) {
+                leastAdvanced = OrderStatus.REJECTED;
+                break;
+            }
+            if (leastAdvanced == null || progress.status.ordinal() < leastAdvanced.ordinal()) {
+                leastAdvanced = progress.status;
+            }
+        }
+        // Courier updates move the order on too, so it only follows its items when they change
+        if (!leastAdvanced.equals(itemsStatus)) {
+            itemsStatus = leastAdvanced;
+            updateStatus(leastAdvanced);
+        }
+    }
+
+    /**
+     * The order's ETA is the one of the item that takes longest, known once every item has one.
+     */
+    @Override
+    public void updateItemEta(String itemWorkflowId, int estimationInMinutes) {
+        ItemProgress item = items.get(itemWorkflowId);
+        if (item == null) {
+            updateEta(estimationInMinutes);
+            return;
+        }
+        item.etaInMinutes = estimationInMinutes;
+        int latestEta = -1;
+        for (ItemProgress progress : items.values()) {
+            if (progress.etaInMinutes == -1) {
+                return;
+            }
+            latestEta = Math.max(latestEta, progress.etaInMinutes);
+        }
+        updateEta(latestEta);
+    }
+
+    private static final class ItemProgress {
+        private final LineItem lineItem;
+        private OrderStatus status = OrderStatus.CREATED;
+        private int etaInMinutes = -1;
+        private long acceptedAtMillis;
+        private long readyAtMillis;
+
+        private ItemProgress(LineItem lineItem) {
+            this.lineItem = lineItem;
+        }
+    }
 }
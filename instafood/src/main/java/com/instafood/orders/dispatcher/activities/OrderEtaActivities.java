@@ -0,0 +1,35 @@
+package com.instafood.orders.dispatcher.activities;
+
+import com.instafood.orders.dispatcher.domain.Restaurant;
+import com.uber.cadence.activity.ActivityMethod;
+
+public interface OrderEtaActivities {
+
+    /**
+     * Polled by the one process with {@code orderEtaOwner} set. The learned preparation times live in its memory,
+     * so every order's estimate comes from, and every observed preparation time goes to, the same estimator.
+     */
+    String TASK_LIST = "order-eta-task-list";
+
+    /**
+     * How long after the restaurant accepted an order a courier should be sent, so that they arrive at the
+     * counter when the food is expected to be ready.
+     *
+     * @return seconds since the order was accepted
+     */
+    @ActivityMethod
+    long getCourierDispatchDelaySeconds(Restaurant restaurant, String meal, int etaInMinutes);
+
+    /**
+     * How long an order is expected to take to go from ACCEPTED to READY, learned from what the restaurant's orders
+     * actually took. The quoted ETA until there are enough of them.
+     */
+    @ActivityMethod
+    long getPreparationSeconds(Restaurant restaurant, String meal, int etaInMinutes);
+
+    /**
+     * Feeds the time an order actually took to go from ACCEPTED to READY back into the estimates.
+     */
+    @ActivityMethod
+    void recordPreparationTime(Restaurant restaurant, String meal, int etaInMinutes, long preparationSeconds);
+}
@@ -0,0 +1,43 @@
+package com.instafood.orders.dispatcher.activities;
+
+import com.instafood.orders.dispatcher.domain.Restaurant;
+import com.instafood.orders.dispatcher.eta.PreparationTimeEstimator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+
+public class StreamingOrderEtaActivities implements OrderEtaActivities {
+
+    private static Logger logger = LoggerFactory.getLogger(StreamingOrderEtaActivities.class);
+
+    private final PreparationTimeEstimator estimator;
+    private final Duration courierTravelTime;
+
+    /**
+     * @param courierTravelTime typical time for a dispatched courier to reach the restaurant
+     */
+    public StreamingOrderEtaActivities(PreparationTimeEstimator estimator, Duration courierTravelTime) {
+        this.estimator = estimator;
+        this.courierTravelTime = courierTravelTime;
+    }
+
+    @Override
+    public long getCourierDispatchDelaySeconds(Restaurant restaurant, String meal, int etaInMinutes) {
+        Duration preparationTime = estimator.estimate(restaurant, meal, etaInMinutes);
+        long delaySeconds = Math.max(0, preparationTime.minus(courierTravelTime).getSeconds());
+        logger.info("{} '{}' quoted {}min, expected ready in {}s, dispatching courier after {}s",
+                restaurant, meal, etaInMinutes, preparationTime.getSeconds(), delaySeconds);
+        return delaySeconds;
+    }
+
+    @Override
+    public long getPreparationSeconds(Restaurant restaurant, String meal, int etaInMinutes) {
+        return estimator.estimate(restaurant, meal, etaInMinutes).getSeconds();
+    }
+
+    @Override
+    public void recordPreparationTime(Restaurant restaurant, String meal, int etaInMinutes, long preparationSeconds) {
+        estimator.record(restaurant, meal, etaInMinutes, Duration.ofSeconds(preparationSeconds));
+    }
+}
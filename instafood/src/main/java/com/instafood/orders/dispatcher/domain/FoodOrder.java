@@ -1,5 +1,13 @@
 package com.instafood.orders.dispatcher.domain;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+
+import java.util.List;
+
+// Properties are only ever appended, orders in flight are encoded in this order
+@JsonPropertyOrder({"restaurant", "meal", "quantity", "telephone", "address", "pickup", "items"})
 public class FoodOrder {
     private final Restaurant restaurant;
     private final String meal;
@@ -7,11 +15,30 @@ public class FoodOrder {
     private final String telephone;
     private final String address;
     private final boolean pickup;
+    private final List<LineItem> items;
+
+    public FoodOrder(Restaurant restaurant, String meal, int quantity, String telephone, String address,
+                     boolean pickup) {
+        this(restaurant, meal, quantity, telephone, address, pickup, null);
+    }
+
+    public FoodOrder(List<LineItem> items, String telephone, String address, boolean pickup) {
+        this(null, null, 0, telephone, address, pickup, items);
+    }
 
-    public FoodOrder(Restaurant restaurant, String meal, int quantity, String telephone, String address, boolean pickup) {
-        this.restaurant = restaurant;
-        this.meal = meal;
-        this.quantity = quantity;
+    /**
+     * Orders with {@code items} don't need restaurant, meal and quantity, they're taken from the first item.
+     */
+    @JsonCreator
+    public FoodOrder(@JsonProperty("restaurant") Restaurant restaurant, @JsonProperty("meal") String meal,
+                     @JsonProperty("quantity") int quantity, @JsonProperty("telephone") String telephone,
+                     @JsonProperty("address") String address, @JsonProperty("pickup") boolean pickup,
+                     @JsonProperty("items") List<LineItem> items) {
+        this.items = items == null || items.isEmpty() ? null : List.copyOf(items);
+        LineItem firstItem = this.items == null || restaurant != null ? null : this.items.get(0);
+        this.restaurant = firstItem == null ? restaurant : firstItem.getRestaurant();
+        this.meal = firstItem == null ? meal : firstItem.getMeal();
+        this.quantity = firstItem == null ? quantity : firstItem.getQuantity();
         this.telephone = telephone;
         this.address = address;
         this.pickup = pickup;
@@ -40,4 +67,25 @@ public class FoodOrder {
     public boolean isPickup() {
         return pickup;
     }
+
+    /**
+     * Everything ordered, a single item for orders placed with just restaurant, meal and quantity.
+     */
+    public List<LineItem> getItems() {
+        return items != null ? items : List.of(new LineItem(restaurant, meal, quantity));
+    }
+
+    /**
+     * Whether every item comes from the same restaurant, the only orders a courier can deliver.
+     */
+    public boolean hasSingleRestaurant() {
+        return getItems().stream().map(LineItem::getRestaurant).distinct().count() == 1;
+    }
+
+    /**
+     * The order for a single one of its items, as sent to that item's restaurant.
+     */
+    public FoodOrder forItem(LineItem item) {
+        return new FoodOrder(item.getRestaurant(), item.getMeal(), item.getQuantity(), telephone, address, pickup);
+    }
 }
@@ -0,0 +1,35 @@
+package com.instafood.orders.dispatcher.domain;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+
+/**
+ * A meal ordered from a restaurant, an order can hold several across restaurants.
+ */
+@JsonPropertyOrder({"restaurant", "meal", "quantity"})
+public class LineItem {
+    private final Restaurant restaurant;
+    private final String meal;
+    private final int quantity;
+
+    @JsonCreator
+    public LineItem(@JsonProperty("restaurant") Restaurant restaurant, @JsonProperty("meal") String meal,
+                    @JsonProperty("quantity") int quantity) {
+        this.restaurant = restaurant;
+        this.meal = meal;
+        this.quantity = quantity;
+    }
+
+    public Restaurant getRestaurant() {
+        return restaurant;
+    }
+
+    public String getMeal() {
+        return meal;
+    }
+
+    public int getQuantity() {
+        return quantity;
+    }
+}
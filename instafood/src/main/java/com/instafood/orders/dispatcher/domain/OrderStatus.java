@@ -11,5 +11,6 @@ public enum OrderStatus {
     COURIER_REJECTED,
     RESTAURANT_DELIVERED,
     PICKED_UP,
-    COURIER_DELIVERED;
+    COURIER_DELIVERED,
+    CANCELLED;
 }
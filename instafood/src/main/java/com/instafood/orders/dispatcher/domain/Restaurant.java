@@ -1,5 +1,21 @@
 package com.instafood.orders.dispatcher.domain;
 
 public enum Restaurant {
-    MEGABURGER
+    MEGABURGER(-34.4986, -58.4896);
+
+    private final double latitude;
+    private final double longitude;
+
+    Restaurant(double latitude, double longitude) {
+        this.latitude = latitude;
+        this.longitude = longitude;
+    }
+
+    public double getLatitude() {
+        return latitude;
+    }
+
+    public double getLongitude() {
+        return longitude;
+    }
 }
@@ -0,0 +1,108 @@
+package com.instafood.orders.dispatcher.eta;
+
+import java.util.Arrays;
+
+/**
+ * Streaming estimate of a single quantile using the P-square (P2) algorithm (Jain &amp; Chlamtac, 1985): five markers whose
+ * heights are adjusted with a piecewise-parabolic formula as observations arrive, so memory and update cost stay
+ * constant no matter how many observations have been seen.
+ */
+public class P2QuantileEstimator {
+
+    private final double quantile;
+    private final double[] heights = new double[5];
+    private final int[] positions = new int[5];
+    private final double[] desiredPositions = new double[5];
+    private final double[] increments;
+    private long count;
+
+    public P2QuantileEstimator(double quantile) {
+        if (quantile <= 0 || quantile >= 1) {
+            throw new IllegalArgumentException("Quantile must be between 0 and 1, got " + quantile);
+        }
+        this.quantile = quantile;
+        this.increments = new double[]{0, quantile / 2, quantile, (1 + quantile) / 2, 1};
+    }
+
+    public synchronized void add(double value) {
+        if (count < 5) {
+            heights[(int) count++] = value;
+            if (count == 5) {
+                Arrays.sort(heights);
+                for (int i = 0; i < 5; i++) {
+                    positions[i] = i + 1;
+                }
+                desiredPositions[0] = 1;
+                desiredPositions[1] = 1 + 2 * quantile;
+                desiredPositions[2] = 1 + 4 * quantile;
+                desiredPositions[3] = 3 + 2 * quantile;
+                desiredPositions[4] = 5;
+            }
+            return;
+        }
+        count++;
+
+        int cell;
+        if (value < heights[0]) {
+            heights[0] = value;
+            cell = 0;
+        } else if (value >= heights[4]) {
+            heights[4] = value;
+            cell = 3;
+        } else {
+            cell = 0;
+            while (cell < 3 && value >= heights[cell + 1]) {
+                cell++;
+            }
+        }
+        for (int i = cell + 1; i < 5; i++) {
+            positions[i]++;
+        }
+        for (int i = 0; i < 5; i++) {
+            desiredPositions[i] += increments[i];
+        }
+
+        for (int i = 1; i < 4; i++) {
+            double offset = desiredPositions[i] - positions[i];
+            if ((offset >= 1 && positions[i + 1] - positions[i] > 1)
+                    || (offset <= -1 && positions[i - 1] - positions[i] < -1)) {
+                int direction = offset >= 0 ? 1 : -1;
+                double height = parabolic(i, direction);
+                heights[i] = heights[i - 1] < height && height < heights[i + 1] ? height : linear(i, direction);
+                positions[i] += direction;
+            }
+        }
+    }
+
+    /**
+     * Current estimate, or NaN when nothing has been observed yet.
+     */
+    public synchronized double getQuantile() {
+        if (count == 0) {
+            return Double.NaN;
+        }
+        if (count < 5) {
+            double[] observed = Arrays.copyOf(heights, (int) count);
+            Arrays.sort(observed);
+            return observed[(int) Math.round(quantile * (count - 1))];
+        }
+        return heights[2];
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    private double parabolic(int i, int direction) {
+        return heights[i] + (double) direction / (positions[i + 1] - positions[i - 1])
+                * ((positions[i] - positions[i - 1] + direction) * (heights[i + 1] - heights[i])
+                / (positions[i + 1] - positions[i])
+                + (positions[i + 1] - positions[i] - direction) * (heights[i] - heights[i - 1])
+                / (positions[i] - positions[i - 1]));
+    }
+
+    private double linear(int i, int direction) {
+        return heights[i] + direction * (heights[i + direction] - heights[i])
+                / (positions[i + direction] - positions[i]);
+    }
+}
@@ -0,0 +1,64 @@
+package com.instafood.orders.dispatcher.eta;
+
+import com.instafood.orders.dispatcher.domain.Restaurant;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Learns how long restaurants actually take to prepare orders compared to the ETA they quote.
+ * <p>
+ * Each observed ACCEPTED to READY duration is turned into an actual/quoted ratio and fed into streaming quantile
+ * estimators kept per restaurant and meal, and per restaurant as a fallback for meals without enough history.
+ * Working with ratios keeps observations comparable when a restaurant quotes longer ETAs at busy times.
+ */
+public class PreparationTimeEstimator {
+
+    private final double quantile;
+    private final int minSamples;
+    private final Map<String, P2QuantileEstimator> mealRatios = new ConcurrentHashMap<>();
+    private final Map<Restaurant, P2QuantileEstimator> restaurantRatios = new ConcurrentHashMap<>();
+
+    /**
+     * @param quantile   quantile of the preparation time to predict, lower values make couriers arrive earlier
+     * @param minSamples observations needed before a learned ratio is trusted over the quoted ETA
+     */
+    public PreparationTimeEstimator(double quantile, int minSamples) {
+        this.quantile = quantile;
+        this.minSamples = minSamples;
+    }
+
+    public void record(Restaurant restaurant, String meal, int quotedEtaInMinutes, Duration preparationTime) {
+        if (quotedEtaInMinutes <= 0 || preparationTime.isNegative()) {
+            return;
+        }
+        double ratio = preparationTime.toMillis() / (double) Duration.ofMinutes(quotedEtaInMinutes).toMillis();
+        mealRatios.computeIfAbsent(mealKey(restaurant, meal), key -> new P2QuantileEstimator(quantile)).add(ratio);
+        restaurantRatios.computeIfAbsent(restaurant, key -> new P2QuantileEstimator(quantile)).add(ratio);
+    }
+
+    /**
+     * Predicted preparation time for an order, falling back to the quoted ETA while there isn't enough history.
+     */
+    public Duration estimate(Restaurant restaurant, String meal, int quotedEtaInMinutes) {
+        return Duration.ofMillis(Math.round(
+                getRatio(restaurant, meal) * Duration.ofMinutes(quotedEtaInMinutes).toMillis()));
+    }
+
+    double getRatio(Restaurant restaurant, String meal) {
+        P2QuantileEstimator ratio = mealRatios.get(mealKey(restaurant, meal));
+        if (ratio == null || ratio.getCount() < minSamples) {
+            ratio = restaurantRatios.get(restaurant);
+        }
+        if (ratio == null || ratio.getCount() < minSamples) {
+            return 1;
+        }
+        return ratio.getQuantile();
+    }
+
+    private static String mealKey(Restaurant restaurant, String meal) {
+        return restaurant + "/" + String.valueOf(meal).trim().toLowerCase(Locale.ROOT);
+    }
+}
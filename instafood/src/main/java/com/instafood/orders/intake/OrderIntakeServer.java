@@ -0,0 +1,274 @@
+package com.instafood.orders.intake;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.instafood.orders.dispatcher.OrderWorkflow;
+import com.instafood.orders.dispatcher.domain.FoodOrder;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.uber.cadence.BadRequestError;
+import com.uber.cadence.InternalServiceError;
+import com.uber.cadence.LimitExceededError;
+import com.uber.cadence.ServiceBusyError;
+import com.uber.cadence.WorkflowIdReusePolicy;
+import com.uber.cadence.client.DuplicateWorkflowException;
+import com.uber.cadence.client.WorkflowClient;
+import com.uber.cadence.client.WorkflowOptions;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import org.apache.thrift.transport.TTransportException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * HTTP entry point for customers placing orders, so they don't need a Cadence connection of their own.
+ * <ul>
+ *     <li>{@code POST /orders} with a {@code FoodOrder} starts an {@code OrderWorkflow} through the shared
+ *     {@link WorkflowClient} and answers 202 with {@code {"workflowId": ..}} as soon as it's started, without
+ *     waiting for the order to go anywhere. Sending an {@code Idempotency-Key} makes retries safe, a key already
+ *     used gets the same workflow id back with a 200, even once its order is done. Keys are up to 128 letters,
+ *     digits, {@code .}, {@code _}, {@code :} or {@code -}, anything else is a 400. So is an order to be
+ *     delivered with items from more than one restaurant, couriers only pick up from one.</li>
+ * </ul>
+ * At most {@code maxInFlight} workflow starts run at once, requests wait up to {@code queueTimeout} for a slot and
+ * are then turned away with 503 and a {@code Retry-After}, which keeps a dinner rush from piling up on Cadence.
+ * Requests are served on virtual threads when the JVM has them, otherwise on a fixed number of platform threads,
+ * enough for every slot plus a few requests waiting for one, and any request beyond those gets the 503 straight
+ * away. The same 503 answers Cadence being busy or unreachable, while requests it refuses are a 400 and any other
+ * failure a 500, neither worth retrying.
+ */
+public class OrderIntakeServer {
+
+    public static final String WORKFLOW_ID_PREFIX = "order-";
+
+    // Orders are expected to be delivered well within this
+    private static final Duration ORDER_TIMEOUT = Duration.ofHours(2);
+    private static final Pattern IDEMPOTENCY_KEY = Pattern.compile("[A-Za-z0-9._:-]{1,128}");
+
+    private static Logger logger = LoggerFactory.getLogger(OrderIntakeServer.class);
+
+    // Set while the server's own thread answers a request no platform thread was left for
+    private static final ThreadLocal<Boolean> turnedAway = ThreadLocal.withInitial(() -> false);
+
+    private final OrderStarter orderStarter;
+    private final int maxInFlight;
+    private final Duration queueTimeout;
+    private final boolean virtualThreads;
+    private final Semaphore inFlight;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Counter startedOrders = Metrics.counter("order.intake.requests", "result", "started");
+    private final Counter replayedOrders = Metrics.counter("order.intake.requests", "result", "replayed");
+    private final Counter rejectedOrders = Metrics.counter("order.intake.requests", "result", "rejected");
+    private final Counter failedOrders = Metrics.counter("order.intake.requests", "result", "failed");
+    private HttpServer server;
+    private ExecutorService executor;
+
+    public OrderIntakeServer(WorkflowClient workflowClient, String taskList, int maxInFlight, Duration queueTimeout) {
+        this((workflowId, order) -> {
+            OrderWorkflow orderWorkflow = workflowClient.newWorkflowStub(OrderWorkflow.class,
+                    new WorkflowOptions.Builder()
+                            .setWorkflowId(workflowId)
+                            .setTaskList(taskList)
+                            .setExecutionStartToCloseTimeout(ORDER_TIMEOUT)
+                            // A key stays taken after its order completes or fails, retries must not reorder
+                            .setWorkflowIdReusePolicy(WorkflowIdReusePolicy.RejectDuplicate)
+                            .build());
+            try {
+                WorkflowClient.start(orderWorkflow::orderFood, order);
+                return true;
+            } catch (DuplicateWorkflowException e) {
+                return false;
+            }
+        }, maxInFlight, queueTimeout);
+    }
+
+    OrderIntakeServer(OrderStarter orderStarter, int maxInFlight, Duration queueTimeout) {
+        this(orderStarter, maxInFlight, queueTimeout, true);
+    }
+
+    OrderIntakeServer(OrderStarter orderStarter, int maxInFlight, Duration queueTimeout, boolean virtualThreads) {
+        this.orderStarter = orderStarter;
+        this.maxInFlight = maxInFlight;
+        this.queueTimeout = queueTimeout;
+        this.virtualThreads = virtualThreads;
+        this.inFlight = new Semaphore(maxInFlight);
+        Metrics.gauge("order.intake.in_flight", inFlight, permits -> maxInFlight - permits.availablePermits());
+    }
+
+    public void start(int port) {
+        try {
+            server = HttpServer.create(new InetSocketAddress(port), 0);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        executor = newRequestExecutor();
+        server.setExecutor(executor);
+        server.createContext("/orders", this::handleOrders);
+        server.start();
+        logger.info("Serving order intake API on port {}", getPort());
+    }
+
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdown();
+        }
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private void handleOrders(HttpExchange exchange) throws IOException {
+        if (turnedAway.get()) {
+            turnAway(exchange);
+            return;
+        }
+        if (!"/orders".equals(exchange.getRequestURI().getPath())) {
+            send(exchange, 404, null);
+            return;
+        }
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            send(exchange, 405, null);
+            return;
+        }
+        FoodOrder order;
+        try (InputStream requestBody = exchange.getRequestBody()) {
+            order = objectMapper.readValue(requestBody, FoodOrder.class);
+        } catch (IOException e) {
+            send(exchange, 400, null);
+            return;
+        }
+        if (order == null || order.getRestaurant() == null || order.getMeal() == null
+                || !order.isPickup() && !order.hasSingleRestaurant()) {
+            send(exchange, 400, null);
+            return;
+        }
+        String idempotencyKey = exchange.getRequestHeaders().getFirst("Idempotency-Key");
+        if (idempotencyKey != null && !idempotencyKey.isEmpty()
+                && !IDEMPOTENCY_KEY.matcher(idempotencyKey).matches()) {
+            send(exchange, 400, null);
+            return;
+        }
+
+        if (!acquireSlot()) {
+            turnAway(exchange);
+            return;
+        }
+        try {
+            String workflowId = WORKFLOW_ID_PREFIX + (idempotencyKey == null || idempotencyKey.isEmpty()
+                    ? UUID.randomUUID().toString() : idempotencyKey);
+            boolean started = orderStarter.start(workflowId, order);
+            (started ? startedOrders : replayedOrders).increment();
+            send(exchange, started ? 202 : 200,
+                    objectMapper.writeValueAsBytes(Collections.singletonMap("workflowId", workflowId)));
+        } catch (RuntimeException e) {
+            failedOrders.increment();
+            int status = getFailureStatus(e);
+            if (status == 503) {
+                logger.warn("Couldn't start order workflow, Cadence is unavailable", e);
+                exchange.getResponseHeaders().set("Retry-After", "1");
+            } else {
+                logger.error("Couldn't start order workflow", e);
+            }
+            send(exchange, status, null);
+        } finally {
+            inFlight.release();
+        }
+    }
+
+    /**
+     * 503 when Cadence is busy or can't be reached and retrying is worth it, 400 when it turned the request down and
+     * 500 for anything else.
+     */
+    static int getFailureStatus(RuntimeException e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ServiceBusyError || cause instanceof LimitExceededError
+                    || cause instanceof InternalServiceError || cause instanceof TTransportException) {
+                return 503;
+            }
+            if (cause instanceof BadRequestError) {
+                return 400;
+            }
+        }
+        return 500;
+    }
+
+    private void turnAway(HttpExchange exchange) throws IOException {
+        rejectedOrders.increment();
+        exchange.getResponseHeaders().set("Retry-After", "1");
+        send(exchange, 503, null);
+    }
+
+    private boolean acquireSlot() {
+        try {
+            return inFlight.tryAcquire(queueTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * A virtual thread per request on Java 21+. Older JVMs get a thread per slot and a quarter as many (at least one)
+     * for requests waiting on a slot. With all of them taken the request is run on the server's dispatcher thread,
+     * as {@link HttpServer} does without an executor, only to answer it with a 503.
+     */
+    private ExecutorService newRequestExecutor() {
+        if (virtualThreads) {
+            try {
+                return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException e) {
+                logger.info("Virtual threads aren't available, serving order intake on platform threads");
+            }
+        }
+        RejectedExecutionHandler turnAway = (request, pool) -> {
+            turnedAway.set(true);
+            try {
+                request.run();
+            } finally {
+                turnedAway.remove();
+            }
+        };
+        int threads = maxInFlight + Math.max(1, maxInFlight / 4);
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 1, TimeUnit.MINUTES,
+                new SynchronousQueue<>(), turnAway);
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private static void send(HttpExchange exchange, int status, byte[] body) throws IOException {
+        if (body == null) {
+            exchange.sendResponseHeaders(status, -1);
+            exchange.close();
+            return;
+        }
+        exchange.getResponseHeaders().set("content-type", "application/json");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream responseBody = exchange.getResponseBody()) {
+            responseBody.write(body);
+        }
+    }
+
+    interface OrderStarter {
+        /**
+         * Starts the order workflow with the given id, false when a workflow with that id was already started.
+         */
+        boolean start(String workflowId, FoodOrder order);
+    }
+}
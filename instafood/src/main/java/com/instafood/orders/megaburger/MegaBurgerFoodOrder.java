@@ -1,8 +1,10 @@
 package com.instafood.orders.megaburger;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
 import com.instafood.orders.dispatcher.domain.OrderStatus;
 
+@JsonPropertyOrder({"id", "meal", "quantity", "status", "eta_minutes"})
 public class MegaBurgerFoodOrder {
     private Integer id;
     private String meal;
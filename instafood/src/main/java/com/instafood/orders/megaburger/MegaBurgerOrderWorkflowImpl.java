@@ -1,36 +1,126 @@
 package com.instafood.orders.megaburger;
 
+import com.instafood.metrics.OrderMetrics;
 import com.instafood.orders.dispatcher.OrderWorkflow;
+import com.instafood.orders.dispatcher.activities.OrderEtaActivities;
 import com.instafood.orders.dispatcher.domain.FoodOrder;
 import com.instafood.orders.dispatcher.domain.OrderStatus;
 import com.instafood.orders.megaburger.activities.MegaBurgerOrderActivities;
+import com.instafood.orders.megaburger.service.MegaBurgerRateLimitedException;
+import com.instafood.tracing.WorkflowSpan;
 import com.uber.cadence.activity.ActivityOptions;
 import com.uber.cadence.common.RetryOptions;
+import com.uber.cadence.workflow.ActivityFailureException;
+import com.uber.cadence.workflow.Async;
+import com.uber.cadence.workflow.Promise;
 import com.uber.cadence.workflow.Workflow;
 import org.slf4j.Logger;
 
 import java.time.Duration;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.function.Supplier;
 
 public class MegaBurgerOrderWorkflowImpl implements MegaBurgerOrderWorkflow {
 
     private static final Logger logger = Workflow.getLogger(MegaBurgerOrderWorkflowImpl.class);
 
+    private static final ActivityOptions ACTIVITY_OPTIONS = new ActivityOptions.Builder()
+            .setRetryOptions(new RetryOptions.Builder()
+                    .setInitialInterval(Duration.ofSeconds(10))
+                    .setMaximumAttempts(3)
+                    // Backing off as MegaBurger asks is up to the workflow
+                    .setDoNotRetry(MegaBurgerRateLimitedException.class)
+                    .build())
+            // Each attempt's time left becomes the HTTP timeout of its call to MegaBurger
+            .setStartToCloseTimeout(Duration.ofSeconds(30))
+            .setScheduleToCloseTimeout(Duration.ofMinutes(5)).build();
+
+    // Waiting out MegaBurger's rate limit for longer fails the call, and with it the order
+    private static final Duration MAX_RATE_LIMITED_WAIT = Duration.ofMinutes(10);
+
+    private static final ActivityOptions ORDER_ETA_ACTIVITY_OPTIONS = new ActivityOptions.Builder()
+            .setTaskList(OrderEtaActivities.TASK_LIST)
+            .setScheduleToCloseTimeout(Duration.ofSeconds(30)).build();
+
     private final MegaBurgerOrderActivities megaBurgerOrderActivities =
-            Workflow.newActivityStub(MegaBurgerOrderActivities.class,
-                    new ActivityOptions.Builder()
-                            .setRetryOptions(new RetryOptions.Builder()
-                                    .setInitialInterval(Duration.ofSeconds(10))
-                                    .setMaximumAttempts(3)
-                                    .build())
-                            .setScheduleToCloseTimeout(Duration.ofMinutes(5)).build());
+            Workflow.newActivityStub(MegaBurgerOrderActivities.class, ACTIVITY_OPTIONS);
+
+    private final OrderEtaActivities orderEtaActivities =
+            Workflow.newActivityStub(OrderEtaActivities.class, ORDER_ETA_ACTIVITY_OPTIONS);
+
+    private final Random random = Workflow.newRandom();
+    private final PollingSchedule pollingSchedule;
 
     private OrderStatus currentStatus = OrderStatus.CREATED;
+    private int itemSignalsVersion;
+    private int adaptivePollingVersion;
+    private int detachedCreateVersion;
+    private int learnedCookingVersion;
+    private int boundedRateLimitVersion;
+    private Integer orderId;
+    // Set while the order is created in a detached scope, so that cancelling can wait for the id
+    private Promise<Integer> createdOrderId;
+    private int etaInMinutes = -1;
+    private long acceptedAtMillis;
+    // Learned from the restaurant's previous orders, polling goes by the quoted ETA until it's known
+    private Promise<Long> preparationSeconds;
+
+    public MegaBurgerOrderWorkflowImpl() {
+        this(PollingSchedule.defaults());
+    }
+
+    public MegaBurgerOrderWorkflowImpl(PollingSchedule pollingSchedule) {
+        this.pollingSchedule = pollingSchedule;
+    }
 
     @Override
     public void orderFood(FoodOrder order) {
+        WorkflowSpan span = WorkflowSpan.start("MegaBurgerOrderWorkflow.orderFood");
+        try {
+            placeOrder(order);
+        } catch (RuntimeException e) {
+            span.end(e);
+            throw e;
+        }
+        span.end();
+    }
+
+    private void placeOrder(FoodOrder order) {
+        // The parent used to place a single order, now it tracks each item it placed by the item's workflow id
+        itemSignalsVersion = Workflow.getVersion("LineItemSignals", Workflow.DEFAULT_VERSION, 1);
+        // Cancelled orders used to be left for MegaBurger to go on preparing, now they're cancelled there too
+        int cancellationVersion = Workflow.getVersion("CancelMegaBurgerOrder", Workflow.DEFAULT_VERSION, 1);
+        // Orders used to be polled every 10 seconds whatever they were waiting for
+        adaptivePollingVersion = Workflow.getVersion("AdaptivePolling", Workflow.DEFAULT_VERSION, 1);
+        // Orders cancelled while being created used to be left at MegaBurger, as their id wasn't known yet
+        detachedCreateVersion = Workflow.getVersion("DetachedCreateOrder", Workflow.DEFAULT_VERSION, 1);
+        // Cooking used to be expected to take as long as the restaurant quoted, rather than as long as it takes
+        learnedCookingVersion = Workflow.getVersion("LearnedCookingDuration", Workflow.DEFAULT_VERSION, 1);
+        // Rate limited calls used to be retried for as long as MegaBurger kept shedding them
+        boundedRateLimitVersion = Workflow.getVersion("BoundedRateLimitWait", Workflow.DEFAULT_VERSION, 1);
+        try {
+            trackOrder(order);
+        } catch (CancellationException e) {
+            if (cancellationVersion >= 1) {
+                cancelOrder();
+            }
+            throw e;
+        }
+    }
+
+    private void trackOrder(FoodOrder order) {
         OrderWorkflow parentOrderWorkflow = getParentOrderWorkflow();
 
-        Integer orderId = megaBurgerOrderActivities.createOrder(mapMegaBurgerFoodOrder(order));
+        MegaBurgerFoodOrder megaBurgerFoodOrder = mapMegaBurgerFoodOrder(order);
+        if (detachedCreateVersion >= 1) {
+            // Cancelling the workflow doesn't cancel the creation, cancelOrder gets the id it ends up with
+            Workflow.newDetachedCancellationScope(() -> createdOrderId = Async.function(() ->
+                    honoringRateLimit(() -> megaBurgerOrderActivities.createOrder(megaBurgerFoodOrder))));
+            orderId = createdOrderId.get();
+        } else {
+            orderId = honoringRateLimit(() -> megaBurgerOrderActivities.createOrder(megaBurgerFoodOrder));
+        }
         logger.info("Placed order with id: " + orderId);
         updateOrderStatus(parentOrderWorkflow, OrderStatus.PENDING);
 
@@ -41,7 +131,17 @@ public class MegaBurgerOrderWorkflowImpl implements MegaBurgerOrderWorkflow {
             throw new RuntimeException("Order with id " + orderId + " was rejected");
         }
         // Send ETA to parent workflow
-        parentOrderWorkflow.updateEta(getOrderEta(orderId));
+        acceptedAtMillis = Workflow.currentTimeMillis();
+        etaInMinutes = getOrderEta(orderId);
+        if (adaptivePollingVersion >= 1 && learnedCookingVersion >= 1) {
+            preparationSeconds = Async.function(orderEtaActivities::getPreparationSeconds, order.getRestaurant(),
+                    order.getMeal(), etaInMinutes);
+        }
+        if (itemSignalsVersion >= 1) {
+            parentOrderWorkflow.updateItemEta(Workflow.getWorkflowInfo().getWorkflowId(), etaInMinutes);
+        } else {
+            parentOrderWorkflow.updateEta(etaInMinutes);
+        }
 
         // Poll until Order is cooking
         updateOrderStatus(parentOrderWorkflow, pollOrderStatusTransition(orderId, OrderStatus.ACCEPTED));
@@ -51,8 +151,42 @@ public class MegaBurgerOrderWorkflowImpl implements MegaBurgerOrderWorkflow {
         updateOrderStatus(parentOrderWorkflow, pollOrderStatusTransition(orderId, OrderStatus.READY));
     }
 
+    /**
+     * Compensates for a cancelled workflow. The workflow's own scope is cancelled by then, so the calls to
+     * MegaBurger run in a detached one. An order still being created is waited for and then cancelled, unless it
+     * was placed before {@code DetachedCreateOrder}: those have no id to cancel yet and are left as they are.
+     */
+    private void cancelOrder() {
+        currentStatus = OrderStatus.CANCELLED;
+        Workflow.newDetachedCancellationScope(() -> {
+            Integer cancelledOrderId = orderId != null ? orderId : getCreatedOrderId();
+            if (cancelledOrderId == null) {
+                return;
+            }
+            honoringRateLimit(() -> {
+                megaBurgerOrderActivities.cancelOrder(cancelledOrderId);
+                return null;
+            });
+            logger.info("Cancelled order with id: " + cancelledOrderId);
+        });
+    }
+
+    /**
+     * Id of the order being created when the workflow was cancelled, null when it couldn't be created at all.
+     */
+    private Integer getCreatedOrderId() {
+        if (createdOrderId == null) {
+            return null;
+        }
+        try {
+            return createdOrderId.get();
+        } catch (ActivityFailureException e) {
+            return null;
+        }
+    }
+
     private Integer getOrderEta(Integer orderId) {
-        return megaBurgerOrderActivities.getOrderById(orderId).getEtaMinutes();
+        return getOrderById(orderId).getEtaMinutes();
     }
 
     private OrderWorkflow getParentOrderWorkflow() {
@@ -62,7 +196,11 @@ public class MegaBurgerOrderWorkflowImpl implements MegaBurgerOrderWorkflow {
 
     private void updateOrderStatus(OrderWorkflow parentOrderWorkflow, OrderStatus latestStatus) {
         currentStatus = latestStatus;
-        parentOrderWorkflow.updateStatus(currentStatus);
+        if (itemSignalsVersion >= 1) {
+            parentOrderWorkflow.updateItemStatus(Workflow.getWorkflowInfo().getWorkflowId(), currentStatus);
+        } else {
+            parentOrderWorkflow.updateStatus(currentStatus);
+        }
     }
 
     private MegaBurgerFoodOrder mapMegaBurgerFoodOrder(FoodOrder order) {
@@ -73,15 +211,92 @@ public class MegaBurgerOrderWorkflowImpl implements MegaBurgerOrderWorkflow {
     }
 
     private OrderStatus pollOrderStatusTransition(Integer orderId, OrderStatus orderStatus) {
-        OrderStatus polledStatus = megaBurgerOrderActivities.getOrderById(orderId).getStatus();
+        // One span per polling stage, so sleeps show up as the gaps between its getOrderById children
+        WorkflowSpan span = WorkflowSpan.start("MegaBurgerOrderWorkflow.poll " + orderStatus);
+        long expectedTransitionMillis = getExpectedTransitionMillis(orderStatus);
+        OrderStatus polledStatus = getOrderById(orderId).getStatus();
+        int iterations = 1;
+        int overduePolls = 0;
         while (orderStatus.equals(polledStatus)) {
-            Workflow.sleep(Duration.ofSeconds(10));
-            polledStatus = megaBurgerOrderActivities.getOrderById(orderId).getStatus();
+            if (adaptivePollingVersion >= 1) {
+                Duration untilExpected = Duration.ofMillis(expectedTransitionMillis - Workflow.currentTimeMillis());
+                Workflow.sleep(pollingSchedule.nextDelay(orderStatus, untilExpected, overduePolls,
+                        random.nextDouble()));
+                if (untilExpected.isNegative() || untilExpected.isZero()) {
+                    overduePolls++;
+                }
+            } else {
+                Workflow.sleep(Duration.ofSeconds(10));
+            }
+            polledStatus = getOrderById(orderId).getStatus();
+            iterations++;
             logger.debug("[Polling] order: " + orderId + ", current status: " + polledStatus);
         }
+        OrderMetrics.recordPollIterations(orderStatus, iterations);
+        span.setAttribute("instafood.poll.iterations", iterations)
+                .setAttribute("instafood.poll.next_status", String.valueOf(polledStatus))
+                .end();
         return polledStatus;
     }
 
+    /**
+     * When the order is expected to leave {@code stage}: once its expected preparation time is up while cooking, or
+     * after the stage's typical duration from now otherwise.
+     */
+    private long getExpectedTransitionMillis(OrderStatus stage) {
+        if (adaptivePollingVersion < 1) {
+            return 0;
+        }
+        Duration expectedDuration = pollingSchedule.getPolicy(stage).getExpectedDuration();
+        if (expectedDuration.isZero() && etaInMinutes >= 0 && acceptedAtMillis != 0) {
+            return acceptedAtMillis + getPreparationTime().toMillis();
+        }
+        return Workflow.currentTimeMillis() + expectedDuration.toMillis();
+    }
+
+    /**
+     * The learned preparation time when it's there, without waiting for it, or the restaurant's ETA. Estimates are
+     * only an optimisation, polling goes on with the ETA when they can't be had.
+     */
+    private Duration getPreparationTime() {
+        if (preparationSeconds != null && preparationSeconds.isCompleted() && preparationSeconds.getFailure() == null) {
+            return Duration.ofSeconds(preparationSeconds.get());
+        }
+        return Duration.ofMinutes(etaInMinutes);
+    }
+
+    private MegaBurgerFoodOrder getOrderById(Integer orderId) {
+        return honoringRateLimit(() -> megaBurgerOrderActivities.getOrderById(orderId));
+    }
+
+    /**
+     * Calls MegaBurger, waiting as long as it asks whenever it sheds the request. Up to half the wait is added at
+     * random so that workflows throttled together don't all come back at once. A call still shed once the next wait
+     * would take it past {@link #MAX_RATE_LIMITED_WAIT} fails with MegaBurger's last refusal.
+     */
+    private <T> T honoringRateLimit(Supplier<T> call) {
+        Duration waited = Duration.ZERO;
+        while (true) {
+            try {
+                return call.get();
+            } catch (ActivityFailureException e) {
+                if (!(e.getCause() instanceof MegaBurgerRateLimitedException)) {
+                    throw e;
+                }
+                Duration retryAfter = ((MegaBurgerRateLimitedException) e.getCause()).getRetryAfter();
+                Duration jitter = Duration.ofMillis((long) (random.nextDouble() * retryAfter.toMillis() / 2));
+                Duration wait = retryAfter.plus(jitter);
+                if (boundedRateLimitVersion >= 1 && waited.plus(wait).compareTo(MAX_RATE_LIMITED_WAIT) > 0) {
+                    logger.warn("[Rate limited] giving up after waiting " + waited);
+                    throw e;
+                }
+                waited = waited.plus(wait);
+                logger.debug("[Rate limited] retrying in " + wait);
+                Workflow.sleep(wait);
+            }
+        }
+    }
+
     @Override
     public OrderStatus getStatus() {
         return currentStatus;
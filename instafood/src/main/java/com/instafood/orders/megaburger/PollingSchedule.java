@@ -0,0 +1,119 @@
+package com.instafood.orders.megaburger;
+
+import com.instafood.orders.dispatcher.domain.OrderStatus;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * How long to wait between polls of a MegaBurger order, depending on the stage it's in and on when it's expected to
+ * leave it.
+ * <p>
+ * Far from the expected transition the order is polled sparsely, waiting half of the time left each time (up to the
+ * stage's longest interval), so polls get denser as the transition gets near. Once the expected time has passed the
+ * interval starts over from the shortest one and backs off exponentially. Every interval gets some jitter so orders
+ * placed together don't poll MegaBurger together.
+ * <p>
+ * No stage is polled less often than every {@link #LONGEST_INTERVAL}, the fixed interval orders were polled at
+ * before, so transitions are never seen later than they used to be. The savings come from the sparse early phase.
+ */
+public class PollingSchedule {
+
+    private static final double BACKOFF_MULTIPLIER = 1.5;
+    private static final double JITTER = 0.2;
+
+    public static final Duration LONGEST_INTERVAL = Duration.ofSeconds(10);
+
+    private final Map<OrderStatus, StagePolicy> policies;
+
+    public PollingSchedule(Map<OrderStatus, StagePolicy> policies) {
+        this.policies = new EnumMap<>(policies);
+    }
+
+    /**
+     * Expected stage durations roughly follow what the order stage latency metrics show for MegaBurger. Cooking is
+     * expected to take as long as the restaurant's orders have been taking, see {@code OrderEtaActivities}.
+     */
+    public static PollingSchedule defaults() {
+        Map<OrderStatus, StagePolicy> policies = new EnumMap<>(OrderStatus.class);
+        policies.put(OrderStatus.PENDING,
+                new StagePolicy(Duration.ofSeconds(30), Duration.ofSeconds(2), LONGEST_INTERVAL));
+        policies.put(OrderStatus.ACCEPTED,
+                new StagePolicy(Duration.ofMinutes(1), Duration.ofSeconds(5), LONGEST_INTERVAL));
+        policies.put(OrderStatus.COOKING, new StagePolicy(Duration.ZERO, Duration.ofSeconds(5), LONGEST_INTERVAL));
+        policies.put(OrderStatus.READY,
+                new StagePolicy(Duration.ofMinutes(2), Duration.ofSeconds(5), LONGEST_INTERVAL));
+        return new PollingSchedule(policies);
+    }
+
+    public StagePolicy getPolicy(OrderStatus stage) {
+        StagePolicy policy = policies.get(stage);
+        if (policy == null) {
+            throw new IllegalArgumentException("No polling policy for stage " + stage);
+        }
+        return policy;
+    }
+
+    /**
+     * Time to wait before polling again.
+     *
+     * @param untilExpected time left until the order is expected to leave {@code stage}, negative once overdue
+     * @param overduePolls  polls already made since the order became overdue
+     * @param random        uniformly distributed in [0, 1), drawn from the workflow's random
+     */
+    public Duration nextDelay(OrderStatus stage, Duration untilExpected, int overduePolls, double random) {
+        StagePolicy policy = getPolicy(stage);
+        long delayMillis;
+        if (untilExpected.toMillis() > policy.minInterval.toMillis()) {
+            delayMillis = Math.min(untilExpected.toMillis() / 2, policy.maxInterval.toMillis());
+        } else {
+            delayMillis = (long) Math.min(policy.minInterval.toMillis() * Math.pow(BACKOFF_MULTIPLIER, overduePolls),
+                    policy.maxInterval.toMillis());
+        }
+        delayMillis = (long) (delayMillis * (1 + JITTER * (2 * random - 1)));
+        // Bounded after the jitter, so that no wait goes past the stage's longest interval
+        return Duration.ofMillis(Math.min(Math.max(delayMillis, policy.minInterval.toMillis()),
+                policy.maxInterval.toMillis()));
+    }
+
+    /**
+     * Polling of a single stage.
+     */
+    public static final class StagePolicy {
+        private final Duration expectedDuration;
+        private final Duration minInterval;
+        private final Duration maxInterval;
+
+        /**
+         * @param expectedDuration typical time orders stay in the stage, zero when it comes from the order's
+         *                         expected preparation time
+         * @param minInterval      shortest wait between polls
+         * @param maxInterval      longest wait between polls, which bounds how late an early transition is seen, at
+         *                         most {@link #LONGEST_INTERVAL}
+         */
+        public StagePolicy(Duration expectedDuration, Duration minInterval, Duration maxInterval) {
+            if (minInterval.isNegative() || minInterval.isZero() || maxInterval.compareTo(minInterval) < 0
+                    || maxInterval.compareTo(LONGEST_INTERVAL) > 0) {
+                throw new IllegalArgumentException(
+                        String.format("Invalid polling intervals %s to %s, the longest can be %s", minInterval,
+                                maxInterval, LONGEST_INTERVAL));
+            }
+            this.expectedDuration = expectedDuration;
+            this.minInterval = minInterval;
+            this.maxInterval = maxInterval;
+        }
+
+        public Duration getExpectedDuration() {
+            return expectedDuration;
+        }
+
+        public Duration getMinInterval() {
+            return minInterval;
+        }
+
+        public Duration getMaxInterval() {
+            return maxInterval;
+        }
+    }
+}
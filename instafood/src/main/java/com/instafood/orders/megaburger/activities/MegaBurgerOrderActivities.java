@@ -10,4 +10,10 @@ public interface MegaBurgerOrderActivities {
 
     @ActivityMethod
     MegaBurgerFoodOrder getOrderById(Integer orderId);
+
+    /**
+     * Tells MegaBurger to stop preparing an order, a no-op if it's already done with it.
+     */
+    @ActivityMethod
+    void cancelOrder(Integer orderId);
 }
@@ -2,28 +2,95 @@ package com.instafood.orders.megaburger.activities;
 
 import com.instafood.orders.megaburger.MegaBurgerFoodOrder;
 import com.instafood.orders.megaburger.service.MegaBurgerOrdersApiClient;
+import com.instafood.tracing.ActivitySpans;
+import com.uber.cadence.activity.Activity;
+import com.uber.cadence.activity.ActivityTask;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
 public class MegaBurgerRestApiOrderActivities implements MegaBurgerOrderActivities {
 
     private static Logger logger = LoggerFactory.getLogger(MegaBurgerRestApiOrderActivities.class);
 
+    // Left to report the result back to Cadence once MegaBurger answers
+    private static final Duration COMPLETION_MARGIN = Duration.ofSeconds(1);
+    // Requests need a positive timeout even once the attempt is all but over, Cadence times it out anyway
+    private static final Duration MIN_TIMEOUT = Duration.ofMillis(100);
+
     private final MegaBurgerOrdersApiClient megaBurgerApiClient;
 
     public MegaBurgerRestApiOrderActivities() {
-        megaBurgerApiClient = new MegaBurgerOrdersApiClient();
+        this(new MegaBurgerOrdersApiClient());
+    }
+
+    public MegaBurgerRestApiOrderActivities(MegaBurgerOrdersApiClient megaBurgerApiClient) {
+        this.megaBurgerApiClient = megaBurgerApiClient;
     }
 
     @Override
     public Integer createOrder(MegaBurgerFoodOrder order) {
-        MegaBurgerFoodOrder createdOrder = megaBurgerApiClient.create(order);
-        logger.info("response: " + createdOrder);
-        return createdOrder.getId();
+        long startedAtMillis = System.currentTimeMillis();
+        return ActivitySpans.inSpan("MegaBurgerOrderActivities.createOrder", () -> {
+            MegaBurgerFoodOrder createdOrder = megaBurgerApiClient.create(order, getIdempotencyKey(),
+                    getTimeout(startedAtMillis));
+            logger.info("response: " + createdOrder);
+            return createdOrder.getId();
+        });
+    }
+
+    /**
+     * Retries of an activity keep its id, so a retry after a timed out request is recognised by MegaBurger
+     * instead of placing the order twice. Activity ids start over in every run, and a workflow id can be reused
+     * after a reset or by a later order, so the run id keeps those from getting an earlier run's order back.
+     */
+    private static String getIdempotencyKey() {
+        ActivityTask task = Activity.getTask();
+        return task.getWorkflowExecution().getWorkflowId() + "/" + task.getWorkflowExecution().getRunId() + "/"
+                + task.getActivityId();
+    }
+
+    /**
+     * What's left of this attempt, so a stuck call to MegaBurger fails (and is retried) when Cadence times the
+     * attempt out instead of holding on to the activity thread.
+     */
+    private static Duration getTimeout(long startedAtMillis) {
+        ActivityTask task = Activity.getTask();
+        return getTimeout(task.getStartToCloseTimeout(), task.getScheduleToCloseTimeout(),
+                TimeUnit.NANOSECONDS.toMillis(task.getScheduledTimestamp()), startedAtMillis,
+                System.currentTimeMillis());
+    }
+
+    /**
+     * Time until the attempt ends, less {@link #COMPLETION_MARGIN}. It ends {@code startToClose} after it started,
+     * or earlier when the activity's {@code scheduleToClose} runs out first, as it does for late retries.
+     */
+    static Duration getTimeout(Duration startToClose, Duration scheduleToClose, long scheduledAtMillis,
+                               long startedAtMillis, long nowMillis) {
+        long deadlineMillis = startedAtMillis + startToClose.toMillis();
+        if (!scheduleToClose.isZero()) {
+            deadlineMillis = Math.min(deadlineMillis, scheduledAtMillis + scheduleToClose.toMillis());
+        }
+        Duration timeout = Duration.ofMillis(deadlineMillis - nowMillis).minus(COMPLETION_MARGIN);
+        return timeout.compareTo(MIN_TIMEOUT) < 0 ? MIN_TIMEOUT : timeout;
     }
 
     @Override
     public MegaBurgerFoodOrder getOrderById(Integer orderId) {
-        return megaBurgerApiClient.getById(orderId);
+        long startedAtMillis = System.currentTimeMillis();
+        return ActivitySpans.inSpan("MegaBurgerOrderActivities.getOrderById",
+                () -> megaBurgerApiClient.getById(orderId, getTimeout(startedAtMillis)));
+    }
+
+    @Override
+    public void cancelOrder(Integer orderId) {
+        long startedAtMillis = System.currentTimeMillis();
+        ActivitySpans.inSpan("MegaBurgerOrderActivities.cancelOrder", () -> {
+            MegaBurgerFoodOrder order = megaBurgerApiClient.cancel(orderId, getTimeout(startedAtMillis));
+            logger.info("Cancelled order {}, left as: {}", orderId, order);
+            return order;
+        });
     }
 }
@@ -0,0 +1,79 @@
+package com.instafood.orders.megaburger.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Maps order ids (and other keys) to one of {@code shardCount} shards by consistent hashing: every shard is
+ * placed on a ring of 64-bit hashes at {@link #VIRTUAL_NODES} points, and a key belongs to the first shard point
+ * at or after its own hash. Adding a shard only moves the keys that land on the new shard's points.
+ * <p>
+ * MegaBurger allocates order ids with its own copy of this class, both must keep producing the same mapping.
+ */
+public class ConsistentHashRing {
+
+    static final int VIRTUAL_NODES = 160;
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final int shardCount;
+    private final long[] points;
+    private final int[] shards;
+
+    public ConsistentHashRing(int shardCount) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("There must be at least one shard, got " + shardCount);
+        }
+        this.shardCount = shardCount;
+        long[][] ring = new long[shardCount * VIRTUAL_NODES][];
+        for (int shard = 0; shard < shardCount; shard++) {
+            for (int node = 0; node < VIRTUAL_NODES; node++) {
+                ring[shard * VIRTUAL_NODES + node] = new long[]{hash("shard-" + shard + "#" + node), shard};
+            }
+        }
+        Arrays.sort(ring, (a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(a[1], b[1]));
+        points = new long[ring.length];
+        shards = new int[ring.length];
+        for (int i = 0; i < ring.length; i++) {
+            points[i] = ring[i][0];
+            shards[i] = (int) ring[i][1];
+        }
+    }
+
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    public int shardFor(int orderId) {
+        return shardFor(Integer.toString(orderId));
+    }
+
+    public int shardFor(String key) {
+        if (shardCount == 1) {
+            return 0;
+        }
+        int index = Arrays.binarySearch(points, hash(key));
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return shards[index == points.length ? 0 : index];
+    }
+
+    /**
+     * 64-bit FNV-1a of the key's UTF-8 bytes, finished with MurmurHash3's fmix64 to spread similar keys apart.
+     */
+    static long hash(String key) {
+        long hash = FNV_OFFSET_BASIS;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= FNV_PRIME;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
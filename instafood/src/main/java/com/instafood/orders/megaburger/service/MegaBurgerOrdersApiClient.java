@@ -1,10 +1,18 @@
 package com.instafood.orders.megaburger.service;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
 import com.instafood.orders.megaburger.MegaBurgerFoodOrder;
+import com.instafood.tracing.CadenceContextPropagator;
+import com.instafood.tracing.InstafoodTracing;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.api.trace.StatusCode;
 
 import java.io.IOException;
 import java.net.URI;
@@ -12,95 +20,309 @@ import java.net.URISyntaxException;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class MegaBurgerOrdersApiClient {
 
+    public static final String REQUESTS_METRIC = "megaburger.api.requests";
+
+    // How long the caller still waits for the answer, MegaBurger drops requests nobody waits for
+    public static final String TIMEOUT_HEADER = "X-Request-Timeout-Ms";
+
+    static final String JSON = "application/json";
+    // Jackson's binary JSON, same data model with no field names or numbers spelled out as text
+    static final String SMILE = "application/x-jackson-smile";
+
+    // Used when MegaBurger doesn't say how long to back off for
+    private static final Duration DEFAULT_RETRY_AFTER = Duration.ofSeconds(1);
+    // Used when the caller doesn't have a deadline of its own
+    private static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(30);
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(5);
+
     private final ObjectMapper objectMapper;
-    private final String baseUrl;
+    private final ObjectMapper smileMapper;
+    private final boolean preferSmile;
+    private final List<String> shardUrls;
+    private final ConsistentHashRing ring;
+    private final MeterRegistry meterRegistry;
+    private final HttpClient httpClient = HttpClient.newBuilder().connectTimeout(CONNECT_TIMEOUT).build();
+    private final AtomicInteger nextCreateShard = new AtomicInteger();
+    // Shards that answered in Smile, the only ones sent Smile bodies
+    private final Set<Integer> smileShards = ConcurrentHashMap.newKeySet();
 
     public MegaBurgerOrdersApiClient() {
-        objectMapper = new ObjectMapper()
-                .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
-                .setSerializationInclusion(JsonInclude.Include.NON_NULL);
-        baseUrl = "http://localhost:8080";
+        this(Metrics.globalRegistry);
+    }
+
+    public MegaBurgerOrdersApiClient(MeterRegistry meterRegistry) {
+        this("http://localhost:8080", meterRegistry);
+    }
+
+    public MegaBurgerOrdersApiClient(String baseUrl, MeterRegistry meterRegistry) {
+        this(Collections.singletonList(baseUrl), meterRegistry);
+    }
+
+    public MegaBurgerOrdersApiClient(List<String> shardUrls, MeterRegistry meterRegistry) {
+        this(shardUrls, meterRegistry, false);
+    }
+
+    /**
+     * Client for MegaBurger running as several shards, {@code shardUrls} listed in shard index order. With
+     * {@code preferSmile} orders are asked for as Smile first, JSON answers are still understood, and sent as Smile
+     * to the shards that have answered in Smile before. Shards that don't speak it keep getting JSON.
+     */
+    public MegaBurgerOrdersApiClient(List<String> shardUrls, MeterRegistry meterRegistry, boolean preferSmile) {
+        objectMapper = newObjectMapper(new ObjectMapper());
+        smileMapper = newObjectMapper(new ObjectMapper(new SmileFactory()));
+        this.preferSmile = preferSmile;
+        this.shardUrls = new ArrayList<>(shardUrls);
+        this.ring = new ConsistentHashRing(shardUrls.size());
+        this.meterRegistry = meterRegistry;
     }
 
     public MegaBurgerFoodOrder create(MegaBurgerFoodOrder megaBurgerFoodOrder) {
-        HttpRequest httpRequest = getMegaBurgerHttpRequestBuilder("/orders")
-                .POST(HttpRequest.BodyPublishers.ofString(encodeAsString(megaBurgerFoodOrder)))
-                .build();
+        return create(megaBurgerFoodOrder, null);
+    }
 
-        return parseResponse(sendRequest(httpRequest), MegaBurgerFoodOrder.class);
+    /**
+     * Creates an order, sending the same {@code idempotencyKey} again returns the order created the first time.
+     */
+    public MegaBurgerFoodOrder create(MegaBurgerFoodOrder megaBurgerFoodOrder, String idempotencyKey) {
+        return create(megaBurgerFoodOrder, idempotencyKey, DEFAULT_TIMEOUT);
     }
 
-    private HttpRequest.Builder getMegaBurgerHttpRequestBuilder(String path) {
+    /**
+     * Creates an order, giving up after {@code timeout}. MegaBurger doesn't create it either once that's over.
+     */
+    public MegaBurgerFoodOrder create(MegaBurgerFoodOrder megaBurgerFoodOrder, String idempotencyKey,
+                                      Duration timeout) {
+        // Any shard can take a new order. Retries must reach the shard that saw the key the first time.
+        int shard = idempotencyKey != null
+                ? ring.shardFor(idempotencyKey)
+                : Math.floorMod(nextCreateShard.getAndIncrement(), shardUrls.size());
+        boolean smile = preferSmile && smileShards.contains(shard);
+        HttpRequest.Builder httpRequest = requestForShard(shard, "/orders", timeout)
+                .header("content-type", smile ? SMILE : JSON)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(encode(megaBurgerFoodOrder, smile)));
+        if (idempotencyKey != null) {
+            httpRequest.header("Idempotency-Key", idempotencyKey);
+        }
+
+        return parseResponse(shard, sendRequest("create", httpRequest), MegaBurgerFoodOrder.class);
+    }
+
+    /**
+     * A request to the shard owning {@code orderId}.
+     */
+    private HttpRequest.Builder requestForOrder(Integer orderId, String path, Duration timeout) {
+        return requestForShard(ring.shardFor(orderId), path, timeout);
+    }
+
+    private HttpRequest.Builder requestForShard(int shard, String path, Duration timeout) {
         try {
-            return HttpRequest.newBuilder(new URI(baseUrl + path))
-                    .header("content-type", "application/json");
+            return HttpRequest.newBuilder(new URI(shardUrls.get(shard) + path))
+                    .timeout(timeout)
+                    .header(TIMEOUT_HEADER, String.valueOf(timeout.toMillis()))
+                    .header("accept", preferSmile ? SMILE + ", " + JSON + ";q=0.5" : JSON);
         } catch (URISyntaxException e) {
             throw new RuntimeException(e);
         }
     }
 
-    private String encodeAsString(MegaBurgerFoodOrder megaBurgerFoodOrder) {
+    private static ObjectMapper newObjectMapper(ObjectMapper objectMapper) {
+        return objectMapper
+                .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+                .setSerializationInclusion(JsonInclude.Include.NON_NULL);
+    }
+
+    private byte[] encode(MegaBurgerFoodOrder megaBurgerFoodOrder, boolean smile) {
         try {
-            return objectMapper.writeValueAsString(megaBurgerFoodOrder);
-        } catch (JsonProcessingException e) {
+            return (smile ? smileMapper : objectMapper).writeValueAsBytes(megaBurgerFoodOrder);
+        } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
-    private HttpResponse<String> sendRequest(HttpRequest httpRequest) {
+    private HttpResponse<byte[]> sendRequest(String operation, HttpRequest.Builder httpRequestBuilder) {
+        return sendRequest(operation, httpRequestBuilder, false);
+    }
+
+    private HttpResponse<byte[]> sendRequest(String operation, HttpRequest.Builder httpRequestBuilder,
+                                             boolean notFoundAnswers) {
         try {
-            return HttpClient.newHttpClient().send(httpRequest, HttpResponse.BodyHandlers.ofString());
-        } catch (IOException | InterruptedException e) {
-            throw new RuntimeException(e);
+            return sendRequestAsync(operation, httpRequestBuilder, notFoundAnswers).join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
         }
     }
 
-    private <T> T parseResponse(HttpResponse<String> response, Class<T> valueType) {
+    /**
+     * Completes with MegaBurger's 2xx answer, or a 404 one when {@code notFoundAnswers}. Any other status fails the
+     * request, 429 with a {@link MegaBurgerRateLimitedException}.
+     */
+    private CompletableFuture<HttpResponse<byte[]>> sendRequestAsync(String operation,
+                                                                     HttpRequest.Builder httpRequestBuilder,
+                                                                     boolean notFoundAnswers) {
+        Span span = InstafoodTracing.tracer().spanBuilder("MegaBurger " + operation)
+                .setParent(CadenceContextPropagator.current())
+                .setSpanKind(SpanKind.CLIENT)
+                .startSpan();
+        InstafoodTracing.propagator().inject(CadenceContextPropagator.current().with(span), httpRequestBuilder,
+                HttpRequest.Builder::header);
+        HttpRequest httpRequest = httpRequestBuilder.build();
+        span.setAttribute("http.method", httpRequest.method());
+        span.setAttribute("http.url", httpRequest.uri().toString());
+
+        Timer.Sample sample = Timer.start(meterRegistry);
+        return httpClient.sendAsync(httpRequest, HttpResponse.BodyHandlers.ofByteArray()).handle((response, error) -> {
+            String status = "IO_ERROR";
+            try {
+                if (error != null) {
+                    Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+                    if (cause instanceof HttpTimeoutException) {
+                        status = "TIMEOUT";
+                    }
+                    span.recordException(cause);
+                    span.setStatus(StatusCode.ERROR, cause.getMessage());
+                    throw new RuntimeException(cause);
+                }
+                status = String.valueOf(response.statusCode());
+                span.setAttribute("http.status_code", response.statusCode());
+                if (response.statusCode() >= 500) {
+                    span.setStatus(StatusCode.ERROR);
+                }
+                if (response.statusCode() == 429) {
+                    throw new MegaBurgerRateLimitedException(getRetryAfter(response));
+                }
+                if (response.statusCode() / 100 != 2 && !(notFoundAnswers && response.statusCode() == 404)) {
+                    span.setStatus(StatusCode.ERROR);
+                    throw new RuntimeException(
+                            String.format("MegaBurger answered %s with status %d", operation, response.statusCode()));
+                }
+                return response;
+            } finally {
+                span.end();
+                sample.stop(Timer.builder(REQUESTS_METRIC)
+                        .description("Latency of MegaBurger orders API calls")
+                        .tag("operation", operation)
+                        .tag("status", status)
+                        .publishPercentileHistogram()
+                        .register(meterRegistry));
+            }
+        });
+    }
+
+    private static Duration getRetryAfter(HttpResponse<?> response) {
+        // MegaBurger sends delay-seconds, the HTTP-date form of Retry-After isn't supported
+        return response.headers().firstValue("Retry-After")
+                .filter(value -> value.trim().matches("\\d+"))
+                .map(value -> Duration.ofSeconds(Long.parseLong(value.trim())))
+                .orElse(DEFAULT_RETRY_AFTER);
+    }
+
+    /**
+     * Reads the body in whichever format MegaBurger answered with, older instances only speak JSON. A shard that
+     * answers in Smile is sent Smile from then on.
+     */
+    private <T> T parseResponse(int shard, HttpResponse<byte[]> response, Class<T> valueType) {
+        boolean smile = response.headers().firstValue("content-type")
+                .filter(contentType -> contentType.startsWith(SMILE))
+                .isPresent();
+        if (smile) {
+            smileShards.add(shard);
+        }
         try {
-            return objectMapper.readValue(response.body(), valueType);
-        } catch (JsonProcessingException e) {
+            return (smile ? smileMapper : objectMapper).readValue(response.body(), valueType);
+        } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
     public MegaBurgerFoodOrder getById(Integer orderId) {
-        HttpRequest httpRequest = getMegaBurgerHttpRequestBuilder("/orders/" + orderId)
-                .GET().build();
+        return getById(orderId, DEFAULT_TIMEOUT);
+    }
+
+    public MegaBurgerFoodOrder getById(Integer orderId, Duration timeout) {
+        int shard = ring.shardFor(orderId);
+        HttpRequest.Builder httpRequest = requestForShard(shard, "/orders/" + orderId, timeout).GET();
 
-        return parseResponse(sendRequest(httpRequest), MegaBurgerFoodOrder.class);
+        return parseResponse(shard, sendRequest("getById", httpRequest), MegaBurgerFoodOrder.class);
     }
 
+    public MegaBurgerFoodOrder cancel(Integer orderId) {
+        return cancel(orderId, DEFAULT_TIMEOUT);
+    }
+
+    /**
+     * Cancels an order that hasn't been handed over yet.
+     *
+     * @return the order as MegaBurger left it, still not cancelled if it was already delivered, or null when
+     * MegaBurger doesn't know it
+     */
+    public MegaBurgerFoodOrder cancel(Integer orderId, Duration timeout) {
+        int shard = ring.shardFor(orderId);
+        HttpRequest.Builder httpRequest = requestForShard(shard, "/orders/" + orderId + "/cancel", timeout)
+                .POST(HttpRequest.BodyPublishers.noBody());
+
+        HttpResponse<byte[]> response = sendRequest("cancel", httpRequest, true);
+        if (response.statusCode() == 404) {
+            return null;
+        }
+        return parseResponse(shard, response, MegaBurgerFoodOrder.class);
+    }
+
+    /**
+     * Every order across all shards, queried in parallel, sorted by id.
+     */
     public List<MegaBurgerFoodOrder> getAll() {
-        HttpRequest httpRequest = getMegaBurgerHttpRequestBuilder("/orders")
-                .GET().build();
+        List<CompletableFuture<HttpResponse<byte[]>>> responses = new ArrayList<>();
+        for (int shard = 0; shard < shardUrls.size(); shard++) {
+            HttpRequest.Builder httpRequest = requestForShard(shard, "/orders", DEFAULT_TIMEOUT)
+                    .GET();
+            responses.add(sendRequestAsync("getAll", httpRequest, false));
+        }
 
-        return Arrays.stream(parseResponse(sendRequest(httpRequest), MegaBurgerFoodOrder[].class))
-                .collect(Collectors.toList());
+        List<MegaBurgerFoodOrder> orders = new ArrayList<>();
+        for (int shard = 0; shard < responses.size(); shard++) {
+            try {
+                orders.addAll(Arrays.asList(parseResponse(shard, responses.get(shard).join(),
+                        MegaBurgerFoodOrder[].class)));
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+        }
+        orders.sort(Comparator.comparing(MegaBurgerFoodOrder::getId));
+        return orders;
     }
 
     public void updateStatusAndEta(Integer orderId, String status, Integer etaInMinutes) {
-        HttpRequest httpRequest = getMegaBurgerHttpRequestBuilder("/orders/" + orderId)
+        HttpRequest.Builder httpRequest = requestForOrder(orderId, "/orders/" + orderId, DEFAULT_TIMEOUT)
+                .header("content-type", JSON)
                 .method("PATCH", HttpRequest.BodyPublishers.ofString("{" +
                         "\"status\": \"" + status + "\"," +
                         "\"eta_minutes\": " + etaInMinutes +
-                        "}"))
-                .build();
+                        "}"));
 
-        sendRequest(httpRequest);
+        sendRequest("updateStatusAndEta", httpRequest);
     }
 
     public void updateStatus(Integer orderId, String status) {
-        HttpRequest httpRequest = getMegaBurgerHttpRequestBuilder("/orders/" + orderId)
-                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"status\": \"" + status + "\"}"))
-                .build();
+        HttpRequest.Builder httpRequest = requestForOrder(orderId, "/orders/" + orderId, DEFAULT_TIMEOUT)
+                .header("content-type", JSON)
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"status\": \"" + status + "\"}"));
 
-        sendRequest(httpRequest);
+        sendRequest("updateStatus", httpRequest);
     }
 
 }
@@ -0,0 +1,33 @@
+package com.instafood.orders.megaburger.service;
+
+import java.time.Duration;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * MegaBurger shed the request (429 Too Many Requests) and asked to retry after {@link #getRetryAfter()}.
+ * <p>
+ * Activity failures reach workflows through the data converter, which only restores an exception's message, so
+ * the hint is carried in the message too.
+ */
+public class MegaBurgerRateLimitedException extends RuntimeException {
+
+    private static final Pattern RETRY_AFTER = Pattern.compile("retry after (\\d+) ms");
+
+    private final Duration retryAfter;
+
+    public MegaBurgerRateLimitedException(Duration retryAfter) {
+        super("MegaBurger is rate limiting requests, retry after " + retryAfter.toMillis() + " ms");
+        this.retryAfter = retryAfter;
+    }
+
+    public MegaBurgerRateLimitedException(String message) {
+        super(message);
+        Matcher matcher = RETRY_AFTER.matcher(String.valueOf(message));
+        this.retryAfter = matcher.find() ? Duration.ofMillis(Long.parseLong(matcher.group(1))) : Duration.ZERO;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
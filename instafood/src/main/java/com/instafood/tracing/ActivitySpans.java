@@ -0,0 +1,46 @@
+package com.instafood.tracing;
+
+import com.uber.cadence.activity.Activity;
+import com.uber.cadence.activity.ActivityTask;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.context.Scope;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Runs activity code inside a span parented to the workflow that scheduled it.
+ */
+public final class ActivitySpans {
+
+    private ActivitySpans() {
+    }
+
+    public static <T> T inSpan(String name, Supplier<T> activity) {
+        ActivityTask task = Activity.getTask();
+        Span span = InstafoodTracing.tracer().spanBuilder(name)
+                .setParent(CadenceContextPropagator.current())
+                .setSpanKind(SpanKind.INTERNAL)
+                .setAttribute("cadence.activity.id", task.getActivityId())
+                .setAttribute("cadence.activity.attempt", task.getAttempt())
+                // Time the task waited in the task list before a worker picked it up (Cadence uses Unix nanos)
+                .setAttribute("cadence.activity.schedule_to_start_ms",
+                        TimeUnit.NANOSECONDS.toMillis(currentTimeNanos() - task.getScheduledTimestamp()))
+                .startSpan();
+        try (Scope ignored = span.makeCurrent()) {
+            return activity.get();
+        } catch (RuntimeException e) {
+            span.recordException(e);
+            span.setStatus(StatusCode.ERROR, String.valueOf(e.getMessage()));
+            throw e;
+        } finally {
+            span.end();
+        }
+    }
+
+    private static long currentTimeNanos() {
+        return TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+    }
+}
@@ -0,0 +1,93 @@
+package com.instafood.tracing;
+
+import com.uber.cadence.context.ContextPropagator;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.context.propagation.TextMapGetter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Carries the OpenTelemetry trace context in Cadence headers, so workflow starts, child workflows and activities
+ * all end up in the trace of the order that caused them.
+ * <p>
+ * Cadence hands the deserialized context to the thread running the workflow or activity, which we keep in a
+ * thread local; {@link #current()} should be used instead of {@link Context#current()} to pick it up.
+ */
+public class CadenceContextPropagator implements ContextPropagator {
+
+    private static final ThreadLocal<Context> cadenceContext = new ThreadLocal<>();
+
+    private static final TextMapGetter<Map<String, String>> MAP_GETTER = new TextMapGetter<>() {
+        @Override
+        public Iterable<String> keys(Map<String, String> carrier) {
+            return carrier.keySet();
+        }
+
+        @Override
+        public String get(Map<String, String> carrier, String key) {
+            return carrier == null ? null : carrier.get(key);
+        }
+    };
+
+    /**
+     * The active context: the current OpenTelemetry context if it holds a span, otherwise the one received
+     * through Cadence (or set by a {@link WorkflowSpan}) on this thread.
+     */
+    public static Context current() {
+        Context context = Context.current();
+        if (Span.fromContext(context).getSpanContext().isValid()) {
+            return context;
+        }
+        Context propagated = cadenceContext.get();
+        return propagated != null ? propagated : context;
+    }
+
+    static Context setCurrent(Context context) {
+        Context previous = cadenceContext.get();
+        cadenceContext.set(context);
+        return previous;
+    }
+
+    @Override
+    public String getName() {
+        return "OpenTelemetry";
+    }
+
+    @Override
+    public Map<String, byte[]> serializeContext(Object context) {
+        Map<String, byte[]> serialized = new HashMap<>();
+        @SuppressWarnings("unchecked")
+        Map<String, String> carrier = (Map<String, String>) context;
+        carrier.forEach((key, value) -> serialized.put(key, value.getBytes(StandardCharsets.UTF_8)));
+        return serialized;
+    }
+
+    @Override
+    public Object deserializeContext(Map<String, byte[]> context) {
+        Map<String, String> carrier = new HashMap<>();
+        for (String field : InstafoodTracing.propagator().fields()) {
+            byte[] value = context.get(field);
+            if (value != null) {
+                carrier.put(field, new String(value, StandardCharsets.UTF_8));
+            }
+        }
+        return carrier;
+    }
+
+    @Override
+    public Object getCurrentContext() {
+        Map<String, String> carrier = new HashMap<>();
+        InstafoodTracing.propagator().inject(current(), carrier, Map::put);
+        return carrier;
+    }
+
+    @Override
+    public void setCurrentContext(Object context) {
+        @SuppressWarnings("unchecked")
+        Map<String, String> carrier = (Map<String, String>) context;
+        cadenceContext.set(InstafoodTracing.propagator().extract(Context.root(), carrier, MAP_GETTER));
+    }
+}
@@ -0,0 +1,63 @@
+package com.instafood.tracing;
+
+import com.google.common.base.Strings;
+import io.opentelemetry.api.OpenTelemetry;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.api.trace.propagation.W3CTraceContextPropagator;
+import io.opentelemetry.context.propagation.ContextPropagators;
+import io.opentelemetry.context.propagation.TextMapPropagator;
+import io.opentelemetry.exporter.otlp.trace.OtlpGrpcSpanExporter;
+import io.opentelemetry.sdk.OpenTelemetrySdk;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.SpanProcessor;
+import io.opentelemetry.sdk.trace.export.BatchSpanProcessor;
+
+/**
+ * Entry point to the OpenTelemetry instrumentation of the worker. Until {@link #install} is called spans are
+ * no-ops, but trace context is still propagated through Cadence and HTTP headers.
+ */
+public final class InstafoodTracing {
+
+    public static final String INSTRUMENTATION_NAME = "com.instafood";
+
+    private static final ContextPropagators PROPAGATORS =
+            ContextPropagators.create(W3CTraceContextPropagator.getInstance());
+
+    private static volatile OpenTelemetry openTelemetry = OpenTelemetry.propagating(PROPAGATORS);
+
+    private InstafoodTracing() {
+    }
+
+    /**
+     * Installs an SDK exporting spans over OTLP to {@code otlpEndpoint}. Spans are still recorded, but not
+     * exported, when no endpoint is configured.
+     */
+    public static OpenTelemetrySdk install(String otlpEndpoint) {
+        if (Strings.isNullOrEmpty(otlpEndpoint)) {
+            return install(SpanProcessor.composite());
+        }
+        return install(BatchSpanProcessor.builder(OtlpGrpcSpanExporter.builder()
+                .setEndpoint(otlpEndpoint)
+                .build()).build());
+    }
+
+    public static OpenTelemetrySdk install(SpanProcessor spanProcessor) {
+        OpenTelemetrySdk sdk = OpenTelemetrySdk.builder()
+                .setTracerProvider(SdkTracerProvider.builder()
+                        .setIdGenerator(new PinnedIdGenerator())
+                        .addSpanProcessor(spanProcessor)
+                        .build())
+                .setPropagators(PROPAGATORS)
+                .build();
+        openTelemetry = sdk;
+        return sdk;
+    }
+
+    public static Tracer tracer() {
+        return openTelemetry.getTracer(INSTRUMENTATION_NAME);
+    }
+
+    public static TextMapPropagator propagator() {
+        return PROPAGATORS.getTextMapPropagator();
+    }
+}
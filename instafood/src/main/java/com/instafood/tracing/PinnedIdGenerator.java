@@ -0,0 +1,49 @@
+package com.instafood.tracing;
+
+import io.opentelemetry.api.trace.SpanId;
+import io.opentelemetry.api.trace.TraceId;
+import io.opentelemetry.sdk.trace.IdGenerator;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+/**
+ * Random {@link IdGenerator} that can be told which ids to hand out next. Workflow spans use it to get ids that
+ * are derived from the workflow run, so they stay the same when the workflow is replayed on another worker.
+ */
+final class PinnedIdGenerator implements IdGenerator {
+
+    private static final ThreadLocal<String[]> pinnedIds = new ThreadLocal<>();
+
+    static <T> T withPinnedIds(String traceId, String spanId, Supplier<T> supplier) {
+        pinnedIds.set(new String[]{traceId, spanId});
+        try {
+            return supplier.get();
+        } finally {
+            pinnedIds.remove();
+        }
+    }
+
+    static String traceIdFor(String seed) {
+        UUID uuid = UUID.nameUUIDFromBytes(seed.getBytes(StandardCharsets.UTF_8));
+        return TraceId.fromLongs(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+    }
+
+    static String spanIdFor(String seed) {
+        UUID uuid = UUID.nameUUIDFromBytes(seed.getBytes(StandardCharsets.UTF_8));
+        return SpanId.fromLong(uuid.getMostSignificantBits() ^ uuid.getLeastSignificantBits());
+    }
+
+    @Override
+    public String generateSpanId() {
+        String[] ids = pinnedIds.get();
+        return ids != null ? ids[1] : IdGenerator.random().generateSpanId();
+    }
+
+    @Override
+    public String generateTraceId() {
+        String[] ids = pinnedIds.get();
+        return ids != null ? ids[0] : IdGenerator.random().generateTraceId();
+    }
+}
@@ -0,0 +1,95 @@
+package com.instafood.tracing;
+
+import com.uber.cadence.workflow.Workflow;
+import com.uber.cadence.workflow.WorkflowInfo;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.common.AttributesBuilder;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanContext;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.api.trace.TraceFlags;
+import io.opentelemetry.api.trace.TraceState;
+import io.opentelemetry.context.Context;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A span covering a piece of workflow code, which may be blocked for minutes and replayed any number of times.
+ * <p>
+ * Its ids are derived from the workflow run and the span name (names must be unique within a run) and its
+ * timestamps come from {@link Workflow#currentTimeMillis()}, so every replay agrees on them. Activities and child
+ * workflows started while the span is open use it as their parent. The span is only exported once, by the
+ * execution that ends it without replaying.
+ */
+public final class WorkflowSpan {
+
+    private final String name;
+    private final Context parent;
+    private final SpanContext spanContext;
+    private final Context previous;
+    private final long startMillis;
+    private final AttributesBuilder attributes = Attributes.builder();
+
+    private WorkflowSpan(String name, Context parent, SpanContext spanContext, Context previous, long startMillis) {
+        this.name = name;
+        this.parent = parent;
+        this.spanContext = spanContext;
+        this.previous = previous;
+        this.startMillis = startMillis;
+    }
+
+    public static WorkflowSpan start(String name) {
+        WorkflowInfo workflowInfo = Workflow.getWorkflowInfo();
+        Context parent = CadenceContextPropagator.current();
+        SpanContext parentSpanContext = Span.fromContext(parent).getSpanContext();
+
+        SpanContext spanContext = SpanContext.create(
+                parentSpanContext.isValid()
+                        ? parentSpanContext.getTraceId()
+                        : PinnedIdGenerator.traceIdFor(workflowInfo.getWorkflowId()),
+                PinnedIdGenerator.spanIdFor(workflowInfo.getRunId() + "/" + name),
+                parentSpanContext.isValid() ? parentSpanContext.getTraceFlags() : TraceFlags.getSampled(),
+                TraceState.getDefault());
+        Context previous = CadenceContextPropagator.setCurrent(parent.with(Span.wrap(spanContext)));
+
+        WorkflowSpan span = new WorkflowSpan(name, parent, spanContext, previous, Workflow.currentTimeMillis());
+        span.setAttribute("cadence.workflow.id", workflowInfo.getWorkflowId());
+        span.setAttribute("cadence.workflow.run_id", workflowInfo.getRunId());
+        return span;
+    }
+
+    public WorkflowSpan setAttribute(String key, String value) {
+        attributes.put(key, value);
+        return this;
+    }
+
+    public WorkflowSpan setAttribute(String key, long value) {
+        attributes.put(key, value);
+        return this;
+    }
+
+    public void end() {
+        end(null);
+    }
+
+    public void end(Throwable error) {
+        CadenceContextPropagator.setCurrent(previous);
+        if (Workflow.isReplaying()) {
+            return;
+        }
+        long endMillis = Workflow.currentTimeMillis();
+        Span span = PinnedIdGenerator.withPinnedIds(spanContext.getTraceId(), spanContext.getSpanId(),
+                () -> InstafoodTracing.tracer().spanBuilder(name)
+                        .setParent(parent)
+                        .setSpanKind(SpanKind.INTERNAL)
+                        .setStartTimestamp(startMillis, TimeUnit.MILLISECONDS)
+                        .setAllAttributes(attributes.build())
+                        .startSpan());
+        if (error != null) {
+            span.setAttribute("exception.type", error.getClass().getName());
+            span.setStatus(StatusCode.ERROR, String.valueOf(error.getMessage()));
+        }
+        span.end(endMillis, TimeUnit.MILLISECONDS);
+    }
+}
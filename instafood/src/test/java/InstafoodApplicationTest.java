@@ -1,8 +1,10 @@
+import com.instafood.converter.CompactDataConverter;
 import com.instafood.orders.delivery.CourierDeliveryStatus;
 import com.instafood.orders.delivery.CourierDeliveryWorkflow;
 import com.instafood.orders.delivery.CourierDeliveryWorkflowImpl;
 import com.instafood.orders.dispatcher.OrderWorkflow;
 import com.instafood.orders.dispatcher.domain.FoodOrder;
+import com.instafood.orders.dispatcher.domain.LineItem;
 import com.instafood.orders.dispatcher.domain.OrderStatus;
 import com.instafood.orders.dispatcher.domain.Restaurant;
 import com.instafood.orders.megaburger.MegaBurgerFoodOrder;
@@ -30,9 +32,11 @@ import org.junit.jupiter.api.Test;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.List;
+import java.util.Optional;
 import java.util.stream.Collectors;
 
 import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class InstafoodApplicationTest {
@@ -54,7 +58,10 @@ class InstafoodApplicationTest {
                                                 .setHost(InstafoodApplication.getCadenceHostProperty())
                                                 .setPort(7933)
                                                 .build()),
-                                WorkflowClientOptions.newBuilder().setDomain(InstafoodApplication.DOMAIN).build());
+                                WorkflowClientOptions.newBuilder()
+                                                .setDomain(InstafoodApplication.DOMAIN)
+                                                .setDataConverter(CompactDataConverter.getInstance())
+                                                .build());
                 orderWorkflow = workflowClient.newWorkflowStub(OrderWorkflow.class, workflowOptions);
 
                 megaBurgerOrdersApiClient = new MegaBurgerOrdersApiClient();
@@ -92,6 +99,60 @@ class InstafoodApplicationTest {
                                                 EventType.WorkflowExecutionCompleted));
         }
 
+        @Test
+        public void givenAnOrderWithSeveralItemsTheyShouldBePlacedInParallelAndWaitedFor() {
+                FoodOrder order = new FoodOrder(List.of(new LineItem(Restaurant.MEGABURGER, "vegan burger", 2),
+                                new LineItem(Restaurant.MEGABURGER, "fries", 1)), "+54 112343-2324",
+                                "Díaz velez 433, La lucila", true);
+
+                // Client orders food, both items are placed with MegaBurger at once
+                WorkflowExecution workflowExecution = WorkflowClient.start(orderWorkflow::orderFood, order);
+                await().until(() -> OrderStatus.PENDING.equals(orderWorkflow.getStatus()));
+                await().until(() -> megaBurgerOrdersApiClient.getAll().size() >= 2);
+                List<MegaBurgerFoodOrder> orders = megaBurgerOrdersApiClient.getAll();
+                Integer burgerOrderId = orders.get(orders.size() - 2).getId();
+                Integer friesOrderId = orders.get(orders.size() - 1).getId();
+
+                // The order is accepted once both items are, with the ETA of the slowest one
+                megaBurgerOrdersApiClient.updateStatusAndEta(burgerOrderId, "ACCEPTED", 25);
+                megaBurgerOrdersApiClient.updateStatusAndEta(friesOrderId, "ACCEPTED", 10);
+                await().until(() -> OrderStatus.ACCEPTED.equals(orderWorkflow.getStatus()));
+                await().until(() -> orderWorkflow.getEtaInMinutes() == 25);
+
+                // Fries are ready first, the order is ready once the burger is too
+                megaBurgerOrdersApiClient.updateStatus(friesOrderId, "READY");
+                megaBurgerOrdersApiClient.updateStatus(burgerOrderId, "COOKING");
+                await().until(() -> OrderStatus.COOKING.equals(orderWorkflow.getStatus()));
+                megaBurgerOrdersApiClient.updateStatus(burgerOrderId, "READY");
+                await().until(() -> OrderStatus.READY.equals(orderWorkflow.getStatus()));
+
+                megaBurgerOrdersApiClient.updateStatus(friesOrderId, "RESTAURANT_DELIVERED");
+                megaBurgerOrdersApiClient.updateStatus(burgerOrderId, "RESTAURANT_DELIVERED");
+                await().until(() -> OrderStatus.RESTAURANT_DELIVERED.equals(orderWorkflow.getStatus()));
+
+                await().until(
+                                () -> workflowHistoryHasEvent(workflowClient, workflowExecution,
+                                                EventType.WorkflowExecutionCompleted));
+        }
+
+        @Test
+        public void givenACancelledOrderItShouldBeCancelledWithMegaBurger() {
+                FoodOrder order = new FoodOrder(Restaurant.MEGABURGER, "vegan burger", 2, "+54 112343-2324",
+                                "Díaz velez 433, La lucila", false);
+
+                WorkflowExecution workflowExecution = WorkflowClient.start(orderWorkflow::orderFood, order);
+                await().until(() -> OrderStatus.PENDING.equals(orderWorkflow.getStatus()));
+                Integer orderId = getLastOrderId();
+
+                // Client cancels the order, MegaBurger stops being polled and is told to drop it
+                workflowClient.newUntypedWorkflowStub(workflowExecution, Optional.empty()).cancel();
+                await().until(() -> OrderStatus.CANCELLED
+                                .equals(megaBurgerOrdersApiClient.getById(orderId).getStatus()));
+                await().until(
+                                () -> workflowHistoryHasEvent(workflowClient, workflowExecution,
+                                                EventType.WorkflowExecutionCanceled));
+        }
+
         private Integer getLastOrderId() {
                 List<MegaBurgerFoodOrder> orders = megaBurgerOrdersApiClient.getAll();
                 return orders.get(orders.size() - 1).getId();
@@ -157,6 +218,8 @@ class InstafoodApplicationTest {
                 String courierDeliveryWorkflowId = getOpenCourierDeliveryWorkflowsWithParentId(
                                 workflowExecution.getWorkflowId()).get(0)
                                 .getExecution().getWorkflowId();
+                // Courier devices address the delivery by its order
+                assertEquals(workflowExecution.getWorkflowId() + "/courier", courierDeliveryWorkflowId);
                 CourierDeliveryWorkflow courierDeliveryWorkflow = workflowClient.newWorkflowStub(
                                 CourierDeliveryWorkflow.class,
                                 courierDeliveryWorkflowId);
@@ -183,6 +246,33 @@ class InstafoodApplicationTest {
                 assertTrue(courierDeliveryWorkflow.courierSupportsGPSTracking());
         }
 
+        @Test
+        public void givenAnOrderWhenTheCourierRejectsItShouldFailAndCancelItsChildren() {
+                FoodOrder order = new FoodOrder(Restaurant.MEGABURGER, "vegan burger", 2, "+54 112343-2324",
+                                "Díaz velez 433, La lucila", false);
+
+                WorkflowExecution workflowExecution = WorkflowClient.start(orderWorkflow::orderFood, order);
+                await().until(() -> OrderStatus.PENDING.equals(orderWorkflow.getStatus()));
+                Integer orderId = getLastOrderId();
+                megaBurgerOrdersApiClient.updateStatusAndEta(orderId, "ACCEPTED", 15);
+                megaBurgerOrdersApiClient.updateStatus(orderId, "READY");
+
+                String courierDeliveryWorkflowId = workflowExecution.getWorkflowId() + "/courier";
+                await().until(() -> !getOpenCourierDeliveryWorkflowsWithParentId(workflowExecution.getWorkflowId())
+                                .isEmpty());
+                workflowClient.newWorkflowStub(CourierDeliveryWorkflow.class, courierDeliveryWorkflowId)
+                                .updateStatus(CourierDeliveryStatus.REJECTED);
+
+                // The order fails right away, and the item it placed stops being prepared
+                await().until(() -> workflowHistoryHasEvent(workflowClient, workflowExecution,
+                                EventType.WorkflowExecutionFailed));
+                await().until(() -> OrderStatus.CANCELLED
+                                .equals(megaBurgerOrdersApiClient.getById(orderId).getStatus()));
+                await().until(() -> workflowHistoryHasEvent(workflowClient,
+                                new WorkflowExecution().setWorkflowId(workflowExecution.getWorkflowId() + "/item-0"),
+                                EventType.WorkflowExecutionCanceled));
+        }
+
         @Test
         public void givenCourierWorkflowWhenGpsNotSupportedThenHistoryReplaysCorrectly() throws Exception {
                 // We have stored the history for a workflow that was executed before GPS
@@ -0,0 +1,81 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Measures the time from launching the worker to its pollers asking Cadence for tasks, in a fresh JVM each time, with
+ * and without the class-data sharing archive written by {@code ./gradlew cdsArchive}. Pollers start whether Cadence
+ * is up or not, so it doesn't need to be running. Run it with {@code ./gradlew startupBenchmark}.
+ */
+public class StartupBenchmark {
+
+    private static final int RUNS = 5;
+    private static final String POLLING = "Worker polling";
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String classpath = System.getProperty("startup.classpath");
+        File archive = new File(System.getProperty("startup.cdsArchive", "build/cds/instafood.jsa"));
+
+        // Warms up the page cache, so the first measured run isn't the only one reading jars from disk
+        timeToFirstPoll(classpath, Collections.emptyList());
+        report("default", classpath, Collections.emptyList());
+        if (archive.isFile()) {
+            report("cds", classpath, Collections.singletonList("-XX:SharedArchiveFile=" + archive.getAbsolutePath()));
+        } else {
+            System.out.printf("No class-data sharing archive at %s, run ./gradlew cdsArchive first%n", archive);
+        }
+    }
+
+    private static void report(String variant, String classpath, List<String> jvmArgs)
+            throws IOException, InterruptedException {
+        long[] millis = new long[RUNS];
+        for (int run = 0; run < RUNS; run++) {
+            millis[run] = timeToFirstPoll(classpath, jvmArgs);
+        }
+        Arrays.sort(millis);
+        System.out.printf("%s: time to first poll %,d ms median, %,d ms min, %,d ms max over %d runs%n", variant,
+                millis[RUNS / 2], millis[0], millis[RUNS - 1], RUNS);
+    }
+
+    private static long timeToFirstPoll(String classpath, List<String> jvmArgs)
+            throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        command.addAll(jvmArgs);
+        command.add("-DcadenceHost=" + System.getProperty("cadenceHost", "localhost"));
+        // Off the default ports, in case a worker is running on this machine
+        for (String port : new String[]{"metricsPort", "courierApiPort", "orderApiPort"}) {
+            command.add("-D" + port + "=" + freePort());
+        }
+        command.addAll(Arrays.asList("-cp", classpath, "InstafoodApplication"));
+
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        try (BufferedReader output = new BufferedReader(
+                new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = output.readLine()) != null) {
+                if (line.contains(POLLING)) {
+                    return (System.nanoTime() - start) / 1_000_000;
+                }
+            }
+            throw new IllegalStateException("The worker exited before polling with " + process.waitFor());
+        } finally {
+            process.destroy();
+            process.waitFor();
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
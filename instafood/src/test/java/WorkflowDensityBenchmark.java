@@ -0,0 +1,146 @@
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.instafood.converter.CompactDataConverter;
+import com.instafood.orders.delivery.CourierDeliveryWorkflowImpl;
+import com.instafood.orders.dispatcher.OrderWorkflow;
+import com.instafood.orders.dispatcher.OrderWorkflowImpl;
+import com.instafood.orders.dispatcher.domain.FoodOrder;
+import com.instafood.orders.dispatcher.domain.Restaurant;
+import com.instafood.orders.megaburger.MegaBurgerFoodOrder;
+import com.instafood.orders.megaburger.MegaBurgerOrderWorkflowImpl;
+import com.instafood.orders.megaburger.activities.MegaBurgerOrderActivities;
+import com.uber.cadence.client.WorkflowClient;
+import com.uber.cadence.client.WorkflowClientOptions;
+import com.uber.cadence.client.WorkflowOptions;
+import com.uber.cadence.testing.TestEnvironmentOptions;
+import com.uber.cadence.testing.TestWorkflowEnvironment;
+import com.uber.cadence.worker.Worker;
+import com.uber.cadence.worker.WorkerFactoryOptions;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Opens many MegaBurger orders at once against the in-memory Cadence test environment, each left pending at the
+ * restaurant so that its order and MegaBurger workflows stay open and cached, and reports the heap and threads
+ * every open workflow takes. Run it with {@code ./gradlew workflowDensityBenchmark -Porders=20000}; every order
+ * holds two threads, so tens of thousands of orders may need a higher {@code vm.max_map_count} and process limit.
+ * <p>
+ * The heap figure includes the histories the in-memory service keeps, so the worker's own share is lower.
+ */
+public class WorkflowDensityBenchmark {
+
+    private static final Duration OPEN_TIMEOUT = Duration.ofMinutes(10);
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int orders = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int workflows = 2 * orders;
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+        TestWorkflowEnvironment environment = TestWorkflowEnvironment.newInstance(TestEnvironmentOptions.newBuilder()
+                .setWorkflowClientOptions(WorkflowClientOptions.newBuilder()
+                        .setDomain(InstafoodApplication.DOMAIN)
+                        .setDataConverter(CompactDataConverter.getInstance())
+                        .build())
+                // Room for every open workflow, as InstafoodApplication's workflowThreads and workflowCacheSize
+                .setWorkerFactoryOptions(WorkerFactoryOptions.newBuilder()
+                        .setMaxWorkflowThreadCount(workflows + 100)
+                        .setCacheMaximumSize(workflows)
+                        .build())
+                .build());
+        PendingMegaBurger megaBurger = new PendingMegaBurger();
+        Worker worker = environment.newWorker(InstafoodApplication.TASK_LIST);
+        worker.registerWorkflowImplementationTypes(OrderWorkflowImpl.class, MegaBurgerOrderWorkflowImpl.class,
+                CourierDeliveryWorkflowImpl.class);
+        worker.registerActivitiesImplementations(megaBurger);
+        environment.start();
+
+        try {
+            long heapBefore = usedHeapAfterGc(memory);
+            int threadsBefore = threads.getThreadCount();
+
+            long start = System.nanoTime();
+            WorkflowClient workflowClient = environment.getWorkflowClient();
+            for (int i = 0; i < orders; i++) {
+                OrderWorkflow orderWorkflow = workflowClient.newWorkflowStub(OrderWorkflow.class,
+                        new WorkflowOptions.Builder()
+                                .setTaskList(InstafoodApplication.TASK_LIST)
+                                .setExecutionStartToCloseTimeout(Duration.ofHours(1))
+                                .build());
+                WorkflowClient.start(orderWorkflow::orderFood, new FoodOrder(Restaurant.MEGABURGER,
+                        "vegan burger", 2, "+54 112343-2324", "Díaz velez 433, La lucila", false));
+            }
+            // Open once MegaBurger has been polled for every order, i.e. both its workflows are waiting
+            long deadline = start + OPEN_TIMEOUT.toNanos();
+            while (megaBurger.polledOrders.size() < orders) {
+                if (System.nanoTime() > deadline) {
+                    throw new IllegalStateException(String.format("Only %,d of %,d orders opened within %s",
+                            megaBurger.polledOrders.size(), orders, OPEN_TIMEOUT));
+                }
+                Thread.sleep(100);
+            }
+            long openMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            long heap = usedHeapAfterGc(memory) - heapBefore;
+            int threadCount = threads.getThreadCount() - threadsBefore;
+            System.out.printf("%,d orders, %,d open workflows opened in %,d ms%n", orders, workflows, openMillis);
+            System.out.printf("Heap: %,d bytes per open workflow (%,d MB in all)%n", heap / workflows,
+                    heap / (1024 * 1024));
+            System.out.printf("Threads: %.2f per open workflow (%,d in all), stacks of %s each%n",
+                    threadCount / (double) workflows, threadCount, stackSize());
+        } finally {
+            environment.close();
+        }
+    }
+
+    private static long usedHeapAfterGc(MemoryMXBean memory) throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(200);
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    private static String stackSize() {
+        return ManagementFactory.getRuntimeMXBean().getInputArguments().stream()
+                .filter(argument -> argument.startsWith("-Xss"))
+                .reduce((first, last) -> last)
+                .map(argument -> argument.substring("-Xss".length()))
+                .orElse("the JVM default");
+    }
+
+    /**
+     * A MegaBurger that takes every order and never gets to accepting it.
+     */
+    private static final class PendingMegaBurger implements MegaBurgerOrderActivities {
+        private final AtomicInteger orderIds = new AtomicInteger();
+        private final Set<Integer> polledOrders = ConcurrentHashMap.newKeySet();
+        private final MegaBurgerFoodOrder pendingOrder;
+
+        private PendingMegaBurger() throws IOException {
+            pendingOrder = new ObjectMapper().readValue("{\"status\": \"PENDING\"}", MegaBurgerFoodOrder.class);
+        }
+
+        @Override
+        public Integer createOrder(MegaBurgerFoodOrder order) {
+            return orderIds.incrementAndGet();
+        }
+
+        @Override
+        public MegaBurgerFoodOrder getOrderById(Integer orderId) {
+            polledOrders.add(orderId);
+            return pendingOrder;
+        }
+
+        @Override
+        public void cancelOrder(Integer orderId) {
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.instafood.converter;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.instafood.orders.delivery.CourierDeliveryJob;
+import com.instafood.orders.dispatcher.domain.FoodOrder;
+import com.instafood.orders.dispatcher.domain.LineItem;
+import com.instafood.orders.dispatcher.domain.OrderStatus;
+import com.instafood.orders.dispatcher.domain.Restaurant;
+import com.instafood.orders.megaburger.MegaBurgerFoodOrder;
+import com.uber.cadence.converter.DataConverter;
+import com.uber.cadence.converter.JsonDataConverter;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CompactDataConverterTest {
+
+    private static final FoodOrder ORDER = new FoodOrder(Restaurant.MEGABURGER, "vegan burger", 2,
+            "+54 112343-2324", "Díaz velez 433, La lucila", false);
+
+    private final DataConverter converter = CompactDataConverter.getInstance();
+
+    @Test
+    void givenAnOrderItShouldRoundTripInLessSpaceThanJson() {
+        byte[] compact = converter.toData(ORDER);
+        byte[] json = JsonDataConverter.getInstance().toData(ORDER);
+
+        assertFoodOrderEquals(ORDER, converter.fromData(compact, FoodOrder.class, FoodOrder.class));
+        assertTrue(compact.length < json.length * 0.7,
+                "compact: " + compact.length + " bytes, json: " + json.length + " bytes");
+    }
+
+    @Test
+    void givenPayloadsWrittenByTheJsonConverterTheyShouldStillDecode() {
+        DataConverter json = JsonDataConverter.getInstance();
+
+        assertFoodOrderEquals(ORDER, converter.fromData(json.toData(ORDER), FoodOrder.class, FoodOrder.class));
+        assertEquals(OrderStatus.READY,
+                converter.fromData(json.toData(OrderStatus.READY), OrderStatus.class, OrderStatus.class));
+        Object[] arguments = converter.fromDataArray(json.toData(jobFor(ORDER), List.of("courier-1")),
+                CourierDeliveryJob.class, listOfStrings());
+        assertEquals("Díaz velez 433, La lucila", ((CourierDeliveryJob) arguments[0]).getAddress());
+        assertEquals(List.of("courier-1"), arguments[1]);
+    }
+
+    @Test
+    void givenSeveralArgumentsTheyShouldRoundTrip() {
+        MegaBurgerFoodOrder megaBurgerOrder = new MegaBurgerFoodOrder();
+        megaBurgerOrder.setId(7);
+        megaBurgerOrder.setMeal("hamburger");
+        megaBurgerOrder.setQuantity(1);
+
+        Object[] arguments = converter.fromDataArray(
+                converter.toData(megaBurgerOrder, jobFor(ORDER), List.of("courier-1", "courier-2"), 15),
+                MegaBurgerFoodOrder.class, CourierDeliveryJob.class, listOfStrings(), int.class);
+
+        MegaBurgerFoodOrder decoded = (MegaBurgerFoodOrder) arguments[0];
+        assertEquals(7, decoded.getId());
+        assertEquals("hamburger", decoded.getMeal());
+        assertNull(decoded.getEtaMinutes());
+        assertEquals(Restaurant.MEGABURGER, ((CourierDeliveryJob) arguments[1]).getRestaurant());
+        assertEquals(List.of("courier-1", "courier-2"), arguments[2]);
+        assertEquals(15, arguments[3]);
+    }
+
+    @Test
+    void givenAnOrderWithSeveralItemsTheyShouldRoundTrip() {
+        FoodOrder order = new FoodOrder(List.of(new LineItem(Restaurant.MEGABURGER, "vegan burger", 2),
+                new LineItem(Restaurant.MEGABURGER, "fries", 1)),
+                "+54 112343-2324", "Díaz velez 433, La lucila", false);
+
+        FoodOrder decoded = converter.fromData(converter.toData(order), FoodOrder.class, FoodOrder.class);
+        assertFoodOrderEquals(order, decoded);
+        assertEquals(List.of("vegan burger", "fries"), decoded.getItems().stream()
+                .map(LineItem::getMeal)
+                .collect(Collectors.toList()));
+        assertEquals(List.of(2, 1), decoded.getItems().stream()
+                .map(LineItem::getQuantity)
+                .collect(Collectors.toList()));
+        // Orders placed before line items are a single item
+        assertEquals(List.of("vegan burger"), converter.fromData(converter.toData(ORDER), FoodOrder.class,
+                FoodOrder.class).getItems().stream().map(LineItem::getMeal).collect(Collectors.toList()));
+    }
+
+    @Test
+    void givenALargePayloadItShouldBeCompressed() {
+        List<String> couriers = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            couriers.add("courier-" + i);
+        }
+        byte[] data = converter.toData(couriers);
+
+        assertTrue(data.length < couriers.size() * 4, "compressed to " + data.length + " bytes");
+        assertEquals(couriers, converter.fromData(data, List.class, listOfStrings()));
+    }
+
+    @Test
+    void givenAPayloadWrittenBeforeAFieldWasAppendedItShouldDecode() {
+        // A FoodOrder with only restaurant and meal, as if the other fields were added later
+        byte[] data = ("\0[0,\"burger\"]").getBytes(StandardCharsets.UTF_8);
+
+        FoodOrder order = converter.fromData(data, FoodOrder.class, FoodOrder.class);
+        assertEquals(Restaurant.MEGABURGER, order.getRestaurant());
+        assertEquals("burger", order.getMeal());
+        assertNull(order.getAddress());
+    }
+
+    @Test
+    void givenAnExceptionItShouldKeepItsTypeAndMessage() {
+        byte[] data = converter.toData(new IllegalStateException("Order was rejected by restaurant"));
+
+        IllegalStateException decoded = converter.fromData(data, IllegalStateException.class,
+                IllegalStateException.class);
+        assertEquals("Order was rejected by restaurant", decoded.getMessage());
+    }
+
+    private static CourierDeliveryJob jobFor(FoodOrder order) {
+        return new CourierDeliveryJob(order.getRestaurant(), order.getAddress(), order.getTelephone());
+    }
+
+    private static Type listOfStrings() {
+        return new TypeReference<List<String>>() {
+        }.getType();
+    }
+
+    private static void assertFoodOrderEquals(FoodOrder expected, FoodOrder actual) {
+        assertEquals(Arrays.asList(expected.getRestaurant(), expected.getMeal(), expected.getQuantity(),
+                        expected.getTelephone(), expected.getAddress(), expected.isPickup()),
+                Arrays.asList(actual.getRestaurant(), actual.getMeal(), actual.getQuantity(),
+                        actual.getTelephone(), actual.getAddress(), actual.isPickup()));
+    }
+}
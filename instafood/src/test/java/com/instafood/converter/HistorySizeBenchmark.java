@@ -0,0 +1,108 @@
+package com.instafood.converter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.instafood.orders.delivery.CourierDeliveryJob;
+import com.instafood.orders.delivery.CourierDeliveryStatus;
+import com.instafood.orders.dispatcher.domain.FoodOrder;
+import com.instafood.orders.dispatcher.domain.OrderStatus;
+import com.instafood.orders.dispatcher.domain.Restaurant;
+import com.instafood.orders.megaburger.MegaBurgerFoodOrder;
+import com.uber.cadence.converter.DataConverter;
+import com.uber.cadence.converter.JsonDataConverter;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the payload bytes a delivery order puts into history (across the order, MegaBurger and courier
+ * workflows) with the JSON and the compact data converters, and how long encoding and decoding them takes. Run it
+ * with {@code ./gradlew historySizeBenchmark}.
+ */
+public class HistorySizeBenchmark {
+
+    // A 20 minute preparation polled every 10 seconds
+    private static final int STATUS_POLLS = 120;
+    private static final int ITERATIONS = 20_000;
+
+    public static void main(String[] args) throws IOException {
+        List<Object[]> payloads = orderPayloads();
+        for (DataConverter converter : new DataConverter[]{JsonDataConverter.getInstance(),
+                CompactDataConverter.getInstance()}) {
+            long bytes = 0;
+            for (Object[] payload : payloads) {
+                bytes += converter.toData(payload).length;
+            }
+
+            // Warm up, then measure a full encode/decode of every payload
+            roundTrip(converter, payloads, ITERATIONS / 4);
+            long start = System.nanoTime();
+            roundTrip(converter, payloads, ITERATIONS);
+            long elapsed = System.nanoTime() - start;
+
+            System.out.printf("%s: %,d payloads, %,d history payload bytes per order, %.1f us per order%n",
+                    converter.getClass().getSimpleName(), payloads.size(), bytes,
+                    elapsed / (double) TimeUnit.MICROSECONDS.toNanos(1) / ITERATIONS);
+        }
+    }
+
+    private static void roundTrip(DataConverter converter, List<Object[]> payloads, int iterations) {
+        for (int i = 0; i < iterations; i++) {
+            for (Object[] payload : payloads) {
+                byte[] data = converter.toData(payload);
+                Type[] types = new Type[payload.length];
+                for (int j = 0; j < payload.length; j++) {
+                    types[j] = payload[j].getClass();
+                }
+                converter.fromDataArray(data, types);
+            }
+        }
+    }
+
+    private static List<Object[]> orderPayloads() throws IOException {
+        FoodOrder order = new FoodOrder(Restaurant.MEGABURGER, "vegan burger", 2, "+54 112343-2324",
+                "Díaz velez 433, La lucila", false);
+        List<Object[]> payloads = new ArrayList<>();
+        // Order and MegaBurger workflow inputs
+        payloads.add(new Object[]{order});
+        payloads.add(new Object[]{order});
+
+        MegaBurgerFoodOrder megaBurgerOrder = new MegaBurgerFoodOrder();
+        megaBurgerOrder.setMeal(order.getMeal());
+        megaBurgerOrder.setQuantity(order.getQuantity());
+        payloads.add(new Object[]{megaBurgerOrder});
+        megaBurgerOrder.setId(4_213);
+        payloads.add(new Object[]{megaBurgerOrder.getId()});
+
+        // Every poll schedules getOrderById and records the order it returns
+        MegaBurgerFoodOrder polledOrder = new ObjectMapper().readValue("{\"id\": 4213, \"meal\": "
+                        + "\"vegan burger\", \"quantity\": 2, \"status\": \"COOKING\", \"eta_minutes\": 15}",
+                MegaBurgerFoodOrder.class);
+        for (int i = 0; i < STATUS_POLLS; i++) {
+            payloads.add(new Object[]{polledOrder.getId()});
+            payloads.add(new Object[]{polledOrder});
+        }
+
+        for (OrderStatus status : new OrderStatus[]{OrderStatus.PENDING, OrderStatus.ACCEPTED, OrderStatus.COOKING,
+                OrderStatus.READY, OrderStatus.COURIER_ACCEPTED, OrderStatus.PICKED_UP,
+                OrderStatus.COURIER_DELIVERED}) {
+            payloads.add(new Object[]{status});
+        }
+        payloads.add(new Object[]{15});
+
+        // Courier delivery workflow
+        CourierDeliveryJob job = new CourierDeliveryJob(order.getRestaurant(), order.getAddress(),
+                order.getTelephone());
+        payloads.add(new Object[]{job});
+        payloads.add(new Object[]{job, new ArrayList<>(Collections.singletonList("courier-12"))});
+        payloads.add(new Object[]{"courier-1045"});
+        for (CourierDeliveryStatus status : new CourierDeliveryStatus[]{CourierDeliveryStatus.ACCEPTED,
+                CourierDeliveryStatus.PICKED_UP, CourierDeliveryStatus.DELIVERED}) {
+            payloads.add(new Object[]{status});
+        }
+        return payloads;
+    }
+}
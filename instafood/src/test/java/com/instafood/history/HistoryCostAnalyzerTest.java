@@ -0,0 +1,154 @@
+package com.instafood.history;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HistoryCostAnalyzerTest {
+
+    private static final String ORDER_WORKFLOW_ID = "8e3ae8a9-72dc-4d18-afca-866ef375cfd4";
+
+    private final HistoryCostAnalyzer analyzer = new HistoryCostAnalyzer(10);
+
+    @Test
+    void givenAnExportedHistoryItsEventsAndPayloadsShouldBeCounted() throws IOException {
+        try (InputStream in = getClass().getClassLoader().getResourceAsStream("history-gps-not-supported.json")) {
+            analyzer.analyze("history-gps-not-supported.json", in);
+        }
+
+        // Counted against the order that started the delivery
+        assertEquals(Collections.singletonMap(ORDER_WORKFLOW_ID, 34L), analyzer.getEventsPerOrder());
+        assertEquals(7L, analyzer.getEventsByType().get("DecisionTaskCompleted"));
+        assertEquals(3L, analyzer.getEventsByType().get("WorkflowExecutionSignaled"));
+
+        Map<String, Long> payloadBytes = analyzer.getPayloadBytesByField();
+        assertEquals(96L, payloadBytes.get("workflowExecutionStarted.input"));
+        assertEquals(48L, payloadBytes.get("signalExternalWorkflowExecutionInitiated.input"));
+        assertEquals(58L, payloadBytes.get("markerRecorded.header"));
+        assertEquals(27L, payloadBytes.get("upsertWorkflowSearchAttributes.searchAttributes"));
+
+        HistoryCostAnalyzer.History history = analyzer.getLargestHistories().get(0);
+        assertEquals("history-gps-not-supported", history.getId());
+        assertEquals("CourierDeliveryWorkflow", history.getWorkflowType());
+        assertEquals(269L, history.getPayloadBytes());
+    }
+
+    @Test
+    void givenMegaBurgerOrdersTheirTimersAndActivitiesShouldBeCountedPerPollingStage() throws IOException {
+        String export = "[" + megaBurgerHistory("order-1", 3) + "," + megaBurgerHistory("order-2", 1) + "]";
+        analyzer.analyze("megaburger.json", new ByteArrayInputStream(export.getBytes(StandardCharsets.UTF_8)));
+
+        Map<String, HistoryCostAnalyzer.StageCost> stages = analyzer.getStageCosts("MegaBurgerOrderWorkflow");
+        assertEquals(Arrays.asList("CREATED", "PENDING", "ACCEPTED"), new ArrayList<>(stages.keySet()));
+        assertEquals(2, stages.get("CREATED").getActivities());
+        assertEquals(0, stages.get("CREATED").getTimers());
+        // A first poll, then a timer and a poll each time the order was still pending
+        assertEquals(2 + 4, stages.get("PENDING").getActivities());
+        assertEquals(4, stages.get("PENDING").getTimers());
+        assertEquals(2, stages.get("ACCEPTED").getActivities());
+
+        assertEquals(2, analyzer.getEventsPerOrder().size());
+        List<HistoryCostAnalyzer.History> largest = analyzer.getLargestHistories();
+        assertEquals("megaburger#0", largest.get(0).getId());
+        assertEquals("order-1", largest.get(0).getOrderId());
+        assertTrue(largest.get(0).getEvents() > largest.get(1).getEvents());
+    }
+
+    @Test
+    void givenManyHistoriesOnlyTheLargestShouldBeKept() throws IOException {
+        HistoryCostAnalyzer analyzer = new HistoryCostAnalyzer(2);
+        StringBuilder export = new StringBuilder("[");
+        for (int polls = 0; polls < 5; polls++) {
+            export.append(polls > 0 ? "," : "").append(megaBurgerHistory("order-" + polls, polls));
+        }
+        analyzer.analyze("megaburger.json", new ByteArrayInputStream(
+                export.append("]").toString().getBytes(StandardCharsets.UTF_8)));
+
+        List<HistoryCostAnalyzer.History> largest = analyzer.getLargestHistories();
+        assertEquals(2, largest.size());
+        assertEquals("order-4", largest.get(0).getOrderId());
+        assertEquals("order-3", largest.get(1).getOrderId());
+
+        ByteArrayOutputStream report = new ByteArrayOutputStream();
+        analyzer.report(new PrintStream(report));
+        assertTrue(report.toString().startsWith("5 histories"));
+    }
+
+    @Test
+    void givenSomethingElseThanAnExportItShouldFail() {
+        assertThrows(IOException.class, () -> analyzer.analyze("order.json",
+                new ByteArrayInputStream("{\"eventId\": 1}".getBytes(StandardCharsets.UTF_8))));
+    }
+
+    @Test
+    void givenAnOrderAndItsChildrenInSeparateFilesTheyShouldBeCountedAsOneOrder() throws IOException {
+        String order = "[" + event("WorkflowExecutionStarted",
+                "\"workflowType\": {\"name\": \"OrderWorkflow::orderFood\"}") + ","
+                + event("StartChildWorkflowExecutionInitiated", "\"workflowId\": \"order-1/item-0\"") + "]";
+        analyzer.analyze("exported-order.json", new ByteArrayInputStream(order.getBytes(StandardCharsets.UTF_8)));
+        analyzer.analyze("item.json", new ByteArrayInputStream(
+                megaBurgerHistory("order-1", 1).getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(Collections.singletonMap("order-1", 2L + 8L), analyzer.getEventsPerOrder());
+    }
+
+    @Test
+    void givenAnOrderExportedWithItsWorkflowIdItShouldBeCountedUnderIt() throws IOException {
+        String order = "{\"workflowId\": \"order-2\", \"events\": [" + event("WorkflowExecutionStarted",
+                "\"workflowType\": {\"name\": \"OrderWorkflow::orderFood\"}") + "]}";
+        analyzer.analyze("exported-order.json", new ByteArrayInputStream(order.getBytes(StandardCharsets.UTF_8)));
+        analyzer.analyze("item.json", new ByteArrayInputStream(
+                megaBurgerHistory("order-2", 0).getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(Collections.singletonMap("order-2", 1L + 6L), analyzer.getEventsPerOrder());
+        assertEquals("exported-order", analyzer.getLargestHistories().get(1).getId());
+    }
+
+    /**
+     * History of a MegaBurger order accepted after being polled {@code pendingPolls} more times than the first.
+     */
+    private static String megaBurgerHistory(String orderWorkflowId, int pendingPolls) {
+        List<String> events = new ArrayList<>();
+        events.add(event("WorkflowExecutionStarted", "\"workflowType\": {\"name\": "
+                + "\"MegaBurgerOrderWorkflow::orderFood\"}, \"parentWorkflowExecution\": {\"workflowId\": \""
+                + orderWorkflowId + "\"}"));
+        events.add(event("ActivityTaskScheduled", "\"activityType\": {\"name\": \"createOrder\"}"));
+        events.add(statusSignal("PENDING"));
+        events.add(event("ActivityTaskScheduled", "\"activityType\": {\"name\": \"getOrderById\"}"));
+        for (int poll = 0; poll < pendingPolls; poll++) {
+            events.add(event("TimerStarted", "\"timerId\": \"" + poll + "\""));
+            events.add(event("ActivityTaskScheduled", "\"activityType\": {\"name\": \"getOrderById\"}"));
+        }
+        events.add(statusSignal("ACCEPTED"));
+        events.add(event("ActivityTaskScheduled", "\"activityType\": {\"name\": \"getOrderById\"}"));
+        return "[" + String.join(",", events) + "]";
+    }
+
+    private static String statusSignal(String status) {
+        String input = Base64.getEncoder().encodeToString(
+                ("[\"item-1\",\"" + status + "\"]").getBytes(StandardCharsets.UTF_8));
+        return event("SignalExternalWorkflowExecutionInitiated",
+                "\"signalName\": \"OrderWorkflow::updateItemStatus\", \"input\": \"" + input + "\"");
+    }
+
+    private static String event(String eventType, String attributes) {
+        String attributesName = Character.toLowerCase(eventType.charAt(0)) + eventType.substring(1)
+                + "EventAttributes";
+        return "{\"eventType\": \"" + eventType + "\", \"" + attributesName + "\": {" + attributes + "}}";
+    }
+}
@@ -0,0 +1,83 @@
+package com.instafood.orders.delivery.dispatch;
+
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures nearest-courier dispatch against a fleet of 100k couriers spread over a city and moving while the
+ * queries run. Run it with {@code ./gradlew courierDispatchBenchmark}.
+ */
+public class CourierDispatchBenchmark {
+
+    private static final int COURIERS = 100_000;
+    private static final int QUERIES = 200_000;
+    private static final double LATITUDE = -34.6;
+    private static final double LONGITUDE = -58.45;
+    // Roughly 40km x 40km
+    private static final double AREA_DEGREES = 0.4;
+
+    public static void main(String[] args) throws InterruptedException {
+        Random random = new Random(7);
+        CourierDispatcher dispatcher = new CourierDispatcher();
+        double[][] positions = new double[COURIERS][];
+        for (int i = 0; i < COURIERS; i++) {
+            positions[i] = new double[]{randomLatitude(random), randomLongitude(random)};
+            dispatcher.updatePosition(courierId(i), positions[i][0], positions[i][1]);
+        }
+
+        // Couriers keep reporting positions from a separate thread, roughly 30m per step
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong moves = new AtomicLong();
+        Thread mover = new Thread(() -> {
+            Random moverRandom = new Random(11);
+            while (running.get()) {
+                int i = moverRandom.nextInt(COURIERS);
+                positions[i][0] += (moverRandom.nextDouble() - 0.5) * 0.0006;
+                positions[i][1] += (moverRandom.nextDouble() - 0.5) * 0.0006;
+                dispatcher.updatePosition(courierId(i), positions[i][0], positions[i][1]);
+                moves.incrementAndGet();
+            }
+        }, "courier-mover");
+        mover.start();
+
+        // Warm up, then measure assignments (nearest query + reservation) followed by a release
+        runAssignments(dispatcher, random, QUERIES / 4);
+        long movesBefore = moves.get();
+        long start = System.nanoTime();
+        runAssignments(dispatcher, random, QUERIES);
+        long elapsed = System.nanoTime() - start;
+        long movesDuringRun = moves.get() - movesBefore;
+        running.set(false);
+        mover.join();
+
+        System.out.printf("couriers: %,d, assignments: %,d%n", COURIERS, QUERIES);
+        System.out.printf("assign + release: %.2f us/op (%,.0f ops/s)%n",
+                elapsed / 1000.0 / QUERIES, QUERIES / (elapsed / (double) TimeUnit.SECONDS.toNanos(1)));
+        System.out.printf("concurrent position updates: %,.0f updates/s%n",
+                movesDuringRun / (elapsed / (double) TimeUnit.SECONDS.toNanos(1)));
+    }
+
+    private static void runAssignments(CourierDispatcher dispatcher, Random random, int count) {
+        for (int i = 0; i < count; i++) {
+            String deliveryId = "delivery-" + i;
+            dispatcher.assign(deliveryId, randomLatitude(random), randomLongitude(random), Collections.emptySet())
+                    .orElseThrow();
+            dispatcher.release(deliveryId);
+        }
+    }
+
+    private static String courierId(int i) {
+        return "courier-" + i;
+    }
+
+    private static double randomLatitude(Random random) {
+        return LATITUDE + (random.nextDouble() - 0.5) * AREA_DEGREES;
+    }
+
+    private static double randomLongitude(Random random) {
+        return LONGITUDE + (random.nextDouble() - 0.5) * AREA_DEGREES;
+    }
+}
@@ -0,0 +1,119 @@
+package com.instafood.orders.delivery.dispatch;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class CourierDispatcherTest {
+
+    private static final double LATITUDE = -34.6;
+    private static final double LONGITUDE = -58.45;
+
+    @Test
+    void givenMovingCouriersNearestShouldMatchABruteForceSearch() {
+        Random random = new Random(42);
+        CourierLocationIndex index = new CourierLocationIndex();
+        double[][] positions = new double[5_000][];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = randomPosition(random);
+            index.update("courier-" + i, positions[i][0], positions[i][1]);
+        }
+        // Move half of them around to exercise cell changes
+        for (int i = 0; i < positions.length; i += 2) {
+            positions[i] = randomPosition(random);
+            index.update("courier-" + i, positions[i][0], positions[i][1]);
+        }
+
+        for (int query = 0; query < 1_000; query++) {
+            double[] target = randomPosition(random);
+            assertEquals(bruteForceNearest(positions, target), index.nearest(target[0], target[1], id -> true));
+        }
+    }
+
+    @Test
+    void givenARejectionTheDeliveryShouldBeReassignedToTheNextNearestCourier() {
+        CourierDispatcher dispatcher = new CourierDispatcher();
+        dispatcher.updatePosition("near", LATITUDE + 0.001, LONGITUDE);
+        dispatcher.updatePosition("far", LATITUDE + 0.05, LONGITUDE);
+
+        assertEquals(Optional.of("near"), dispatcher.assign("delivery-1", LATITUDE, LONGITUDE, List.of()));
+        // Retrying the assignment keeps the same courier
+        assertEquals(Optional.of("near"), dispatcher.assign("delivery-1", LATITUDE, LONGITUDE, List.of()));
+        // A busy courier can't be assigned to another delivery
+        assertEquals(Optional.of("far"), dispatcher.assign("delivery-2", LATITUDE, LONGITUDE, List.of()));
+        dispatcher.release("delivery-2");
+
+        assertEquals(Optional.of("far"), dispatcher.assign("delivery-1", LATITUDE, LONGITUDE, List.of("near")));
+        assertEquals(Optional.of("near"), dispatcher.assign("delivery-3", LATITUDE, LONGITUDE, List.of()));
+        assertFalse(dispatcher.assign("delivery-4", LATITUDE, LONGITUDE, Collections.emptyList()).isPresent());
+    }
+
+    @Test
+    void givenPingsRacingWithAssignmentsAssignedCouriersShouldNeverBeAvailable() throws InterruptedException {
+        CourierLocationIndex index = new CourierLocationIndex();
+        CourierDispatcher dispatcher = new CourierDispatcher(index);
+        int couriers = 50;
+        for (int i = 0; i < couriers; i++) {
+            dispatcher.updatePosition("courier-" + i, LATITUDE, LONGITUDE);
+        }
+        AtomicBoolean running = new AtomicBoolean(true);
+        CountDownLatch pingerStopped = new CountDownLatch(1);
+        Thread pinger = new Thread(() -> {
+            Random random = new Random(7);
+            while (running.get()) {
+                // Close enough to the pickup for every courier to stay within reach
+                dispatcher.updatePosition("courier-" + random.nextInt(couriers),
+                        LATITUDE + random.nextDouble() * 0.01, LONGITUDE + random.nextDouble() * 0.01);
+            }
+            pingerStopped.countDown();
+        });
+        pinger.start();
+
+        try {
+            for (int round = 0; round < 200; round++) {
+                for (int i = 0; i < couriers; i++) {
+                    dispatcher.assign("delivery-" + i, LATITUDE, LONGITUDE, List.of());
+                }
+                for (int i = 0; i < couriers; i++) {
+                    String courierId = dispatcher.getAssignedCourier("delivery-" + i).orElseThrow();
+                    assertFalse(index.contains(courierId), courierId + " is assigned and available");
+                }
+                for (int i = 0; i < couriers; i++) {
+                    dispatcher.release("delivery-" + i);
+                }
+            }
+        } finally {
+            running.set(false);
+            pingerStopped.await();
+        }
+        assertEquals(couriers, index.size());
+    }
+
+    private static double[] randomPosition(Random random) {
+        return new double[]{LATITUDE + (random.nextDouble() - 0.5) * 0.3, LONGITUDE + (random.nextDouble() - 0.5) * 0.3};
+    }
+
+    private static String bruteForceNearest(double[][] positions, double[] target) {
+        double metersPerDegreeLon = Math.cos(Math.toRadians(target[0]));
+        String nearest = null;
+        double best = Double.MAX_VALUE;
+        for (int i = 0; i < positions.length; i++) {
+            double dy = positions[i][0] - target[0];
+            double dx = (positions[i][1] - target[1]) * metersPerDegreeLon;
+            double distance = dx * dx + dy * dy;
+            if (distance < best) {
+                best = distance;
+                nearest = "courier-" + i;
+            }
+        }
+        return nearest;
+    }
+}
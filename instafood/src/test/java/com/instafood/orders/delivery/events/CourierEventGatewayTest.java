@@ -0,0 +1,215 @@
+package com.instafood.orders.delivery.events;
+
+import com.instafood.orders.delivery.CourierDeliveryStatus;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.instafood.orders.delivery.CourierDeliveryStatus.ACCEPTED;
+import static com.instafood.orders.delivery.CourierDeliveryStatus.CREATED;
+import static com.instafood.orders.delivery.CourierDeliveryStatus.DELIVERED;
+import static com.instafood.orders.delivery.CourierDeliveryStatus.PICKED_UP;
+import static com.instafood.orders.delivery.CourierDeliveryStatus.REJECTED;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CourierEventGatewayTest {
+
+    private final Map<String, List<CourierDeliveryStatus>> signals = new ConcurrentHashMap<>();
+    private final Map<String, List<String>> signallingCouriers = new ConcurrentHashMap<>();
+    private final CountDownLatch signalling = new CountDownLatch(1);
+    private final CountDownLatch released = new CountDownLatch(1);
+    private CourierEventGateway gateway;
+
+    @AfterEach
+    void tearDown() {
+        released.countDown();
+        gateway.stop();
+    }
+
+    @Test
+    void givenEventsQueuedBehindASlowSignalTheyShouldBeDedupedAndCoalesced() throws InterruptedException {
+        gateway = new CourierEventGateway(this::blockingSignal, 4, 100, Duration.ofHours(1));
+
+        assertEquals(CourierEventGateway.Result.QUEUED, gateway.offer("delivery-1", event("courier-1", ACCEPTED)));
+        assertTrue(signalling.await(5, TimeUnit.SECONDS));
+        // The device retries while ACCEPTED is still being signalled
+        assertEquals(CourierEventGateway.Result.DUPLICATE, gateway.offer("delivery-1", event("courier-1", ACCEPTED)));
+        assertEquals(CourierEventGateway.Result.QUEUED, gateway.offer("delivery-1", event("courier-1", PICKED_UP)));
+        assertEquals(CourierEventGateway.Result.COALESCED,
+                gateway.offer("delivery-1", event("courier-1", DELIVERED)));
+        assertEquals(CourierEventGateway.Result.DUPLICATE,
+                gateway.offer("delivery-1", event("courier-1", PICKED_UP)));
+        released.countDown();
+
+        awaitSignals("delivery-1", 2);
+        assertEquals(Arrays.asList(ACCEPTED, DELIVERED), signals.get("delivery-1"));
+        assertEquals(0, gateway.getPendingEvents());
+    }
+
+    @Test
+    void givenARejectionItShouldBeSignalledAndNotTakenForTheNextCourier() throws InterruptedException {
+        gateway = new CourierEventGateway(this::blockingSignal, 4, 100, Duration.ofHours(1));
+
+        gateway.offer("delivery-1", event("courier-1", REJECTED));
+        assertTrue(signalling.await(5, TimeUnit.SECONDS));
+        assertEquals(CourierEventGateway.Result.QUEUED, gateway.offer("delivery-1", event("courier-2", ACCEPTED)));
+        // courier-1 retrying its rejection mustn't reject the job courier-2 took
+        assertEquals(CourierEventGateway.Result.DUPLICATE, gateway.offer("delivery-1", event("courier-1", REJECTED)));
+        released.countDown();
+
+        awaitSignals("delivery-1", 2);
+        assertEquals(CourierEventGateway.Result.STALE, gateway.offer("delivery-1", event("courier-2", CREATED)));
+        assertEquals(Arrays.asList(REJECTED, ACCEPTED), signals.get("delivery-1"));
+        assertEquals(Arrays.asList("courier-1", "courier-2"), signallingCouriers.get("delivery-1"));
+    }
+
+    @Test
+    void givenAReassignedDeliveryLateEventsOfThePreviousCourierShouldNotHoldBackTheNextOne() {
+        gateway = new CourierEventGateway(this::record, 4, 100, Duration.ofHours(1));
+
+        gateway.offer("delivery-1", event("courier-1", ACCEPTED));
+        awaitSignals("delivery-1", 1);
+        // courier-1 timed out and the job went to courier-2, courier-1's device then reports late
+        assertEquals(CourierEventGateway.Result.QUEUED, gateway.offer("delivery-1", event("courier-1", DELIVERED)));
+        awaitSignals("delivery-1", 2);
+        assertEquals(CourierEventGateway.Result.QUEUED, gateway.offer("delivery-1", event("courier-2", ACCEPTED)));
+        awaitSignals("delivery-1", 3);
+        assertEquals(CourierEventGateway.Result.QUEUED, gateway.offer("delivery-1", event("courier-2", PICKED_UP)));
+        awaitSignals("delivery-1", 4);
+
+        assertEquals(CourierEventGateway.Result.STALE, gateway.offer("delivery-1", event("courier-1", PICKED_UP)));
+        assertEquals(CourierEventGateway.Result.STALE, gateway.offer("delivery-1", event("courier-2", CREATED)));
+        assertEquals(Arrays.asList(ACCEPTED, DELIVERED, ACCEPTED, PICKED_UP), signals.get("delivery-1"));
+        assertEquals(Arrays.asList("courier-1", "courier-1", "courier-2", "courier-2"),
+                signallingCouriers.get("delivery-1"));
+    }
+
+    @Test
+    void givenTooManyPendingEventsNewOnesShouldBeTurnedAway() throws InterruptedException {
+        gateway = new CourierEventGateway(this::blockingSignal, 1, 1, Duration.ofHours(1));
+
+        gateway.offer("delivery-1", event("courier-1", ACCEPTED));
+        assertTrue(signalling.await(5, TimeUnit.SECONDS));
+        // The only signaller is busy, so this one waits
+        assertEquals(CourierEventGateway.Result.QUEUED, gateway.offer("delivery-2", event("courier-2", ACCEPTED)));
+        assertEquals(CourierEventGateway.Result.REJECTED, gateway.offer("delivery-3", event("courier-3", ACCEPTED)));
+        released.countDown();
+
+        awaitSignals("delivery-2", 1);
+        assertEquals(CourierEventGateway.Result.QUEUED, gateway.offer("delivery-3", event("courier-3", ACCEPTED)));
+    }
+
+    @Test
+    void givenASignalThatKeepsFailingARetriedEventShouldBeSignalledAgain() {
+        AtomicInteger failures = new AtomicInteger(3);
+        gateway = new CourierEventGateway((deliveryId, courierId, status) -> {
+            if (failures.getAndDecrement() > 0) {
+                throw new IllegalStateException("Cadence unavailable");
+            }
+            record(deliveryId, courierId, status);
+        }, 1, 100, Duration.ofHours(1));
+
+        gateway.offer("delivery-1", event("courier-1", ACCEPTED));
+        long deadline = System.currentTimeMillis() + 5_000;
+        CourierEventGateway.Result result;
+        do {
+            result = gateway.offer("delivery-1", event("courier-1", ACCEPTED));
+        } while (result != CourierEventGateway.Result.QUEUED && System.currentTimeMillis() < deadline);
+
+        assertEquals(CourierEventGateway.Result.QUEUED, result);
+        awaitSignals("delivery-1", 1);
+        assertEquals(Collections.singletonList(ACCEPTED), signals.get("delivery-1"));
+    }
+
+    @Test
+    void givenManyDeliveriesSignalsShouldKeepTheirOrderWithBoundedConcurrency() throws InterruptedException {
+        AtomicInteger concurrent = new AtomicInteger();
+        AtomicInteger maxConcurrent = new AtomicInteger();
+        gateway = new CourierEventGateway((deliveryId, courierId, status) -> {
+            maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            record(deliveryId, courierId, status);
+            concurrent.decrementAndGet();
+        }, 4, 10_000, Duration.ofHours(1));
+
+        List<Thread> couriers = new ArrayList<>();
+        for (int thread = 0; thread < 8; thread++) {
+            int first = thread;
+            couriers.add(new Thread(() -> {
+                for (int delivery = first; delivery < 400; delivery += 8) {
+                    for (CourierDeliveryStatus status : new CourierDeliveryStatus[]{ACCEPTED, PICKED_UP, DELIVERED}) {
+                        gateway.offer("delivery-" + delivery, event("courier-" + delivery, status));
+                    }
+                }
+            }));
+        }
+        couriers.forEach(Thread::start);
+        for (Thread courier : couriers) {
+            courier.join();
+        }
+
+        for (int delivery = 0; delivery < 400; delivery++) {
+            List<CourierDeliveryStatus> statuses = awaitLastSignal("delivery-" + delivery, DELIVERED);
+            for (int i = 1; i < statuses.size(); i++) {
+                assertTrue(statuses.get(i - 1).ordinal() < statuses.get(i).ordinal(), statuses.toString());
+            }
+        }
+        assertTrue(maxConcurrent.get() <= 4, maxConcurrent.get() + " concurrent signals");
+    }
+
+    private void blockingSignal(String deliveryId, String courierId, CourierDeliveryStatus status) {
+        signalling.countDown();
+        try {
+            released.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        record(deliveryId, courierId, status);
+    }
+
+    private void record(String deliveryId, String courierId, CourierDeliveryStatus status) {
+        signallingCouriers.computeIfAbsent(deliveryId, id -> Collections.synchronizedList(new ArrayList<>()))
+                .add(courierId);
+        signals.computeIfAbsent(deliveryId, id -> Collections.synchronizedList(new ArrayList<>())).add(status);
+    }
+
+    private void awaitSignals(String deliveryId, int count) {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (signals.getOrDefault(deliveryId, Collections.emptyList()).size() < count) {
+            assertTrue(System.currentTimeMillis() < deadline, "Timed out waiting for signals to " + deliveryId);
+            Thread.onSpinWait();
+        }
+    }
+
+    private List<CourierDeliveryStatus> awaitLastSignal(String deliveryId, CourierDeliveryStatus status) {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (true) {
+            List<CourierDeliveryStatus> statuses = new ArrayList<>(
+                    signals.getOrDefault(deliveryId, Collections.emptyList()));
+            if (!statuses.isEmpty() && statuses.get(statuses.size() - 1) == status) {
+                return statuses;
+            }
+            assertTrue(System.currentTimeMillis() < deadline, "Timed out waiting for " + status + " to " + deliveryId);
+            Thread.onSpinWait();
+        }
+    }
+
+    private static CourierEvent event(String courierId, CourierDeliveryStatus status) {
+        return new CourierEvent(courierId, status);
+    }
+}
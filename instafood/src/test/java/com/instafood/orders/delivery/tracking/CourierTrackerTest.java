@@ -0,0 +1,75 @@
+package com.instafood.orders.delivery.tracking;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CourierTrackerTest {
+
+    @Test
+    void givenARideTheTrailShouldRoundTripInAFewBytesPerPoint() {
+        Random random = new Random(5);
+        GpsTrail trail = new GpsTrail();
+        long timestampMillis = 1_650_000_000_000L;
+        double latitude = -34.6;
+        double longitude = -58.45;
+        List<GpsPoint> expected = new ArrayList<>();
+        for (int i = 0; i < 1_000; i++) {
+            timestampMillis += 4_000 + random.nextInt(1_000);
+            latitude += (random.nextDouble() - 0.5) * 0.0004;
+            longitude += (random.nextDouble() - 0.5) * 0.0004;
+            assertTrue(trail.append(timestampMillis, latitude, longitude));
+            expected.add(new GpsPoint(timestampMillis, latitude, longitude));
+        }
+        // Late pings are ignored
+        assertFalse(trail.append(timestampMillis - 1, latitude, longitude));
+
+        List<GpsPoint> points = trail.points();
+        assertEquals(expected.size(), points.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getTimestampMillis(), points.get(i).getTimestampMillis());
+            assertEquals(expected.get(i).getLatitude(), points.get(i).getLatitude(), 1e-6);
+            assertEquals(expected.get(i).getLongitude(), points.get(i).getLongitude(), 1e-6);
+        }
+        assertEquals(timestampMillis, trail.latest().getTimestampMillis());
+        assertTrue(trail.sizeInBytes() < expected.size() * 8, "trail takes " + trail.sizeInBytes() + " bytes");
+    }
+
+    @Test
+    void givenPingsOnlyTrackedDeliveriesShouldRecordATrail() {
+        List<GpsPing> forwarded = new ArrayList<>();
+        CourierTracker tracker = new CourierTracker(16, 4, Duration.ofHours(1), forwarded::add);
+
+        tracker.offer(new GpsPing("courier-1", 1_000, -34.60, -58.45));
+        tracker.drain();
+        tracker.startTracking("delivery-1", "courier-1");
+        tracker.offer(new GpsPing("courier-1", 2_000, -34.61, -58.45));
+        tracker.offer(new GpsPing("courier-2", 2_000, -34.50, -58.40));
+        // Older than what we already have for the courier
+        tracker.offer(new GpsPing("courier-1", 1_500, -34.70, -58.45));
+        tracker.drain();
+
+        assertEquals(3, forwarded.size());
+        assertEquals(2, tracker.getTrail("delivery-1").orElseThrow().size());
+        assertEquals(-34.61, tracker.getLatestPosition("delivery-1").orElseThrow().getLatitude(), 1e-6);
+
+        tracker.stopTracking("delivery-1");
+        assertFalse(tracker.getTrail("delivery-1").isPresent());
+    }
+
+    @Test
+    void givenASaturatedPipelinePingsShouldBeDroppedWithoutBlocking() {
+        CourierTracker tracker = new CourierTracker(2, 2, Duration.ofHours(1), ping -> {
+        });
+        assertTrue(tracker.offer(new GpsPing("courier-1", 1, 0, 0)));
+        assertTrue(tracker.offer(new GpsPing("courier-1", 2, 0, 0)));
+        assertFalse(tracker.offer(new GpsPing("courier-1", 3, 0, 0)));
+    }
+}
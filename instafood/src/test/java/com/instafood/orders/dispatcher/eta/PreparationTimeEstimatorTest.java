@@ -0,0 +1,44 @@
+package com.instafood.orders.dispatcher.eta;
+
+import com.instafood.orders.dispatcher.domain.Restaurant;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PreparationTimeEstimatorTest {
+
+    @Test
+    void givenSkewedObservationsP2ShouldTrackTheExactQuantile() {
+        Random random = new Random(3);
+        for (double quantile : new double[]{0.1, 0.5, 0.9}) {
+            P2QuantileEstimator estimator = new P2QuantileEstimator(quantile);
+            double[] values = new double[20_000];
+            for (int i = 0; i < values.length; i++) {
+                // Log-normal, like preparation times
+                values[i] = Math.exp(random.nextGaussian() * 0.4);
+                estimator.add(values[i]);
+            }
+            Arrays.sort(values);
+            double exact = values[(int) (quantile * (values.length - 1))];
+            assertEquals(exact, estimator.getQuantile(), exact * 0.03);
+        }
+    }
+
+    @Test
+    void givenASlowRestaurantTheEstimateShouldStretchTheQuotedEta() {
+        PreparationTimeEstimator estimator = new PreparationTimeEstimator(0.5, 20);
+        // Not enough history yet, the quoted ETA is trusted
+        assertEquals(Duration.ofMinutes(10), estimator.estimate(Restaurant.MEGABURGER, "Burger", 10));
+
+        for (int i = 0; i < 50; i++) {
+            estimator.record(Restaurant.MEGABURGER, "Burger", 10, Duration.ofMinutes(15));
+        }
+        assertEquals(Duration.ofMinutes(30), estimator.estimate(Restaurant.MEGABURGER, " burger ", 20));
+        // Meals without history fall back to what the restaurant does overall
+        assertEquals(Duration.ofMinutes(6), estimator.estimate(Restaurant.MEGABURGER, "Fries", 4));
+    }
+}
@@ -0,0 +1,184 @@
+package com.instafood.orders.intake;
+
+import com.instafood.orders.dispatcher.domain.FoodOrder;
+import com.uber.cadence.BadRequestError;
+import com.uber.cadence.ServiceBusyError;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OrderIntakeServerTest {
+
+    private static final String ORDER = "{\"restaurant\": \"MEGABURGER\", \"meal\": \"vegan burger\", " +
+            "\"quantity\": 2, \"telephone\": \"+54 112343-2324\", \"address\": \"Av. Libertador 1000\", " +
+            "\"pickup\": true}";
+
+    private final HttpClient httpClient = HttpClient.newHttpClient();
+    private OrderIntakeServer server;
+
+    @AfterEach
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    void givenAnIdempotencyKeyRetriesShouldNotStartAnotherWorkflow() throws Exception {
+        Map<String, FoodOrder> startedOrders = new ConcurrentHashMap<>();
+        server = new OrderIntakeServer((workflowId, order) -> startedOrders.putIfAbsent(workflowId, order) == null,
+                10, Duration.ZERO);
+        server.start(0);
+
+        HttpResponse<String> response = postOrder("key-1");
+        assertEquals(202, response.statusCode());
+        assertTrue(response.body().contains("order-key-1"));
+        assertEquals("vegan burger", startedOrders.get("order-key-1").getMeal());
+
+        assertEquals(200, postOrder("key-1").statusCode());
+        assertEquals(202, postOrder(null).statusCode());
+        assertEquals(2, startedOrders.size());
+    }
+
+    @Test
+    void givenAllSlotsBusyOrdersShouldBeTurnedAwayWithRetryAfter() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        server = new OrderIntakeServer((workflowId, order) -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return true;
+        }, 1, Duration.ofMillis(50));
+        server.start(0);
+
+        CompletableFuture<HttpResponse<String>> slowOrder = httpClient.sendAsync(orderRequest(null),
+                HttpResponse.BodyHandlers.ofString());
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        HttpResponse<String> rejected = postOrder(null);
+        assertEquals(503, rejected.statusCode());
+        assertEquals("1", rejected.headers().firstValue("Retry-After").orElse(null));
+
+        release.countDown();
+        assertEquals(202, slowOrder.get(5, TimeUnit.SECONDS).statusCode());
+        assertEquals(202, postOrder(null).statusCode());
+    }
+
+    @Test
+    void givenNoThreadLeftToWaitForASlotOrdersShouldBeTurnedAwayRightAway() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        server = new OrderIntakeServer((workflowId, order) -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return true;
+        }, 1, Duration.ofSeconds(30), false);
+        server.start(0);
+
+        CompletableFuture<HttpResponse<String>> slowOrder = httpClient.sendAsync(orderRequest(null),
+                HttpResponse.BodyHandlers.ofString());
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        // One of them waits for the slot on the only thread left, the other can't wait and isn't kept waiting
+        CompletableFuture<HttpResponse<String>> waitingOrder = httpClient.sendAsync(orderRequest(null),
+                HttpResponse.BodyHandlers.ofString());
+        CompletableFuture<HttpResponse<String>> otherOrder = httpClient.sendAsync(orderRequest(null),
+                HttpResponse.BodyHandlers.ofString());
+        HttpResponse<?> rejected = (HttpResponse<?>) CompletableFuture.anyOf(waitingOrder, otherOrder)
+                .get(5, TimeUnit.SECONDS);
+        assertEquals(503, rejected.statusCode());
+        assertEquals("1", rejected.headers().firstValue("Retry-After").orElse(null));
+
+        release.countDown();
+        assertEquals(202, slowOrder.get(5, TimeUnit.SECONDS).statusCode());
+        HttpResponse<String> waited = (rejected == waitingOrder.get() ? otherOrder : waitingOrder)
+                .get(5, TimeUnit.SECONDS);
+        assertEquals(202, waited.statusCode());
+    }
+
+    @Test
+    void givenAnInvalidOrderItShouldBeRejected() throws Exception {
+        server = new OrderIntakeServer((workflowId, order) -> true, 10, Duration.ZERO);
+        server.start(0);
+
+        HttpResponse<String> response = httpClient.send(HttpRequest.newBuilder(ordersUri())
+                .POST(HttpRequest.BodyPublishers.ofString("{\"quantity\": 2}"))
+                .build(), HttpResponse.BodyHandlers.ofString());
+        assertEquals(400, response.statusCode());
+    }
+
+    @Test
+    void givenAnInvalidIdempotencyKeyTheOrderShouldBeRejected() throws Exception {
+        Map<String, FoodOrder> startedOrders = new ConcurrentHashMap<>();
+        server = new OrderIntakeServer((workflowId, order) -> startedOrders.putIfAbsent(workflowId, order) == null,
+                10, Duration.ZERO);
+        server.start(0);
+
+        assertEquals(400, postOrder("key 1").statusCode());
+        assertEquals(400, postOrder("k".repeat(129)).statusCode());
+        assertEquals(202, postOrder("k".repeat(128)).statusCode());
+        assertEquals(202, postOrder("2024-05-01:order_7.b").statusCode());
+        assertEquals(2, startedOrders.size());
+    }
+
+    @Test
+    void givenCadenceFailingOnlyTransientErrorsShouldBeRetryable() throws Exception {
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        server = new OrderIntakeServer((workflowId, order) -> {
+            throw failure.get();
+        }, 10, Duration.ZERO);
+        server.start(0);
+
+        failure.set(new RuntimeException(new ServiceBusyError("busy")));
+        HttpResponse<String> busy = postOrder(null);
+        assertEquals(503, busy.statusCode());
+        assertEquals("1", busy.headers().firstValue("Retry-After").orElse(null));
+
+        failure.set(new RuntimeException(new BadRequestError("bad")));
+        assertEquals(400, postOrder(null).statusCode());
+
+        failure.set(new IllegalStateException("bug"));
+        HttpResponse<String> failed = postOrder(null);
+        assertEquals(500, failed.statusCode());
+        assertTrue(failed.headers().firstValue("Retry-After").isEmpty());
+    }
+
+    private HttpResponse<String> postOrder(String idempotencyKey) throws IOException, InterruptedException {
+        return httpClient.send(orderRequest(idempotencyKey), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpRequest orderRequest(String idempotencyKey) {
+        HttpRequest.Builder request = HttpRequest.newBuilder(ordersUri())
+                .header("content-type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(ORDER));
+        if (idempotencyKey != null) {
+            request.header("Idempotency-Key", idempotencyKey);
+        }
+        return request.build();
+    }
+
+    private URI ordersUri() {
+        return URI.create("http://localhost:" + server.getPort() + "/orders");
+    }
+}
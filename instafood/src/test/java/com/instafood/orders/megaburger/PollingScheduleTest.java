@@ -0,0 +1,105 @@
+package com.instafood.orders.megaburger;
+
+import com.instafood.orders.dispatcher.domain.OrderStatus;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PollingScheduleTest {
+
+    private static final Duration FIXED_INTERVAL = Duration.ofSeconds(10);
+
+    private final PollingSchedule schedule = PollingSchedule.defaults();
+
+    @Test
+    void givenAnOrderReadyOnTimeItShouldBeSeenWithinTheShortestInterval() {
+        Duration eta = Duration.ofMinutes(20);
+        Duration minInterval = schedule.getPolicy(OrderStatus.COOKING).getMinInterval();
+        for (double random : new double[]{0, 0.5, 0.999}) {
+            Polling polling = poll(eta, eta, random);
+
+            assertTrue(polling.lag.compareTo(minInterval.multipliedBy(6).dividedBy(5)) <= 0,
+                    "Transition seen " + polling.lag + " late");
+        }
+    }
+
+    @Test
+    void givenAnOrderReadyEarlyItShouldBeSeenNoLaterThanWithFixedPolling() {
+        for (double random : new double[]{0, 0.5, 0.999}) {
+            Polling polling = poll(Duration.ofMinutes(20), Duration.ofMinutes(5), random);
+
+            assertTrue(polling.lag.compareTo(FIXED_INTERVAL) <= 0, "Transition seen " + polling.lag + " late");
+        }
+    }
+
+    @Test
+    void givenJitterDelaysShouldStayWithinTheStageIntervals() {
+        PollingSchedule.StagePolicy policy = schedule.getPolicy(OrderStatus.COOKING);
+
+        assertEquals(policy.getMaxInterval(), schedule.nextDelay(OrderStatus.COOKING, Duration.ofHours(1), 0, 0.999));
+        assertEquals(policy.getMinInterval(), schedule.nextDelay(OrderStatus.COOKING, Duration.ofSeconds(6), 0, 0));
+    }
+
+    @Test
+    void givenAnyStageItShouldNeverBePolledLessOftenThanWithFixedPolling() {
+        for (OrderStatus stage : new OrderStatus[]{OrderStatus.PENDING, OrderStatus.ACCEPTED, OrderStatus.COOKING,
+                OrderStatus.READY}) {
+            assertEquals(FIXED_INTERVAL, schedule.nextDelay(stage, Duration.ofHours(1), 0, 0.999));
+            assertEquals(FIXED_INTERVAL, schedule.nextDelay(stage, Duration.ofSeconds(-1), 20, 0.999));
+        }
+        assertThrows(IllegalArgumentException.class, () -> new PollingSchedule.StagePolicy(Duration.ofMinutes(2),
+                Duration.ofSeconds(5), FIXED_INTERVAL.plusSeconds(1)));
+    }
+
+    @Test
+    void givenAnOverdueOrderPollingShouldBackOffUpToTheLongestInterval() {
+        PollingSchedule.StagePolicy policy = schedule.getPolicy(OrderStatus.COOKING);
+        Duration previous = Duration.ZERO;
+        for (int overduePolls = 0; overduePolls < 20; overduePolls++) {
+            Duration delay = schedule.nextDelay(OrderStatus.COOKING, Duration.ofSeconds(-1), overduePolls, 0.5);
+            assertTrue(delay.compareTo(previous) >= 0, delay + " after " + previous);
+            previous = delay;
+        }
+        assertEquals(policy.getMinInterval(), schedule.nextDelay(OrderStatus.COOKING, Duration.ZERO, 0, 0.5));
+        assertEquals(policy.getMaxInterval(), previous);
+    }
+
+    @Test
+    void givenTheSameOverduePollJitterShouldSpreadDelaysAroundTheBackoff() {
+        Duration low = schedule.nextDelay(OrderStatus.ACCEPTED, Duration.ofSeconds(-1), 1, 0);
+        Duration high = schedule.nextDelay(OrderStatus.ACCEPTED, Duration.ofSeconds(-1), 1, 0.999);
+
+        assertTrue(low.compareTo(high) < 0);
+        // 5s * 1.5, give or take 20%
+        assertTrue(low.toMillis() >= 6_000 && high.toMillis() <= 9_000, low + " to " + high);
+    }
+
+    /**
+     * Polls a cooking order expected ready after {@code eta}, that is actually ready after {@code readyAfter}.
+     */
+    private Polling poll(Duration eta, Duration readyAfter, double random) {
+        Polling polling = new Polling();
+        Duration elapsed = Duration.ZERO;
+        int overduePolls = 0;
+        polling.polls = 1;
+        while (elapsed.compareTo(readyAfter) < 0) {
+            Duration untilExpected = eta.minus(elapsed);
+            elapsed = elapsed.plus(schedule.nextDelay(OrderStatus.COOKING, untilExpected, overduePolls, random));
+            if (untilExpected.isNegative() || untilExpected.isZero()) {
+                overduePolls++;
+            }
+            polling.polls++;
+        }
+        polling.lag = elapsed.minus(readyAfter);
+        return polling;
+    }
+
+    private static final class Polling {
+        private int polls;
+        private Duration lag;
+    }
+}
@@ -0,0 +1,36 @@
+package com.instafood.orders.megaburger.activities;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class MegaBurgerRestApiOrderActivitiesTest {
+
+    private static final Duration START_TO_CLOSE = Duration.ofSeconds(30);
+    private static final Duration SCHEDULE_TO_CLOSE = Duration.ofMinutes(5);
+
+    @Test
+    void givenAnAttemptStartedAWhileAgoItsTimeoutShouldOnlyCoverWhatIsLeft() {
+        long startedAt = 1_000_000;
+
+        assertEquals(Duration.ofSeconds(29), MegaBurgerRestApiOrderActivities.getTimeout(START_TO_CLOSE,
+                SCHEDULE_TO_CLOSE, startedAt, startedAt, startedAt));
+        assertEquals(Duration.ofSeconds(19), MegaBurgerRestApiOrderActivities.getTimeout(START_TO_CLOSE,
+                SCHEDULE_TO_CLOSE, startedAt, startedAt, startedAt + 10_000));
+    }
+
+    @Test
+    void givenALateRetryItsTimeoutShouldEndWithTheScheduleToCloseBudget() {
+        long scheduledAt = 1_000_000;
+        long startedAt = scheduledAt + Duration.ofMinutes(4).plusSeconds(50).toMillis();
+
+        assertEquals(Duration.ofSeconds(9), MegaBurgerRestApiOrderActivities.getTimeout(START_TO_CLOSE,
+                SCHEDULE_TO_CLOSE, scheduledAt, startedAt, startedAt));
+        assertEquals(Duration.ofMillis(100), MegaBurgerRestApiOrderActivities.getTimeout(START_TO_CLOSE,
+                SCHEDULE_TO_CLOSE, scheduledAt, startedAt, startedAt + 20_000));
+        assertEquals(Duration.ofSeconds(29), MegaBurgerRestApiOrderActivities.getTimeout(START_TO_CLOSE,
+                Duration.ZERO, scheduledAt, startedAt, startedAt));
+    }
+}
@@ -0,0 +1,26 @@
+package com.instafood.orders.megaburger.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ConsistentHashRingTest {
+
+    /**
+     * MegaBurger's copy of the ring is checked against the same values, so requests go to the shard owning them.
+     */
+    @Test
+    void givenThreeShardsOrderIdsShouldMapToTheAgreedShards() {
+        ConsistentHashRing ring = new ConsistentHashRing(3);
+        int[] shards = new int[20];
+        for (int orderId = 0; orderId < shards.length; orderId++) {
+            shards[orderId] = ring.shardFor(orderId);
+        }
+
+        assertArrayEquals(new int[]{1, 1, 2, 2, 1, 2, 2, 2, 1, 2, 1, 2, 2, 2, 1, 0, 0, 2, 0, 2}, shards);
+        assertEquals(3322643720672103823L, ConsistentHashRing.hash("megaburger"));
+        assertEquals(1, ring.shardFor("order-workflow-1/0"));
+        assertEquals(2, ring.shardFor("order-workflow-2/0"));
+    }
+}
@@ -0,0 +1,204 @@
+package com.instafood.orders.megaburger.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.instafood.orders.dispatcher.domain.OrderStatus;
+import com.instafood.orders.megaburger.MegaBurgerFoodOrder;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MegaBurgerOrdersApiClientTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ObjectMapper smileMapper = new ObjectMapper(new SmileFactory());
+    private final AtomicReference<String> requestContentType = new AtomicReference<>();
+    private final AtomicReference<String> requestAccept = new AtomicReference<>();
+    private final AtomicReference<byte[]> requestBody = new AtomicReference<>();
+    private HttpServer server;
+    private final List<HttpServer> shards = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        if (server != null) {
+            server.stop(0);
+        }
+        shards.forEach(shard -> shard.stop(0));
+    }
+
+    @Test
+    void givenMegaBurgerAnsweringInSmileOrdersShouldBeSentAndReadAsSmile() throws IOException {
+        startServer(MegaBurgerOrdersApiClient.SMILE,
+                smileMapper.writeValueAsBytes(Map.of("id", 7, "meal", "hamburger", "status", "PENDING")));
+        MegaBurgerOrdersApiClient client = newClient();
+
+        MegaBurgerFoodOrder createdOrder = client.create(hamburgers());
+        assertEquals(7, createdOrder.getId());
+        assertEquals(OrderStatus.PENDING, createdOrder.getStatus());
+        // Nothing has been heard from the shard yet
+        assertEquals(MegaBurgerOrdersApiClient.JSON, requestContentType.get());
+
+        client.create(hamburgers());
+        assertEquals(MegaBurgerOrdersApiClient.SMILE, requestContentType.get());
+        assertTrue(requestAccept.get().startsWith(MegaBurgerOrdersApiClient.SMILE));
+        Map<?, ?> sentOrder = smileMapper.readValue(requestBody.get(), Map.class);
+        assertEquals("hamburger", sentOrder.get("meal"));
+        assertEquals(2, sentOrder.get("quantity"));
+    }
+
+    @Test
+    void givenMegaBurgerOnlySpeakingJsonItsAnswersShouldStillBeRead() throws IOException {
+        startServer(MegaBurgerOrdersApiClient.JSON,
+                "{\"id\": 7, \"status\": \"ACCEPTED\", \"eta_minutes\": 15}".getBytes(StandardCharsets.UTF_8));
+
+        MegaBurgerOrdersApiClient client = newClient();
+        MegaBurgerFoodOrder order = client.getById(7);
+        client.create(hamburgers());
+
+        assertEquals(OrderStatus.ACCEPTED, order.getStatus());
+        assertEquals(15, order.getEtaMinutes());
+        assertEquals(MegaBurgerOrdersApiClient.JSON, requestContentType.get());
+        assertEquals("hamburger", objectMapper.readValue(requestBody.get(), Map.class).get("meal"));
+    }
+
+    @Test
+    void givenSeveralShardsOrdersShouldGoToTheirShardAndBeGatheredFromAll() throws IOException {
+        ConsistentHashRing ring = new ConsistentHashRing(3);
+        List<List<String>> requests = new ArrayList<>();
+        List<String> shardUrls = new ArrayList<>();
+        for (int shard = 0; shard < ring.getShardCount(); shard++) {
+            List<String> shardRequests = Collections.synchronizedList(new ArrayList<>());
+            requests.add(shardRequests);
+            shardUrls.add(startShard(ring, shard, shardRequests));
+        }
+        MegaBurgerOrdersApiClient client = new MegaBurgerOrdersApiClient(shardUrls, new SimpleMeterRegistry());
+
+        List<List<String>> expectedRequests = List.of(new ArrayList<>(), new ArrayList<>(), new ArrayList<>());
+        for (int orderId = 0; orderId < 20; orderId++) {
+            assertEquals(orderId, client.getById(orderId).getId());
+            expectedRequests.get(ring.shardFor(orderId)).add("GET /orders/" + orderId);
+        }
+        // Retries with the same key reach the shard that created the order
+        String idempotencyKey = "order-workflow-2/0";
+        assertEquals(100 + ring.shardFor(idempotencyKey), client.create(hamburgers(), idempotencyKey).getId());
+        assertEquals(100 + ring.shardFor(idempotencyKey), client.create(hamburgers(), idempotencyKey).getId());
+        expectedRequests.get(ring.shardFor(idempotencyKey)).addAll(List.of("POST /orders", "POST /orders"));
+        assertEquals(expectedRequests, requests);
+
+        List<Integer> orderIds = new ArrayList<>();
+        client.getAll().forEach(order -> orderIds.add(order.getId()));
+        assertEquals(IntStream.range(0, 20).boxed().collect(Collectors.toList()), orderIds);
+        for (List<String> shardRequests : requests) {
+            assertEquals("GET /orders", shardRequests.get(shardRequests.size() - 1));
+        }
+    }
+
+    @Test
+    void givenMegaBurgerFailingARequestItShouldNotBeTakenForDone() throws IOException {
+        AtomicInteger status = new AtomicInteger();
+        server = HttpServer.create(new InetSocketAddress(0), 0);
+        server.createContext("/orders", exchange -> {
+            exchange.sendResponseHeaders(status.get(), -1);
+            exchange.close();
+        });
+        server.start();
+        MegaBurgerOrdersApiClient client = newClient();
+
+        for (int failure : new int[]{400, 404, 421, 500, 504}) {
+            status.set(failure);
+            assertThrows(RuntimeException.class, () -> client.updateStatus(7, "READY"), "status " + failure);
+            assertThrows(RuntimeException.class, () -> client.updateStatusAndEta(7, "ACCEPTED", 15));
+            assertThrows(RuntimeException.class, () -> client.getById(7));
+            assertThrows(RuntimeException.class, () -> client.create(hamburgers()));
+        }
+        status.set(429);
+        assertThrows(MegaBurgerRateLimitedException.class, () -> client.updateStatus(7, "READY"));
+        // Cancelling an order MegaBurger doesn't know is answered, not failed
+        status.set(404);
+        assertNull(client.cancel(7));
+        status.set(204);
+        client.updateStatus(7, "READY");
+    }
+
+    private static MegaBurgerFoodOrder hamburgers() {
+        MegaBurgerFoodOrder order = new MegaBurgerFoodOrder();
+        order.setMeal("hamburger");
+        order.setQuantity(2);
+        return order;
+    }
+
+    private MegaBurgerOrdersApiClient newClient() {
+        return new MegaBurgerOrdersApiClient(
+                Collections.singletonList("http://localhost:" + server.getAddress().getPort()),
+                new SimpleMeterRegistry(), true);
+    }
+
+    /**
+     * Starts a shard holding the orders with ids up to 19 that the ring gives it, orders it creates get
+     * {@code 100 + shard} as their id.
+     */
+    private String startShard(ConsistentHashRing ring, int shard, List<String> shardRequests) throws IOException {
+        HttpServer shardServer = HttpServer.create(new InetSocketAddress(0), 0);
+        shardServer.createContext("/orders", exchange -> {
+            String path = exchange.getRequestURI().getPath();
+            shardRequests.add(exchange.getRequestMethod() + " " + path);
+            Object body;
+            if ("POST".equals(exchange.getRequestMethod())) {
+                body = Map.of("id", 100 + shard, "status", "PENDING");
+            } else if ("/orders".equals(path)) {
+                body = IntStream.range(0, 20)
+                        .filter(orderId -> ring.shardFor(orderId) == shard)
+                        .mapToObj(orderId -> Map.of("id", orderId, "status", "PENDING"))
+                        .collect(Collectors.toList());
+            } else {
+                body = Map.of("id", Integer.parseInt(path.substring("/orders/".length())), "status", "PENDING");
+            }
+            byte[] response = objectMapper.writeValueAsBytes(body);
+            exchange.getResponseHeaders().set("content-type", MegaBurgerOrdersApiClient.JSON);
+            exchange.sendResponseHeaders(200, response.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(response);
+            }
+        });
+        shardServer.start();
+        shards.add(shardServer);
+        return "http://localhost:" + shardServer.getAddress().getPort();
+    }
+
+    private void startServer(String contentType, byte[] body) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(0), 0);
+        server.createContext("/orders", exchange -> {
+            requestContentType.set(exchange.getRequestHeaders().getFirst("content-type"));
+            requestAccept.set(exchange.getRequestHeaders().getFirst("accept"));
+            try (InputStream in = exchange.getRequestBody()) {
+                requestBody.set(in.readAllBytes());
+            }
+            exchange.getResponseHeaders().set("content-type", contentType);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+    }
+}
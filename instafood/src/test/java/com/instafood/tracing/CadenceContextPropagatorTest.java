@@ -0,0 +1,97 @@
+package com.instafood.tracing;
+
+import com.instafood.orders.megaburger.service.MegaBurgerOrdersApiClient;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanContext;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.context.Scope;
+import io.opentelemetry.sdk.testing.exporter.InMemorySpanExporter;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SimpleSpanProcessor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+class CadenceContextPropagatorTest {
+
+    private final InMemorySpanExporter spanExporter = InMemorySpanExporter.create();
+    private final CadenceContextPropagator propagator = new CadenceContextPropagator();
+
+    @BeforeEach
+    public void setUp() {
+        InstafoodTracing.install(SimpleSpanProcessor.create(spanExporter));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        CadenceContextPropagator.setCurrent(null);
+        spanExporter.reset();
+    }
+
+    @Test
+    void givenASpanItsContextShouldTravelThroughCadenceHeadersToAnotherThread() throws Exception {
+        Span span = InstafoodTracing.tracer().spanBuilder("client").startSpan();
+        Map<String, byte[]> headers;
+        try (Scope ignored = span.makeCurrent()) {
+            headers = propagator.serializeContext(propagator.getCurrentContext());
+        } finally {
+            span.end();
+        }
+
+        // Cadence restores the context on the thread running the workflow or activity
+        SpanContext received = CompletableFuture.supplyAsync(() -> {
+            propagator.setCurrentContext(propagator.deserializeContext(headers));
+            return Span.fromContext(CadenceContextPropagator.current()).getSpanContext();
+        }).get();
+
+        assertEquals(span.getSpanContext().getTraceId(), received.getTraceId());
+        assertEquals(span.getSpanContext().getSpanId(), received.getSpanId());
+    }
+
+    @Test
+    void givenAPropagatedContextMegaBurgerRequestsShouldBeTracedAndCarryTraceHeaders() throws Exception {
+        AtomicReference<String> traceparent = new AtomicReference<>();
+        HttpServer server = HttpServer.create(new InetSocketAddress(0), 0);
+        server.createContext("/orders", exchange -> {
+            traceparent.set(exchange.getRequestHeaders().getFirst("traceparent"));
+            byte[] body = "{\"id\": 1, \"status\": \"PENDING\"}".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream responseBody = exchange.getResponseBody()) {
+                responseBody.write(body);
+            }
+        });
+        server.start();
+        try {
+            Span activitySpan = InstafoodTracing.tracer().spanBuilder("activity").startSpan();
+            CadenceContextPropagator.setCurrent(Context.root().with(activitySpan));
+
+            new MegaBurgerOrdersApiClient("http://localhost:" + server.getAddress().getPort(),
+                    new SimpleMeterRegistry()).getById(1);
+            activitySpan.end();
+
+            SpanData clientSpan = spanExporter.getFinishedSpanItems().stream()
+                    .filter(spanData -> SpanKind.CLIENT.equals(spanData.getKind()))
+                    .findFirst()
+                    .orElseThrow();
+            assertEquals(activitySpan.getSpanContext().getSpanId(), clientSpan.getParentSpanId());
+            assertNotNull(traceparent.get());
+            assertEquals("00-" + clientSpan.getTraceId() + "-" + clientSpan.getSpanId() + "-01",
+                    traceparent.get());
+        } finally {
+            server.stop(0);
+        }
+    }
+}
@@ -1,68 +1,151 @@
 package com.instaclustr.megaburger.controller;
 
+import com.instaclustr.megaburger.deadline.DeadlineFilter;
 import com.instaclustr.megaburger.domain.Order;
+import com.instaclustr.megaburger.domain.OrderStatus;
+import com.instaclustr.megaburger.idempotency.IdempotencyKeyStore;
+import com.instaclustr.megaburger.sharding.OrderShard;
+import com.instaclustr.megaburger.store.OrderStore;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RestController;
 
-import java.util.Comparator;
+import javax.servlet.http.HttpServletRequest;
 import java.util.List;
-import java.util.Map;
-import java.util.Optional;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @RestController
 public class OrdersApi {
 
-    private final Map<Integer, Order> orders = new ConcurrentHashMap<>();
+    // RFC 7540, the order lives on another shard
+    private static final int MISDIRECTED_REQUEST = 421;
+
+    private final OrderStore orders;
+    private final AtomicInteger nextOrderId = new AtomicInteger();
+    private final IdempotencyKeyStore idempotencyKeys;
+    private final OrderShard shard;
     private final Logger logger = LoggerFactory.getLogger(OrdersApi.class);
 
+    public OrdersApi(OrderStore orders, IdempotencyKeyStore idempotencyKeys, OrderShard shard) {
+        this.orders = orders;
+        this.idempotencyKeys = idempotencyKeys;
+        this.shard = shard;
+    }
+
+    /**
+     * Orders held by this instance, i.e. every order only when it isn't sharded.
+     */
     @GetMapping("/orders")
     public ResponseEntity<List<Order>> getAll() {
-        logger.info("New request: Route: /orders; Method: GET");
-        return ResponseEntity.ok(orders.values().stream()
-                .sorted(Comparator.comparing(Order::getId))
-                .collect(Collectors.toList()));
+        return ResponseEntity.ok(orders.getAll());
     }
 
     @GetMapping("/orders/{orderId}")
     public ResponseEntity<Order> getById(@PathVariable Integer orderId) {
-        logger.info("New request: Route: /orders/{}; Method: GET", orderId);
+        if (!shard.owns(orderId)) {
+            return misdirected(orderId);
+        }
         return ResponseEntity.ok(orders.get(orderId));
     }
 
     @PatchMapping("/orders/{orderId}")
-    public ResponseEntity<Order> update(@PathVariable Integer orderId, @RequestBody Order newOrder) {
-        logger.info("New request: Route: /orders/{}; Method: PATCH;", orderId);
-        Order order = orders.get(orderId);
-
-        Optional.ofNullable(newOrder.getStatus()).ifPresent(order::updateStatus);
-        Optional.ofNullable(newOrder.getEtaMinutes()).ifPresent(order::updateEta);
-
-        orders.put(orderId, order);
+    public ResponseEntity<Order> update(@PathVariable Integer orderId, @RequestBody Order newOrder,
+                                       HttpServletRequest request) {
+        if (!shard.owns(orderId)) {
+            return misdirected(orderId);
+        }
+        if (DeadlineFilter.isExpired(request)) {
+            return abandoned(request);
+        }
+        Order order = orders.update(orderId, newOrder.getStatus(), newOrder.getEtaMinutes());
+        return order == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(order);
+    }
 
+    /**
+     * Cancels an order its customer no longer waits for. Orders already rejected or cancelled are returned as they
+     * are, so the call can safely be retried; orders already handed over can't be cancelled and get a 409.
+     */
+    @PostMapping("/orders/{orderId}/cancel")
+    public ResponseEntity<Order> cancel(@PathVariable Integer orderId) {
+        if (!shard.owns(orderId)) {
+            return misdirected(orderId);
+        }
+        // Checked within the store's update, so the order can't be handed over between the check and the cancel
+        Order order = orders.updateStatusIf(orderId, OrdersApi::isCancellable, OrderStatus.CANCELLED);
+        if (order == null) {
+            return ResponseEntity.notFound().build();
+        }
+        if (OrderStatus.RESTAURANT_DELIVERED.equals(order.getStatus())) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(order);
+        }
         return ResponseEntity.ok(order);
     }
 
-    @PostMapping("/orders")
-    public ResponseEntity<Order> create(@RequestBody Order order) {
-        logger.info("New request: Route: /orders; Method: POST");
-        order.setId(orders.size());
+    private static boolean isCancellable(OrderStatus status) {
+        return !OrderStatus.RESTAURANT_DELIVERED.equals(status) && !OrderStatus.REJECTED.equals(status)
+                && !OrderStatus.CANCELLED.equals(status);
+    }
 
-        orders.put(order.getId(), order);
+    /**
+     * Creates an order. Requests carrying an {@code Idempotency-Key} already used for a previous order get that
+     * order back with a 200 instead of creating a new one. Nothing is created for callers that have stopped
+     * waiting for the answer.
+     */
+    @PostMapping("/orders")
+    public ResponseEntity<Order> create(@RequestBody Order order,
+                                        @RequestHeader(name = "Idempotency-Key", required = false) String idempotencyKey,
+                                        HttpServletRequest request) {
+        if (DeadlineFilter.isExpired(request)) {
+            return abandoned(request);
+        }
+        if (idempotencyKey == null) {
+            return ResponseEntity.status(201).body(save(order));
+        }
 
+        // Ids are only ever assigned here, so the order has one once this request created it
+        order.setId(null);
+        Integer orderId = idempotencyKeys.getOrCreate(idempotencyKey, () -> save(order).getId());
+        if (!orderId.equals(order.getId())) {
+            Order storedOrder = orders.get(orderId);
+            logger.info("Replayed order {} for idempotency key {}", orderId, idempotencyKey);
+            return ResponseEntity.ok(storedOrder);
+        }
         return ResponseEntity.status(201).body(order);
     }
 
+    private Order save(Order order) {
+        // Sharded instances only hand out the ids they own, so any of them can take new orders
+        int orderId;
+        do {
+            orderId = nextOrderId.getAndIncrement();
+        } while (!shard.owns(orderId));
+        order.setId(orderId);
+        orders.put(order);
+        return order;
+    }
+
+    private ResponseEntity<Order> misdirected(Integer orderId) {
+        logger.warn("Order {} isn't owned by shard {}", orderId, shard.getShardIndex());
+        return ResponseEntity.status(MISDIRECTED_REQUEST).build();
+    }
+
+    private ResponseEntity<Order> abandoned(HttpServletRequest request) {
+        logger.warn("Abandoned {} {}, the caller stopped waiting", request.getMethod(), request.getRequestURI());
+        return ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT).build();
+    }
+
     public void deleteAll() {
         orders.clear();
+        idempotencyKeys.clear();
+        nextOrderId.set(0);
     }
 }
@@ -0,0 +1,58 @@
+package com.instaclustr.megaburger.deadline;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Turns the {@code X-Request-Timeout-Ms} header, how long the caller is still prepared to wait, into a deadline
+ * counted from when the request comes in. Requests arriving with no time left get {@code 504 Gateway Timeout}
+ * straight away, handlers check {@link #isExpired(HttpServletRequest)} before doing work nobody waits for anymore.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 2)
+public class DeadlineFilter extends OncePerRequestFilter {
+
+    public static final String TIMEOUT_HEADER = "X-Request-Timeout-Ms";
+
+    private static final String DEADLINE_ATTRIBUTE = DeadlineFilter.class.getName() + ".deadline";
+
+    private final Logger logger = LoggerFactory.getLogger(DeadlineFilter.class);
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        long receivedAt = System.nanoTime();
+        String timeout = request.getHeader(TIMEOUT_HEADER);
+        if (timeout != null && timeout.trim().matches("-?\\d+")) {
+            long timeoutMillis = Long.parseLong(timeout.trim());
+            if (timeoutMillis <= 0) {
+                logger.debug("Caller already gave up on {} {}", request.getMethod(), request.getRequestURI());
+                response.setStatus(HttpStatus.GATEWAY_TIMEOUT.value());
+                return;
+            }
+            request.setAttribute(DEADLINE_ATTRIBUTE, receivedAt + TimeUnit.MILLISECONDS.toNanos(timeoutMillis));
+        }
+        filterChain.doFilter(request, response);
+    }
+
+    /**
+     * Whether the caller of {@code request} has stopped waiting for the answer, never for requests without a
+     * timeout.
+     */
+    public static boolean isExpired(HttpServletRequest request) {
+        Object deadline = request.getAttribute(DEADLINE_ATTRIBUTE);
+        return deadline != null && System.nanoTime() - (Long) deadline >= 0;
+    }
+}
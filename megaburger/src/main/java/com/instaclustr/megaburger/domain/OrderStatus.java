@@ -1,5 +1,5 @@
 package com.instaclustr.megaburger.domain;
 
 public enum OrderStatus {
-    PENDING, ACCEPTED, COOKING, READY, REJECTED, RESTAURANT_DELIVERED
+    PENDING, ACCEPTED, COOKING, READY, REJECTED, RESTAURANT_DELIVERED, CANCELLED
 }
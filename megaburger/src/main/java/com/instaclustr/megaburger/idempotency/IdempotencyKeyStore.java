@@ -0,0 +1,92 @@
+package com.instaclustr.megaburger.idempotency;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Remembers which order was created for each {@code Idempotency-Key}, so a client retrying a request that timed
+ * out gets the original order back instead of a duplicate.
+ * <p>
+ * Keys expire after {@code megaburger.idempotency.ttl} and at most {@code megaburger.idempotency.max-keys} are
+ * kept, oldest first out. Every key lives for the same time, so insertion order is also expiry order and
+ * eviction only ever looks at the head of a queue.
+ */
+@Component
+public class IdempotencyKeyStore {
+
+    private final int maxKeys;
+    private final long ttlMillis;
+    private final LongSupplier clock;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Queue<Entry> expiryQueue = new ConcurrentLinkedQueue<>();
+
+    @Autowired
+    public IdempotencyKeyStore(@Value("${megaburger.idempotency.max-keys:100000}") int maxKeys,
+                               @Value("${megaburger.idempotency.ttl:24h}") Duration ttl) {
+        this(maxKeys, ttl, System::currentTimeMillis);
+    }
+
+    IdempotencyKeyStore(int maxKeys, Duration ttl, LongSupplier clock) {
+        this.maxKeys = maxKeys;
+        this.ttlMillis = ttl.toMillis();
+        this.clock = clock;
+    }
+
+    /**
+     * Order id stored for the key, or the one returned by {@code orderCreator} if the key is new or expired.
+     * Concurrent calls with the same key create at most one order.
+     */
+    public Integer getOrCreate(String key, Supplier<Integer> orderCreator) {
+        long now = clock.getAsLong();
+        Entry entry = entries.compute(key, (k, existing) -> {
+            if (existing != null && existing.expiresAtMillis > now) {
+                return existing;
+            }
+            Entry created = new Entry(k, orderCreator.get(), now + ttlMillis);
+            expiryQueue.add(created);
+            return created;
+        });
+        evict(now);
+        return entry.orderId;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public void clear() {
+        entries.clear();
+        expiryQueue.clear();
+    }
+
+    private void evict(long now) {
+        Entry head;
+        while ((head = expiryQueue.peek()) != null && (head.expiresAtMillis <= now || entries.size() > maxKeys)) {
+            // Another request may be evicting the same entry
+            if (expiryQueue.remove(head)) {
+                entries.remove(head.key, head);
+            }
+        }
+    }
+
+    private static final class Entry {
+        private final String key;
+        private final Integer orderId;
+        private final long expiresAtMillis;
+
+        private Entry(String key, Integer orderId, long expiresAtMillis) {
+            this.key = key;
+            this.orderId = orderId;
+            this.expiresAtMillis = expiresAtMillis;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.instaclustr.megaburger.logging;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Logs a line per request to the {@code com.instaclustr.megaburger.access} logger, which {@code logback-spring.xml}
+ * writes from a background thread. Only a {@code megaburger.access-log.sample-rate} share of requests is logged,
+ * plus every failed request and every one slower than {@code megaburger.access-log.slow-threshold}; latency of
+ * all of them is on {@code /actuator/prometheus}.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 1)
+public class AccessLogFilter extends OncePerRequestFilter {
+
+    public static final String LOGGER_NAME = "com.instaclustr.megaburger.access";
+
+    private static final Logger accessLogger = LoggerFactory.getLogger(LOGGER_NAME);
+
+    private final double sampleRate;
+    private final long slowThresholdNanos;
+
+    public AccessLogFilter(@Value("${megaburger.access-log.sample-rate:0.01}") double sampleRate,
+                           @Value("${megaburger.access-log.slow-threshold:500ms}") Duration slowThreshold) {
+        this.sampleRate = sampleRate;
+        this.slowThresholdNanos = slowThreshold.toNanos();
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            filterChain.doFilter(request, response);
+            failed = false;
+        } finally {
+            long elapsedNanos = System.nanoTime() - start;
+            int status = failed ? 500 : response.getStatus();
+            if (status >= 500 || elapsedNanos >= slowThresholdNanos
+                    || ThreadLocalRandom.current().nextDouble() < sampleRate) {
+                accessLogger.info("{} {} {} {}ms", request.getMethod(), request.getRequestURI(), status,
+                        TimeUnit.NANOSECONDS.toMillis(elapsedNanos));
+            }
+        }
+    }
+}
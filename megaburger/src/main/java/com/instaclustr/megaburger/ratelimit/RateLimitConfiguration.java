@@ -0,0 +1,25 @@
+package com.instaclustr.megaburger.ratelimit;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * Applies {@link RateLimitInterceptor} to the orders API, unless {@code megaburger.rate-limit.enabled} is false.
+ */
+@Configuration
+@ConditionalOnProperty(name = "megaburger.rate-limit.enabled", matchIfMissing = true)
+public class RateLimitConfiguration implements WebMvcConfigurer {
+
+    private final RateLimitInterceptor rateLimitInterceptor;
+
+    public RateLimitConfiguration(RateLimitInterceptor rateLimitInterceptor) {
+        this.rateLimitInterceptor = rateLimitInterceptor;
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(rateLimitInterceptor).addPathPatterns("/orders", "/orders/**");
+    }
+}
@@ -0,0 +1,65 @@
+package com.instaclustr.megaburger.ratelimit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sheds load with a token bucket per client, answering {@code 429 Too Many Requests} with a {@code Retry-After}
+ * (in seconds) once a client goes over {@code megaburger.rate-limit.requests-per-second} after a burst of
+ * {@code megaburger.rate-limit.burst} requests.
+ * <p>
+ * Clients are told apart by their {@code X-Client-Id} header, falling back to their address.
+ */
+@Component
+public class RateLimitInterceptor implements HandlerInterceptor {
+
+    public static final String CLIENT_ID_HEADER = "X-Client-Id";
+
+    // Full buckets are forgotten once we track this many clients, they'd be recreated full anyway
+    private static final int MAX_IDLE_CLIENTS = 10_000;
+
+    private final Logger logger = LoggerFactory.getLogger(RateLimitInterceptor.class);
+    private final Map<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+    private final double requestsPerSecond;
+    private final double burst;
+
+    public RateLimitInterceptor(@Value("${megaburger.rate-limit.requests-per-second:50}") double requestsPerSecond,
+                                @Value("${megaburger.rate-limit.burst:100}") double burst) {
+        this.requestsPerSecond = requestsPerSecond;
+        this.burst = burst;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        String clientId = getClientId(request);
+        long waitNanos = buckets.computeIfAbsent(clientId,
+                id -> new TokenBucket(burst, requestsPerSecond, System::nanoTime)).tryAcquire();
+        if (buckets.size() > MAX_IDLE_CLIENTS) {
+            buckets.values().removeIf(TokenBucket::isFull);
+        }
+        if (waitNanos == 0) {
+            return true;
+        }
+
+        long retryAfterSeconds = Math.max(1, (long) Math.ceil(waitNanos / (double) TimeUnit.SECONDS.toNanos(1)));
+        logger.debug("Rate limited client {}, retry after {}s", clientId, retryAfterSeconds);
+        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        response.setHeader("Retry-After", String.valueOf(retryAfterSeconds));
+        return false;
+    }
+
+    private static String getClientId(HttpServletRequest request) {
+        String clientId = request.getHeader(CLIENT_ID_HEADER);
+        return clientId != null && !clientId.isEmpty() ? clientId : request.getRemoteAddr();
+    }
+}
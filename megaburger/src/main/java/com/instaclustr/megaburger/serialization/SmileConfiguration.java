@@ -0,0 +1,25 @@
+package com.instaclustr.megaburger.serialization;
+
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+
+/**
+ * Lets clients exchange orders as Smile, Jackson's binary JSON, by sending and accepting
+ * {@code application/x-jackson-smile}. JSON stays the default for everyone else.
+ */
+@Configuration
+public class SmileConfiguration {
+
+    /**
+     * Built from the same builder as the JSON converter's mapper, so both formats map orders the same way.
+     */
+    @Bean
+    public MappingJackson2SmileHttpMessageConverter smileHttpMessageConverter(
+            Jackson2ObjectMapperBuilder objectMapperBuilder) {
+        return new MappingJackson2SmileHttpMessageConverter(
+                objectMapperBuilder.factory(new SmileFactory()).build());
+    }
+}
@@ -0,0 +1,33 @@
+package com.instaclustr.megaburger.sharding;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * The part of the order id space this instance owns when running {@code megaburger.sharding.shard-count}
+ * instances, as shard number {@code megaburger.sharding.shard-index} (0 based). A single instance owns every id.
+ */
+@Component
+public class OrderShard {
+
+    private final int shardIndex;
+    private final ConsistentHashRing ring;
+
+    public OrderShard(@Value("${megaburger.sharding.shard-index:0}") int shardIndex,
+                      @Value("${megaburger.sharding.shard-count:1}") int shardCount) {
+        if (shardIndex < 0 || shardIndex >= shardCount) {
+            throw new IllegalArgumentException(
+                    "Shard index " + shardIndex + " is out of range for " + shardCount + " shards");
+        }
+        this.shardIndex = shardIndex;
+        this.ring = new ConsistentHashRing(shardCount);
+    }
+
+    public boolean owns(int orderId) {
+        return ring.shardFor(orderId) == shardIndex;
+    }
+
+    public int getShardIndex() {
+        return shardIndex;
+    }
+}
@@ -0,0 +1,44 @@
+package com.instaclustr.megaburger.startup;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * Serves a first request and exits once the application is ready, when {@code megaburger.startup.exit-when-ready}
+ * is set. This is the training run of the {@code cdsArchive} task, so the class-data sharing archive holds the
+ * classes loaded to start and to serve a request.
+ */
+@Component
+@ConditionalOnProperty(name = "megaburger.startup.exit-when-ready", havingValue = "true")
+public class ExitWhenReady implements ApplicationListener<ApplicationReadyEvent> {
+
+    private static final Logger logger = LoggerFactory.getLogger(ExitWhenReady.class);
+
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        ConfigurableApplicationContext context = event.getApplicationContext();
+        if (context instanceof WebServerApplicationContext) {
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+            try {
+                HttpURLConnection connection = (HttpURLConnection) new URL(
+                        "http://localhost:" + port + "/orders/0").openConnection();
+                logger.info("First request answered {}", connection.getResponseCode());
+                connection.disconnect();
+            } catch (IOException e) {
+                logger.warn("First request failed", e);
+            }
+        }
+        System.exit(SpringApplication.exit(context));
+    }
+}
@@ -0,0 +1,260 @@
+package com.instaclustr.megaburger.store;
+
+import com.instaclustr.megaburger.domain.Order;
+import com.instaclustr.megaburger.domain.OrderStatus;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * Orders kept as primitive columns instead of one object each: status as a byte, quantity and ETA as ints and
+ * the meal as an index into a dictionary of the meal names seen so far, since the menu is tiny. {@link Order}
+ * objects only exist while a request is using them.
+ * <p>
+ * Orders are spread over a fixed number of segments by id, each with its own lock, columns and open-addressing
+ * index from id to row, so requests for different orders rarely wait on each other and growing a segment never
+ * copies more than a small part of the data.
+ */
+@Component
+@ConditionalOnProperty(name = "megaburger.store", havingValue = "columnar")
+public class ColumnarOrderStore implements OrderStore {
+
+    private static final int SEGMENT_BITS = 6;
+    private static final int SEGMENTS = 1 << SEGMENT_BITS;
+    private static final int INITIAL_SEGMENT_CAPACITY = 16;
+    // Stands for a null quantity, ETA or meal
+    private static final int NONE = Integer.MIN_VALUE;
+    private static final OrderStatus[] STATUSES = OrderStatus.values();
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final Map<String, Integer> codesByMeal = new ConcurrentHashMap<>();
+    // Written under the store's lock, a code is only ever read after the name it stands for is published
+    private volatile String[] mealNames = new String[16];
+    private int mealCount;
+
+    public ColumnarOrderStore() {
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    @Override
+    public void put(Order order) {
+        int mealCode = encodeMeal(order.getMeal());
+        segmentFor(order.getId()).put(order.getId(), order.getStatus(), order.getEtaMinutes(),
+                order.getQuantity(), mealCode);
+    }
+
+    @Override
+    public Order get(int orderId) {
+        return segmentFor(orderId).get(orderId);
+    }
+
+    @Override
+    public Order update(int orderId, OrderStatus status, Integer etaMinutes) {
+        return segmentFor(orderId).update(orderId, status, etaMinutes);
+    }
+
+    @Override
+    public Order updateStatusIf(int orderId, Predicate<OrderStatus> condition, OrderStatus status) {
+        return segmentFor(orderId).updateStatusIf(orderId, condition, status);
+    }
+
+    @Override
+    public List<Order> getAll() {
+        List<Order> orders = new ArrayList<>(size());
+        for (Segment segment : segments) {
+            segment.addAllTo(orders);
+        }
+        orders.sort(Comparator.comparing(Order::getId));
+        return orders;
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    @Override
+    public synchronized void clear() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+        codesByMeal.clear();
+        mealNames = new String[16];
+        mealCount = 0;
+    }
+
+    private Segment segmentFor(int orderId) {
+        return segments[hash(orderId) & (SEGMENTS - 1)];
+    }
+
+    private static int hash(int orderId) {
+        // Sequential ids would otherwise fill neighbouring slots and make probe sequences long
+        int h = orderId * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private int encodeMeal(String meal) {
+        if (meal == null) {
+            return NONE;
+        }
+        Integer code = codesByMeal.get(meal);
+        return code != null ? code : addMeal(meal);
+    }
+
+    private synchronized int addMeal(String meal) {
+        Integer code = codesByMeal.get(meal);
+        if (code != null) {
+            return code;
+        }
+        String[] current = mealNames;
+        if (mealCount == current.length) {
+            current = Arrays.copyOf(current, current.length * 2);
+        }
+        current[mealCount] = meal;
+        mealNames = current;
+        codesByMeal.put(meal, mealCount);
+        return mealCount++;
+    }
+
+    private String decodeMeal(int mealCode) {
+        return mealCode == NONE ? null : mealNames[mealCode];
+    }
+
+    private final class Segment {
+        // Row + 1 of the order hashed to each slot, 0 for free slots
+        private int[] slots;
+        private int[] ids;
+        private byte[] statuses;
+        private int[] etaMinutes;
+        private int[] quantities;
+        private int[] mealCodes;
+        private int size;
+
+        private Segment() {
+            clear();
+        }
+
+        private synchronized void put(int orderId, OrderStatus status, Integer eta, Integer quantity, int mealCode) {
+            int row = rowOf(orderId);
+            if (row < 0) {
+                if (size == ids.length) {
+                    grow();
+                }
+                row = size++;
+                ids[row] = orderId;
+                slots[freeSlot(orderId)] = row + 1;
+            }
+            statuses[row] = status == null ? -1 : (byte) status.ordinal();
+            etaMinutes[row] = eta == null ? NONE : eta;
+            quantities[row] = quantity == null ? NONE : quantity;
+            mealCodes[row] = mealCode;
+        }
+
+        private synchronized Order get(int orderId) {
+            int row = rowOf(orderId);
+            return row < 0 ? null : toOrder(row);
+        }
+
+        private synchronized Order update(int orderId, OrderStatus status, Integer eta) {
+            int row = rowOf(orderId);
+            if (row < 0) {
+                return null;
+            }
+            if (status != null) {
+                statuses[row] = (byte) status.ordinal();
+            }
+            if (eta != null) {
+                etaMinutes[row] = eta;
+            }
+            return toOrder(row);
+        }
+
+        private synchronized Order updateStatusIf(int orderId, Predicate<OrderStatus> condition,
+                                                  OrderStatus status) {
+            int row = rowOf(orderId);
+            if (row < 0) {
+                return null;
+            }
+            if (condition.test(statuses[row] < 0 ? null : STATUSES[statuses[row]])) {
+                statuses[row] = (byte) status.ordinal();
+            }
+            return toOrder(row);
+        }
+
+        private synchronized void addAllTo(List<Order> orders) {
+            for (int row = 0; row < size; row++) {
+                orders.add(toOrder(row));
+            }
+        }
+
+        private synchronized int size() {
+            return size;
+        }
+
+        private synchronized void clear() {
+            slots = new int[INITIAL_SEGMENT_CAPACITY * 2];
+            ids = new int[INITIAL_SEGMENT_CAPACITY];
+            statuses = new byte[INITIAL_SEGMENT_CAPACITY];
+            etaMinutes = new int[INITIAL_SEGMENT_CAPACITY];
+            quantities = new int[INITIAL_SEGMENT_CAPACITY];
+            mealCodes = new int[INITIAL_SEGMENT_CAPACITY];
+            size = 0;
+        }
+
+        private int rowOf(int orderId) {
+            int mask = slots.length - 1;
+            for (int slot = (hash(orderId) >>> SEGMENT_BITS) & mask; ; slot = (slot + 1) & mask) {
+                int row = slots[slot] - 1;
+                if (row < 0 || ids[row] == orderId) {
+                    return row;
+                }
+            }
+        }
+
+        private int freeSlot(int orderId) {
+            int mask = slots.length - 1;
+            int slot = (hash(orderId) >>> SEGMENT_BITS) & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        /**
+         * Doubles the columns, keeping the index at most half full.
+         */
+        private void grow() {
+            int capacity = ids.length * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            statuses = Arrays.copyOf(statuses, capacity);
+            etaMinutes = Arrays.copyOf(etaMinutes, capacity);
+            quantities = Arrays.copyOf(quantities, capacity);
+            mealCodes = Arrays.copyOf(mealCodes, capacity);
+            slots = new int[capacity * 2];
+            for (int row = 0; row < size; row++) {
+                slots[freeSlot(ids[row])] = row + 1;
+            }
+        }
+
+        private Order toOrder(int row) {
+            Order order = new Order(decodeMeal(mealCodes[row]), quantities[row] == NONE ? null : quantities[row]);
+            order.setId(ids[row]);
+            order.updateStatus(statuses[row] < 0 ? null : STATUSES[statuses[row]]);
+            order.updateEta(etaMinutes[row] == NONE ? null : etaMinutes[row]);
+            return order;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.instaclustr.megaburger.store;
+
+import com.instaclustr.megaburger.domain.Order;
+import com.instaclustr.megaburger.domain.OrderStatus;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * One {@link Order} object per order in a {@link ConcurrentHashMap}.
+ */
+@Component
+@ConditionalOnProperty(name = "megaburger.store", havingValue = "map", matchIfMissing = true)
+public class MapOrderStore implements OrderStore {
+
+    private final Map<Integer, Order> orders = new ConcurrentHashMap<>();
+
+    @Override
+    public void put(Order order) {
+        orders.put(order.getId(), order);
+    }
+
+    @Override
+    public Order get(int orderId) {
+        return orders.get(orderId);
+    }
+
+    @Override
+    public Order update(int orderId, OrderStatus status, Integer etaMinutes) {
+        return orders.computeIfPresent(orderId, (id, order) -> {
+            if (status != null) {
+                order.updateStatus(status);
+            }
+            if (etaMinutes != null) {
+                order.updateEta(etaMinutes);
+            }
+            return order;
+        });
+    }
+
+    @Override
+    public Order updateStatusIf(int orderId, Predicate<OrderStatus> condition, OrderStatus status) {
+        return orders.computeIfPresent(orderId, (id, order) -> {
+            if (condition.test(order.getStatus())) {
+                order.updateStatus(status);
+            }
+            return order;
+        });
+    }
+
+    @Override
+    public List<Order> getAll() {
+        return orders.values().stream()
+                .sorted(Comparator.comparing(Order::getId))
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public int size() {
+        return orders.size();
+    }
+
+    @Override
+    public void clear() {
+        orders.clear();
+    }
+}
@@ -0,0 +1,48 @@
+package com.instaclustr.megaburger.store;
+
+import com.instaclustr.megaburger.domain.Order;
+import com.instaclustr.megaburger.domain.OrderStatus;
+
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Where {@code OrdersApi} keeps its orders, picked at startup with {@code megaburger.store}: {@code map} (the
+ * default) or {@code columnar}.
+ */
+public interface OrderStore {
+
+    /**
+     * Stores an order that already has its id.
+     */
+    void put(Order order);
+
+    /**
+     * The order with the given id, or null when there's none.
+     */
+    Order get(int orderId);
+
+    /**
+     * Sets the status and ETA of an order, leaving null values as they were.
+     *
+     * @return the updated order, or null when there's none with that id
+     */
+    Order update(int orderId, OrderStatus status, Integer etaMinutes);
+
+    /**
+     * Sets the status of an order only if its current one matches {@code condition}, checking and setting it in a
+     * single step so that no update can come in between.
+     *
+     * @return the order as it is afterwards, updated or not, or null when there's none with that id
+     */
+    Order updateStatusIf(int orderId, Predicate<OrderStatus> condition, OrderStatus status);
+
+    /**
+     * Every order, sorted by id.
+     */
+    List<Order> getAll();
+
+    int size();
+
+    void clear();
+}
@@ -0,0 +1,44 @@
+package com.instaclustr.megaburger.tracing;
+
+import io.opentelemetry.api.OpenTelemetry;
+import io.opentelemetry.api.trace.propagation.W3CTraceContextPropagator;
+import io.opentelemetry.context.propagation.ContextPropagators;
+import io.opentelemetry.exporter.otlp.trace.OtlpGrpcSpanExporter;
+import io.opentelemetry.sdk.OpenTelemetrySdk;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.export.BatchSpanProcessor;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.StringUtils;
+
+@Configuration
+public class TracingConfiguration {
+
+    /**
+     * Exports spans over OTLP when {@code megaburger.tracing.otlp-endpoint} is set, otherwise spans are dropped.
+     */
+    @Bean
+    public SpanExporter spanExporter(@Value("${megaburger.tracing.otlp-endpoint:}") String otlpEndpoint) {
+        if (!StringUtils.hasText(otlpEndpoint)) {
+            return SpanExporter.composite();
+        }
+        return OtlpGrpcSpanExporter.builder().setEndpoint(otlpEndpoint).build();
+    }
+
+    @Bean(destroyMethod = "close")
+    public SdkTracerProvider sdkTracerProvider(SpanExporter spanExporter) {
+        return SdkTracerProvider.builder()
+                .addSpanProcessor(BatchSpanProcessor.builder(spanExporter).build())
+                .build();
+    }
+
+    @Bean
+    public OpenTelemetry openTelemetry(SdkTracerProvider sdkTracerProvider) {
+        return OpenTelemetrySdk.builder()
+                .setTracerProvider(sdkTracerProvider)
+                .setPropagators(ContextPropagators.create(W3CTraceContextPropagator.getInstance()))
+                .build();
+    }
+}
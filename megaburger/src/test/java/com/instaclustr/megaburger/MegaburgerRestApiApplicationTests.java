@@ -11,6 +11,7 @@ import org.springframework.boot.web.server.LocalServerPort;
 
 import static io.restassured.RestAssured.get;
 import static io.restassured.RestAssured.given;
+import static io.restassured.RestAssured.post;
 import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
@@ -129,4 +130,91 @@ class MegaburgerRestApiApplicationTests {
                 .body("eta_minutes", is(15))
                 .body("quantity", is(1));
     }
-}
\ No newline at end of file
+
+    @Test
+    void givenARetriedPostWithTheSameIdempotencyKeyItShouldReturnTheOriginalOrder() {
+        Integer id = given()
+                .header("content-type", "application/json")
+                .header("Idempotency-Key", "order-workflow-1/0")
+                .body("{" +
+                        "\"meal\": \"hamburger\"," +
+                        "\"quantity\": 1" +
+                        "}")
+                .post("/orders").then()
+                .assertThat()
+                .statusCode(201)
+                .extract()
+                .body().path("id");
+
+        given()
+                .header("content-type", "application/json")
+                .header("Idempotency-Key", "order-workflow-1/0")
+                .body("{" +
+                        "\"meal\": \"hamburger\"," +
+                        "\"quantity\": 1" +
+                        "}")
+                .post("/orders").then()
+                .assertThat()
+                .statusCode(200)
+                .body("id", is(id));
+
+        get("/orders").then()
+                .assertThat()
+                .statusCode(200)
+                .body("$", hasSize(1));
+    }
+
+    @Test
+    void givenAPendingOrderCancellingItShouldMarkItCancelled() {
+        Integer id = given()
+                .header("content-type", "application/json")
+                .body("{" +
+                        "\"meal\": \"hamburger\"," +
+                        "\"quantity\": 1" +
+                        "}")
+                .post("/orders").then()
+                .assertThat()
+                .statusCode(201)
+                .extract()
+                .body().path("id");
+
+        post("/orders/" + id + "/cancel").then()
+                .assertThat()
+                .statusCode(200)
+                .body("status", is("CANCELLED"));
+        // Cancelling again is a no-op
+        post("/orders/" + id + "/cancel").then()
+                .assertThat()
+                .statusCode(200)
+                .body("status", is("CANCELLED"));
+        post("/orders/" + (id + 1) + "/cancel").then()
+                .assertThat()
+                .statusCode(404);
+    }
+
+    @Test
+    void givenADeliveredOrderCancellingItShouldConflict() {
+        Integer id = given()
+                .header("content-type", "application/json")
+                .body("{" +
+                        "\"meal\": \"hamburger\"," +
+                        "\"quantity\": 1" +
+                        "}")
+                .post("/orders").then()
+                .assertThat()
+                .statusCode(201)
+                .extract()
+                .body().path("id");
+        given()
+                .header("content-type", "application/json")
+                .body("{\"status\": \"RESTAURANT_DELIVERED\"}")
+                .patch("/orders/" + id).then()
+                .assertThat()
+                .statusCode(200);
+
+        post("/orders/" + id + "/cancel").then()
+                .assertThat()
+                .statusCode(409)
+                .body("status", is("RESTAURANT_DELIVERED"));
+    }
+}
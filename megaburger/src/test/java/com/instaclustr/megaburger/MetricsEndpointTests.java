@@ -0,0 +1,58 @@
+package com.instaclustr.megaburger;
+
+import com.instaclustr.megaburger.controller.OrdersApi;
+import io.restassured.RestAssured;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+
+import static io.restassured.RestAssured.get;
+import static io.restassured.RestAssured.given;
+import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.matchesPattern;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class MetricsEndpointTests {
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private OrdersApi ordersApi;
+
+    @BeforeEach
+    public void setUp() {
+        RestAssured.baseURI = "http://localhost";
+        RestAssured.port = port;
+    }
+
+    @AfterEach
+    public void tearDown() {
+        ordersApi.deleteAll();
+    }
+
+    @Test
+    void givenServedRequestsTheirLatencyHistogramsShouldBeExposedPerRouteAndStatus() {
+        given()
+                .header("content-type", "application/json")
+                .body("{\"meal\": \"hamburger\", \"quantity\": 1}")
+                .post("/orders").then()
+                .assertThat()
+                .statusCode(201);
+        get("/orders/0").then()
+                .assertThat()
+                .statusCode(200);
+
+        get("/actuator/prometheus").then()
+                .assertThat()
+                .statusCode(200)
+                .body(allOf(
+                        matchesPattern("(?s).*http_server_requests_seconds_bucket\\{[^}]*method=\"POST\"[^}]*"
+                                + "status=\"201\"[^}]*uri=\"/orders\"[^}]*le=\"[0-9.]+\",?} .*"),
+                        containsString("uri=\"/orders/{orderId}\"")));
+    }
+}
@@ -0,0 +1,96 @@
+package com.instaclustr.megaburger;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time from launching megaburger to it answering a first request, in a fresh JVM each time: as is,
+ * with the {@code fast-startup} profile, and with the class-data sharing archive written by
+ * {@code ./gradlew cdsArchive} when there is one. Run it with {@code ./gradlew startupBenchmark}.
+ */
+public class StartupBenchmark {
+
+    private static final int RUNS = 5;
+    private static final long TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(2);
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String classpath = System.getProperty("startup.classpath");
+        File archive = new File(System.getProperty("startup.cdsArchive", "build/cds/megaburger.jsa"));
+        String cds = "-XX:SharedArchiveFile=" + archive.getAbsolutePath();
+        String fastStartup = "--spring.profiles.active=fast-startup";
+
+        // Warms up the page cache, so the first measured run isn't the only one reading jars from disk
+        timeToFirstRequest(classpath, Collections.emptyList(), Collections.emptyList());
+        report("default", classpath, Collections.emptyList(), Collections.emptyList());
+        report("fast-startup", classpath, Collections.emptyList(), Collections.singletonList(fastStartup));
+        if (archive.isFile()) {
+            report("cds", classpath, Collections.singletonList(cds), Collections.emptyList());
+            report("cds + fast-startup", classpath, Collections.singletonList(cds),
+                    Collections.singletonList(fastStartup));
+        } else {
+            System.out.printf("No class-data sharing archive at %s, run ./gradlew cdsArchive first%n", archive);
+        }
+    }
+
+    private static void report(String variant, String classpath, List<String> jvmArgs, List<String> appArgs)
+            throws IOException, InterruptedException {
+        long[] millis = new long[RUNS];
+        for (int run = 0; run < RUNS; run++) {
+            millis[run] = timeToFirstRequest(classpath, jvmArgs, appArgs);
+        }
+        Arrays.sort(millis);
+        System.out.printf("%s: time to first request %,d ms median, %,d ms min, %,d ms max over %d runs%n", variant,
+                millis[RUNS / 2], millis[0], millis[RUNS - 1], RUNS);
+    }
+
+    private static long timeToFirstRequest(String classpath, List<String> jvmArgs, List<String> appArgs)
+            throws IOException, InterruptedException {
+        int port = freePort();
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        command.addAll(jvmArgs);
+        command.addAll(Arrays.asList("-cp", classpath, MegaburgerRestApiApplication.class.getName(),
+                "--server.port=" + port));
+        command.addAll(appArgs);
+
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(command).redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD).start();
+        try {
+            URL url = new URL("http://localhost:" + port + "/orders/0");
+            while (System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(TIMEOUT_MILLIS)) {
+                if (!process.isAlive()) {
+                    throw new IllegalStateException("megaburger exited with " + process.exitValue());
+                }
+                try {
+                    HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+                    // Any answer will do, even a 404 went through the whole request path
+                    connection.getResponseCode();
+                    connection.disconnect();
+                    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                } catch (ConnectException e) {
+                    Thread.sleep(5);
+                }
+            }
+            throw new IllegalStateException("megaburger didn't answer within " + TIMEOUT_MILLIS + " ms");
+        } finally {
+            process.destroy();
+            process.waitFor();
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.instaclustr.megaburger.deadline;
+
+import com.instaclustr.megaburger.controller.OrdersApi;
+import io.restassured.RestAssured;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static io.restassured.RestAssured.get;
+import static io.restassured.RestAssured.given;
+import static org.hamcrest.Matchers.empty;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class DeadlineFilterTests {
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private OrdersApi ordersApi;
+
+    @BeforeEach
+    public void setUp() {
+        RestAssured.baseURI = "http://localhost";
+        RestAssured.port = port;
+    }
+
+    @AfterEach
+    public void tearDown() {
+        ordersApi.deleteAll();
+    }
+
+    @Test
+    void givenACallerWithNoTimeLeftTheOrderShouldNotBeCreated() {
+        given()
+                .header("content-type", "application/json")
+                .header(DeadlineFilter.TIMEOUT_HEADER, "0")
+                .body("{\"meal\": \"hamburger\", \"quantity\": 1}")
+                .post("/orders").then()
+                .assertThat()
+                .statusCode(504);
+
+        get("/orders").then()
+                .assertThat()
+                .statusCode(200)
+                .body("$", empty());
+    }
+
+    @Test
+    void givenACallerWithTimeLeftTheOrderShouldBeCreated() {
+        given()
+                .header("content-type", "application/json")
+                .header(DeadlineFilter.TIMEOUT_HEADER, "5000")
+                .body("{\"meal\": \"hamburger\", \"quantity\": 1}")
+                .post("/orders").then()
+                .assertThat()
+                .statusCode(201);
+    }
+
+    @Test
+    void givenARequestOutlivingItsTimeoutItShouldBeExpired() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/orders");
+        request.addHeader(DeadlineFilter.TIMEOUT_HEADER, "20");
+        AtomicBoolean expiredOnArrival = new AtomicBoolean(true);
+
+        new DeadlineFilter().doFilter(request, new MockHttpServletResponse(), new MockFilterChain() {
+            @Override
+            public void doFilter(ServletRequest servletRequest, ServletResponse servletResponse) {
+                expiredOnArrival.set(DeadlineFilter.isExpired(request));
+            }
+        });
+        assertFalse(expiredOnArrival.get());
+
+        Thread.sleep(50);
+        assertTrue(DeadlineFilter.isExpired(request));
+        assertFalse(DeadlineFilter.isExpired(new MockHttpServletRequest("GET", "/orders")));
+    }
+}
@@ -0,0 +1,38 @@
+package com.instaclustr.megaburger.idempotency;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class IdempotencyKeyStoreTests {
+
+    private final AtomicLong now = new AtomicLong();
+    private final AtomicInteger nextOrderId = new AtomicInteger();
+
+    @Test
+    void givenAnExpiredKeyItShouldCreateANewOrder() {
+        IdempotencyKeyStore store = new IdempotencyKeyStore(10, Duration.ofMinutes(1), now::get);
+
+        assertEquals(0, store.getOrCreate("key", nextOrderId::getAndIncrement));
+        now.addAndGet(Duration.ofSeconds(59).toMillis());
+        assertEquals(0, store.getOrCreate("key", nextOrderId::getAndIncrement));
+        now.addAndGet(Duration.ofSeconds(1).toMillis());
+        assertEquals(1, store.getOrCreate("key", nextOrderId::getAndIncrement));
+    }
+
+    @Test
+    void givenMoreKeysThanItHoldsItShouldEvictTheOldestOnes() {
+        IdempotencyKeyStore store = new IdempotencyKeyStore(3, Duration.ofHours(1), now::get);
+        for (int i = 0; i < 5; i++) {
+            store.getOrCreate("key-" + i, nextOrderId::getAndIncrement);
+        }
+
+        assertEquals(3, store.size());
+        assertEquals(4, store.getOrCreate("key-4", nextOrderId::getAndIncrement));
+        assertEquals(5, store.getOrCreate("key-0", nextOrderId::getAndIncrement));
+    }
+}
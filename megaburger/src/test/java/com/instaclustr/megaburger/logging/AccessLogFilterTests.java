@@ -0,0 +1,76 @@
+package com.instaclustr.megaburger.logging;
+
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AccessLogFilterTests {
+
+    private final Logger accessLogger = (Logger) LoggerFactory.getLogger(AccessLogFilter.LOGGER_NAME);
+    private final ListAppender<ILoggingEvent> appender = new ListAppender<>();
+
+    @BeforeEach
+    public void setUp() {
+        appender.start();
+        accessLogger.addAppender(appender);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        accessLogger.detachAppender(appender);
+    }
+
+    @Test
+    void givenNoSamplingOnlyFailedAndSlowRequestsShouldBeLogged() throws Exception {
+        AccessLogFilter filter = new AccessLogFilter(0, Duration.ofMillis(50));
+
+        respond(filter, 200, Duration.ZERO);
+        respond(filter, 201, Duration.ZERO);
+        assertEquals(0, appender.list.size());
+
+        respond(filter, 503, Duration.ZERO);
+        respond(filter, 200, Duration.ofMillis(60));
+        assertEquals(2, appender.list.size());
+        assertTrue(appender.list.get(0).getFormattedMessage().startsWith("GET /orders/1 503 "));
+        assertTrue(appender.list.get(1).getFormattedMessage().startsWith("GET /orders/1 200 "));
+    }
+
+    @Test
+    void givenFullSamplingEveryRequestShouldBeLogged() throws Exception {
+        AccessLogFilter filter = new AccessLogFilter(1, Duration.ofSeconds(1));
+
+        for (int i = 0; i < 10; i++) {
+            respond(filter, 200, Duration.ZERO);
+        }
+        assertEquals(10, appender.list.size());
+    }
+
+    private static void respond(AccessLogFilter filter, int status, Duration delay) throws Exception {
+        filter.doFilter(new MockHttpServletRequest("GET", "/orders/1"), new MockHttpServletResponse(),
+                new MockFilterChain() {
+                    @Override
+                    public void doFilter(ServletRequest request, ServletResponse response) {
+                        try {
+                            Thread.sleep(delay.toMillis());
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        ((MockHttpServletResponse) response).setStatus(status);
+                    }
+                });
+    }
+}
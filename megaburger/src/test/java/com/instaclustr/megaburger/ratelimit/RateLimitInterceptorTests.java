@@ -0,0 +1,67 @@
+package com.instaclustr.megaburger.ratelimit;
+
+import io.restassured.RestAssured;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static io.restassured.RestAssured.given;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "megaburger.rate-limit.requests-per-second=0.5",
+        "megaburger.rate-limit.burst=2"
+})
+class RateLimitInterceptorTests {
+
+    @LocalServerPort
+    private int port;
+
+    @BeforeEach
+    public void setUp() {
+        RestAssured.baseURI = "http://localhost";
+        RestAssured.port = port;
+    }
+
+    @Test
+    void givenAClientOverItsRateItShouldBeToldWhenToRetry() {
+        for (int i = 0; i < 2; i++) {
+            given().header(RateLimitInterceptor.CLIENT_ID_HEADER, "instafood-1")
+                    .get("/orders").then()
+                    .assertThat()
+                    .statusCode(200);
+        }
+
+        given().header(RateLimitInterceptor.CLIENT_ID_HEADER, "instafood-1")
+                .get("/orders").then()
+                .assertThat()
+                .statusCode(429)
+                .header("Retry-After", is("2"));
+
+        // Other clients have their own budget
+        given().header(RateLimitInterceptor.CLIENT_ID_HEADER, "instafood-2")
+                .get("/orders").then()
+                .assertThat()
+                .statusCode(200);
+    }
+
+    @Test
+    void givenAnEmptyBucketItShouldRefillAtTheConfiguredRate() {
+        AtomicLong now = new AtomicLong();
+        TokenBucket bucket = new TokenBucket(2, 0.5, now::get);
+
+        assertEquals(0, bucket.tryAcquire());
+        assertEquals(0, bucket.tryAcquire());
+        assertEquals(TimeUnit.SECONDS.toNanos(2), bucket.tryAcquire());
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        assertEquals(TimeUnit.SECONDS.toNanos(1), bucket.tryAcquire());
+        now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        assertEquals(0, bucket.tryAcquire());
+    }
+}
@@ -0,0 +1,109 @@
+package com.instaclustr.megaburger.serialization;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.instaclustr.megaburger.controller.OrdersApi;
+import io.restassured.RestAssured;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import static io.restassured.RestAssured.given;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class SmileContentNegotiationTests {
+
+    private static final String SMILE = "application/x-jackson-smile";
+
+    private final ObjectMapper smileMapper = new ObjectMapper(new SmileFactory());
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private OrdersApi ordersApi;
+
+    @BeforeEach
+    public void setUp() {
+        RestAssured.baseURI = "http://localhost";
+        RestAssured.port = port;
+    }
+
+    @AfterEach
+    public void tearDown() {
+        ordersApi.deleteAll();
+    }
+
+    @Test
+    void givenASmileOrderItShouldBeCreatedAndReturnedAsSmile() throws IOException {
+        byte[] response = given()
+                .header("content-type", SMILE)
+                .header("accept", SMILE)
+                .body(smileMapper.writeValueAsBytes(Map.of("meal", "hamburger", "quantity", 1)))
+                .post("/orders").then()
+                .assertThat()
+                .statusCode(201)
+                .contentType(startsWith(SMILE))
+                .extract()
+                .body().asByteArray();
+
+        Map<?, ?> order = smileMapper.readValue(response, Map.class);
+        assertNotNull(order.get("id"));
+        assertEquals("hamburger", order.get("meal"));
+        assertEquals("PENDING", order.get("status"));
+
+        List<?> orders = smileMapper.readValue(given()
+                .header("accept", SMILE)
+                .get("/orders").then()
+                .assertThat()
+                .statusCode(200)
+                .contentType(startsWith(SMILE))
+                .extract()
+                .body().asByteArray(), List.class);
+        assertEquals(1, orders.size());
+    }
+
+    @Test
+    void givenAClientPreferringSmileButAcceptingJsonItShouldGetSmile() throws IOException {
+        Integer id = given()
+                .header("content-type", "application/json")
+                .body("{" +
+                        "\"meal\": \"hamburger\"," +
+                        "\"quantity\": 1" +
+                        "}")
+                .post("/orders").then()
+                .assertThat()
+                .statusCode(201)
+                .extract()
+                .body().path("id");
+
+        byte[] response = given()
+                .header("accept", SMILE + ", application/json;q=0.5")
+                .get("/orders/" + id).then()
+                .assertThat()
+                .statusCode(200)
+                .contentType(startsWith(SMILE))
+                .extract()
+                .body().asByteArray();
+        assertEquals(id, smileMapper.readValue(response, Map.class).get("id"));
+
+        // Clients that don't ask for it keep getting JSON
+        given()
+                .get("/orders/" + id).then()
+                .assertThat()
+                .statusCode(200)
+                .contentType(startsWith("application/json"))
+                .body("meal", is("hamburger"));
+    }
+}
@@ -0,0 +1,83 @@
+package com.instaclustr.megaburger.serialization;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.module.paramnames.ParameterNamesModule;
+import com.instaclustr.megaburger.domain.Order;
+import com.instaclustr.megaburger.domain.OrderStatus;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares payload bytes and encode/decode time of a single order, what instafood polls for, and of a page of
+ * orders, what {@code GET /orders} returns, as JSON and as Smile. Run it with {@code ./gradlew wireFormatBenchmark}.
+ */
+public class WireFormatBenchmark {
+
+    private static final String[] MEALS = {"hamburger", "cheeseburger", "vegan burger", "chicken burger", "fries"};
+    private static final int ITERATIONS = 200_000;
+    private static final int ORDERS_PER_LIST = 100;
+
+    public static void main(String[] args) throws IOException {
+        // Same mappers as the ones OrdersApi's converters get, minus the rest of Spring Boot's configuration
+        ObjectMapper json = Jackson2ObjectMapperBuilder.json().modulesToInstall(new ParameterNamesModule()).build();
+        ObjectMapper smile = Jackson2ObjectMapperBuilder.smile().modulesToInstall(new ParameterNamesModule()).build();
+
+        Order order = newOrder(42);
+        List<Order> orders = new ArrayList<>();
+        for (int id = 0; id < ORDERS_PER_LIST; id++) {
+            orders.add(newOrder(id));
+        }
+
+        System.out.printf("%-12s %-6s %8s %12s %12s%n", "payload", "format", "bytes", "encode ns", "decode ns");
+        measure("order", "json", json, order, new TypeReference<Order>() { }, ITERATIONS);
+        measure("order", "smile", smile, order, new TypeReference<Order>() { }, ITERATIONS);
+        measure(ORDERS_PER_LIST + " orders", "json", json, orders, new TypeReference<List<Order>>() { },
+                ITERATIONS / ORDERS_PER_LIST);
+        measure(ORDERS_PER_LIST + " orders", "smile", smile, orders, new TypeReference<List<Order>>() { },
+                ITERATIONS / ORDERS_PER_LIST);
+    }
+
+    private static <T> void measure(String payload, String format, ObjectMapper mapper, T value,
+                                    TypeReference<T> type, int iterations) throws IOException {
+        byte[] encoded = mapper.writeValueAsBytes(value);
+        // Warm up, then measure
+        long sink = run(mapper, value, encoded, type, iterations);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink += mapper.writeValueAsBytes(value).length;
+        }
+        long encodeNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink += mapper.readValue(encoded, type).hashCode();
+        }
+        long decodeNanos = System.nanoTime() - start;
+
+        System.out.printf("%-12s %-6s %,8d %,12.0f %,12.0f%s%n", payload, format, encoded.length,
+                encodeNanos / (double) iterations, decodeNanos / (double) iterations, sink == 42 ? " " : "");
+    }
+
+    private static <T> long run(ObjectMapper mapper, T value, byte[] encoded, TypeReference<T> type,
+                                int iterations) throws IOException {
+        long sink = 0;
+        for (int i = 0; i < iterations; i++) {
+            sink += mapper.writeValueAsBytes(value).length;
+            sink += mapper.readValue(encoded, type).hashCode();
+        }
+        return sink;
+    }
+
+    private static Order newOrder(int id) {
+        Order order = new Order(MEALS[id % MEALS.length], 1 + id % 3);
+        order.setId(id);
+        order.updateStatus(OrderStatus.ACCEPTED);
+        order.updateEta(10 + id % 30);
+        return order;
+    }
+}
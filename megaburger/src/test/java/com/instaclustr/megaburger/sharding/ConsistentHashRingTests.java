@@ -0,0 +1,44 @@
+package com.instaclustr.megaburger.sharding;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ConsistentHashRingTests {
+
+    /**
+     * Instafood's copy of the ring is checked against the same values, so both agree on who owns which order.
+     */
+    @Test
+    void givenThreeShardsOrderIdsShouldMapToTheAgreedShards() {
+        ConsistentHashRing ring = new ConsistentHashRing(3);
+        int[] shards = new int[20];
+        for (int orderId = 0; orderId < shards.length; orderId++) {
+            shards[orderId] = ring.shardFor(orderId);
+        }
+
+        assertArrayEquals(new int[]{1, 1, 2, 2, 1, 2, 2, 2, 1, 2, 1, 2, 2, 2, 1, 0, 0, 2, 0, 2}, shards);
+        assertEquals(3322643720672103823L, ConsistentHashRing.hash("megaburger"));
+        assertEquals(1, ring.shardFor("order-workflow-1/0"));
+        assertEquals(2, ring.shardFor("order-workflow-2/0"));
+    }
+
+    @Test
+    void givenAnExtraShardOnlyKeysMovingToItShouldChangeShard() {
+        ConsistentHashRing threeShards = new ConsistentHashRing(3);
+        ConsistentHashRing fourShards = new ConsistentHashRing(4);
+        int[] perShard = new int[4];
+        for (int orderId = 0; orderId < 100_000; orderId++) {
+            int shard = fourShards.shardFor(orderId);
+            perShard[shard]++;
+            if (shard != 3) {
+                assertEquals(threeShards.shardFor(orderId), shard);
+            }
+        }
+        // Roughly a quarter each
+        Arrays.stream(perShard).forEach(count -> assertEquals(25_000, count, 3_000));
+    }
+}
@@ -0,0 +1,96 @@
+package com.instaclustr.megaburger.sharding;
+
+import com.instaclustr.megaburger.MegaburgerRestApiApplication;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static io.restassured.RestAssured.given;
+import static org.hamcrest.Matchers.hasSize;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs two megaburger instances on local ports, each owning half of the order ids.
+ */
+class ShardingTests {
+
+    private final ConfigurableApplicationContext[] shards = new ConfigurableApplicationContext[2];
+    private final ConsistentHashRing ring = new ConsistentHashRing(2);
+
+    @BeforeEach
+    public void setUp() {
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new SpringApplicationBuilder(MegaburgerRestApiApplication.class)
+                    .properties("server.port=0",
+                            "megaburger.sharding.shard-count=" + shards.length,
+                            "megaburger.sharding.shard-index=" + i)
+                    .run();
+        }
+    }
+
+    @AfterEach
+    public void tearDown() {
+        for (ConfigurableApplicationContext shard : shards) {
+            shard.close();
+        }
+    }
+
+    @Test
+    void givenOrdersCreatedOnEveryShardEachShouldOnlyHandOutIdsItOwns() {
+        Set<Integer> ids = new HashSet<>();
+        for (int shard = 0; shard < shards.length; shard++) {
+            for (int i = 0; i < 10; i++) {
+                Integer id = given()
+                        .port(port(shard))
+                        .header("content-type", "application/json")
+                        .body("{\"meal\": \"hamburger\", \"quantity\": 1}")
+                        .post("/orders").then()
+                        .assertThat()
+                        .statusCode(201)
+                        .extract()
+                        .body().path("id");
+                assertEquals(shard, ring.shardFor(id));
+                assertTrue(ids.add(id), "id " + id + " was handed out twice");
+            }
+            given().port(port(shard)).get("/orders").then()
+                    .assertThat()
+                    .statusCode(200)
+                    .body("$", hasSize(10));
+        }
+    }
+
+    @Test
+    void givenAnOrderOnAnotherShardItShouldBeRejectedAsMisdirected() {
+        Integer id = given()
+                .port(port(1))
+                .header("content-type", "application/json")
+                .body("{\"meal\": \"hamburger\", \"quantity\": 1}")
+                .post("/orders").then()
+                .extract()
+                .body().path("id");
+
+        given().port(port(1)).get("/orders/" + id).then()
+                .assertThat()
+                .statusCode(200);
+        given().port(port(0)).get("/orders/" + id).then()
+                .assertThat()
+                .statusCode(421);
+        given().port(port(0))
+                .header("content-type", "application/json")
+                .body("{\"status\": \"ACCEPTED\"}")
+                .patch("/orders/" + id).then()
+                .assertThat()
+                .statusCode(421);
+    }
+
+    private int port(int shard) {
+        return ((ServletWebServerApplicationContext) shards[shard]).getWebServer().getPort();
+    }
+}
@@ -0,0 +1,75 @@
+package com.instaclustr.megaburger.startup;
+
+import com.instaclustr.megaburger.controller.OrdersApi;
+import io.restassured.RestAssured;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.test.context.ActiveProfiles;
+
+import static io.restassured.RestAssured.get;
+import static io.restassured.RestAssured.given;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.startsWith;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("fast-startup")
+class FastStartupProfileTests {
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private OrdersApi ordersApi;
+
+    @BeforeEach
+    public void setUp() {
+        RestAssured.baseURI = "http://localhost";
+        RestAssured.port = port;
+    }
+
+    @AfterEach
+    public void tearDown() {
+        ordersApi.deleteAll();
+    }
+
+    @Test
+    void givenTheFastStartupProfileOrdersShouldBeServedAsUsual() {
+        Integer id = given()
+                .header("content-type", "application/json")
+                .body("{" +
+                        "\"meal\": \"hamburger\"," +
+                        "\"quantity\": 1" +
+                        "}")
+                .post("/orders").then()
+                .assertThat()
+                .statusCode(201)
+                .body("id", is(notNullValue()))
+                .extract().path("id");
+
+        given()
+                .header("accept", "application/x-jackson-smile")
+                .get("/orders/" + id).then()
+                .assertThat()
+                .statusCode(200)
+                .contentType(startsWith("application/x-jackson-smile"));
+    }
+
+    @Test
+    void givenTheFastStartupProfileHealthAndMetricsShouldBeExposed() {
+        get("/actuator/health").then()
+                .assertThat()
+                .statusCode(200)
+                .body("status", is("UP"));
+
+        get("/actuator/prometheus").then()
+                .assertThat()
+                .statusCode(200)
+                .body(containsString("jvm_memory_used_bytes"));
+    }
+}
@@ -0,0 +1,45 @@
+package com.instaclustr.megaburger.store;
+
+import com.instaclustr.megaburger.domain.Order;
+import com.instaclustr.megaburger.domain.OrderStatus;
+
+import java.util.function.Supplier;
+
+/**
+ * Compares the heap taken by 1M and 10M orders in each {@link OrderStore}. Run it with
+ * {@code ./gradlew orderStoreFootprintBenchmark}.
+ */
+public class OrderStoreFootprintBenchmark {
+
+    private static final String[] MEALS = {"hamburger", "cheeseburger", "vegan burger", "chicken burger", "fries"};
+
+    public static void main(String[] args) {
+        for (int orders : new int[]{1_000_000, 10_000_000}) {
+            measure("map", MapOrderStore::new, orders);
+            measure("columnar", ColumnarOrderStore::new, orders);
+        }
+    }
+
+    private static void measure(String name, Supplier<OrderStore> storeFactory, int orders) {
+        long before = usedHeap();
+        OrderStore store = storeFactory.get();
+        for (int id = 0; id < orders; id++) {
+            // Orders come in as JSON, so every one of them brings its own copy of the meal name
+            Order order = new Order(new String(MEALS[id % MEALS.length]), 1 + id % 3);
+            order.setId(id);
+            store.put(order);
+            store.update(id, OrderStatus.ACCEPTED, 10 + id % 30);
+        }
+        long used = usedHeap() - before;
+        System.out.printf("%-8s %,11d orders: %,7d MB, %5.1f bytes/order%n", name, store.size(),
+                used / (1024 * 1024), used / (double) orders);
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,57 @@
+package com.instaclustr.megaburger.store;
+
+import io.restassured.RestAssured;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+
+import static io.restassured.RestAssured.get;
+import static io.restassured.RestAssured.given;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = "megaburger.store=columnar")
+class OrderStoreSelectionTests {
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private OrderStore orderStore;
+
+    @BeforeEach
+    public void setUp() {
+        RestAssured.baseURI = "http://localhost";
+        RestAssured.port = port;
+    }
+
+    @Test
+    void givenTheColumnarStoreOrdersShouldBeServedFromIt() {
+        assertTrue(orderStore instanceof ColumnarOrderStore);
+
+        int orderId = given()
+                .header("content-type", "application/json")
+                .body("{\"meal\": \"hamburger\", \"quantity\": 2}")
+                .post("/orders").then()
+                .assertThat()
+                .statusCode(201)
+                .extract().path("id");
+
+        given()
+                .header("content-type", "application/json")
+                .body("{\"status\": \"ACCEPTED\", \"eta_minutes\": 15}")
+                .patch("/orders/" + orderId).then()
+                .assertThat()
+                .statusCode(200);
+
+        get("/orders/" + orderId).then()
+                .assertThat()
+                .statusCode(200)
+                .body("meal", is("hamburger"))
+                .body("quantity", is(2))
+                .body("status", is("ACCEPTED"))
+                .body("eta_minutes", is(15));
+    }
+}
@@ -0,0 +1,118 @@
+package com.instaclustr.megaburger.store;
+
+import com.instaclustr.megaburger.domain.Order;
+import com.instaclustr.megaburger.domain.OrderStatus;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class OrderStoreTests {
+
+    static Stream<Arguments> stores() {
+        return Stream.of(Arguments.of(new MapOrderStore()), Arguments.of(new ColumnarOrderStore()));
+    }
+
+    @ParameterizedTest
+    @MethodSource("stores")
+    void givenStoredOrdersTheyShouldBeReturnedAsStored(OrderStore store) {
+        store.put(order(7, "hamburger", 2));
+        store.put(order(3, "vegan burger", 1));
+        store.put(order(5, null, null));
+
+        Order order = store.get(7);
+        assertEquals(7, order.getId());
+        assertEquals("hamburger", order.getMeal());
+        assertEquals(2, order.getQuantity());
+        assertEquals(OrderStatus.PENDING, order.getStatus());
+        assertNull(order.getEtaMinutes());
+        assertNull(store.get(5).getMeal());
+        assertNull(store.get(5).getQuantity());
+        assertNull(store.get(4));
+
+        List<Order> orders = store.getAll();
+        assertEquals(3, orders.size());
+        assertEquals(List.of(3, 5, 7), List.of(orders.get(0).getId(), orders.get(1).getId(), orders.get(2).getId()));
+
+        store.clear();
+        assertEquals(0, store.size());
+        assertNull(store.get(7));
+    }
+
+    @ParameterizedTest
+    @MethodSource("stores")
+    void givenAnUpdateOnlyTheGivenFieldsShouldChange(OrderStore store) {
+        store.put(order(1, "hamburger", 2));
+
+        assertEquals(OrderStatus.ACCEPTED, store.update(1, OrderStatus.ACCEPTED, 15).getStatus());
+        Order order = store.update(1, OrderStatus.COOKING, null);
+        assertEquals(OrderStatus.COOKING, order.getStatus());
+        assertEquals(15, order.getEtaMinutes());
+        assertEquals(OrderStatus.COOKING, store.get(1).getStatus());
+        assertEquals(15, store.get(1).getEtaMinutes());
+        assertNull(store.update(2, OrderStatus.READY, null));
+    }
+
+    @ParameterizedTest
+    @MethodSource("stores")
+    void givenAConditionalUpdateTheStatusShouldOnlyChangeWhenItHolds(OrderStore store) {
+        store.put(order(1, "hamburger", 2));
+
+        Order order = store.updateStatusIf(1, OrderStatus.PENDING::equals, OrderStatus.CANCELLED);
+        assertEquals(OrderStatus.CANCELLED, order.getStatus());
+        assertEquals("hamburger", order.getMeal());
+        order = store.updateStatusIf(1, OrderStatus.PENDING::equals, OrderStatus.ACCEPTED);
+        assertEquals(OrderStatus.CANCELLED, order.getStatus());
+        assertEquals(OrderStatus.CANCELLED, store.get(1).getStatus());
+        assertNull(store.updateStatusIf(2, status -> true, OrderStatus.CANCELLED));
+    }
+
+    @ParameterizedTest
+    @MethodSource("stores")
+    void givenManyOrdersFromSeveralThreadsNoneShouldBeLost(OrderStore store) throws Exception {
+        String[] meals = {"hamburger", "cheeseburger", "vegan burger", "fries"};
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        Future<?>[] writers = new Future<?>[4];
+        for (int thread = 0; thread < writers.length; thread++) {
+            int firstId = thread;
+            writers[thread] = executor.submit(() -> {
+                // Sharded instances store every third id or so, so ids aren't dense
+                for (int id = firstId * 3; id < 300_000; id += 12) {
+                    store.put(order(id, meals[id % meals.length], id % 5));
+                    store.update(id, OrderStatus.values()[id % OrderStatus.values().length], id % 60);
+                }
+            });
+        }
+        for (Future<?> writer : writers) {
+            writer.get();
+        }
+        executor.shutdown();
+
+        assertEquals(100_000, store.size());
+        Random random = new Random(1);
+        for (int i = 0; i < 10_000; i++) {
+            int id = random.nextInt(100_000) * 3;
+            Order order = store.get(id);
+            assertEquals(meals[id % meals.length], order.getMeal());
+            assertEquals(id % 5, order.getQuantity());
+            assertEquals(OrderStatus.values()[id % OrderStatus.values().length], order.getStatus());
+            assertEquals(id % 60, order.getEtaMinutes());
+            assertNull(store.get(id + 1));
+        }
+    }
+
+    private static Order order(int id, String meal, Integer quantity) {
+        Order order = new Order(meal, quantity);
+        order.setId(id);
+        return order;
+    }
+}
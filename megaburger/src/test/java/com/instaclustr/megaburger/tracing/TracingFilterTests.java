@@ -0,0 +1,101 @@
+package com.instaclustr.megaburger.tracing;
+
+import com.instaclustr.megaburger.controller.OrdersApi;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.sdk.testing.exporter.InMemorySpanExporter;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.restassured.RestAssured;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static io.restassured.RestAssured.given;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class TracingFilterTests {
+
+    private static final String TRACE_ID = "4bf92f3577b34da6a3ce929d0e0e4736";
+    private static final String PARENT_SPAN_ID = "00f067aa0ba902b7";
+
+    @TestConfiguration
+    static class InMemoryExporterConfiguration {
+        @Bean
+        @Primary
+        public InMemorySpanExporter inMemorySpanExporter() {
+            return InMemorySpanExporter.create();
+        }
+    }
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private OrdersApi ordersApi;
+
+    @Autowired
+    private InMemorySpanExporter spanExporter;
+
+    @Autowired
+    private SdkTracerProvider sdkTracerProvider;
+
+    @BeforeEach
+    public void setUp() {
+        RestAssured.baseURI = "http://localhost";
+        RestAssured.port = port;
+    }
+
+    @AfterEach
+    public void tearDown() {
+        ordersApi.deleteAll();
+        spanExporter.reset();
+    }
+
+    @Test
+    void givenATraceparentHeaderTheRequestSpanShouldJoinTheCallersTrace() throws InterruptedException {
+        given()
+                .header("content-type", "application/json")
+                .header("traceparent", "00-" + TRACE_ID + "-" + PARENT_SPAN_ID + "-01")
+                .body("{" +
+                        "\"meal\": \"hamburger\"," +
+                        "\"quantity\": 1" +
+                        "}")
+                .post("/orders").then()
+                .assertThat()
+                .statusCode(201);
+
+        List<SpanData> spans = awaitFinishedSpans();
+
+        assertEquals(1, spans.size());
+        SpanData serverSpan = spans.get(0);
+        assertEquals(SpanKind.SERVER, serverSpan.getKind());
+        assertEquals("POST /orders", serverSpan.getName());
+        assertEquals(TRACE_ID, serverSpan.getTraceId());
+        assertEquals(PARENT_SPAN_ID, serverSpan.getParentSpanId());
+        assertEquals(201L, serverSpan.getAttributes().get(AttributeKey.longKey("http.status_code")));
+    }
+
+    private List<SpanData> awaitFinishedSpans() throws InterruptedException {
+        // The server span ends once the filter chain returns, which may be just after the response was sent
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(5);
+        while (System.currentTimeMillis() < deadline) {
+            sdkTracerProvider.forceFlush().join(1, TimeUnit.SECONDS);
+            if (!spanExporter.getFinishedSpanItems().isEmpty()) {
+                break;
+            }
+            Thread.sleep(50);
+        }
+        return spanExporter.getFinishedSpanItems();
+    }
+}